@@ -1,14 +1,20 @@
 package com.pugwoo.dbhelper;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.pugwoo.dbhelper.exception.MustProvideconstructorException;
 import com.pugwoo.dbhelper.exception.NullKeyValueException;
+import com.pugwoo.dbhelper.model.CloseableIterator;
 import com.pugwoo.dbhelper.model.PageData;
+import com.pugwoo.dbhelper.model.RowCallback;
+import com.pugwoo.dbhelper.model.SeekPageData;
+import com.pugwoo.dbhelper.model.UpsertResult;
 
 /**
  * 2015年8月17日 18:18:57
@@ -107,7 +113,7 @@ public interface DBHelper {
     <T> T getByKey(Class<?> clazz, Object keyValue) throws NullKeyValueException;
     
     /**
-     * 通过多个key查询对象<br>
+     * 通过多个key查询对象，重复和null的key会被忽略<br>
      * 【会自动处理软删除记录】
      * @param clazz
      * @param keyValues
@@ -126,7 +132,8 @@ public interface DBHelper {
 	<T> PageData<T> getPage(Class<T> clazz, int page, int pageSize);
 
 	/**
-	 * 查询列表，postSql可以带查询条件<br>
+	 * 查询列表，postSql可以带查询条件，总数的计算方式见countStrategy<br>
+	 * 设置了countCacheTtl时总数会被缓存，DBHelper写入该表后失效，其它途径的写入要等到过期才可见<br>
 	 * 【会自动处理软删除记录】
 	 * @param clazz 【-支持@JoinTable-】
 	 * @param page 从1开始
@@ -146,7 +153,7 @@ public interface DBHelper {
 	<T> int getCount(Class<T> clazz);
 	
 	/**
-	 * 计算总数<br>
+	 * 计算总数，计算方式见countStrategy，默认是count(*)查询，有group by时计算分组数<br>
 	 * 【会自动处理软删除记录】
 	 * @param clazz 【-支持@JoinTable-】
 	 * @param postSql
@@ -177,6 +184,71 @@ public interface DBHelper {
 	<T> PageData<T> getPageWithoutCount(Class<T> clazz, int page, int pageSize,
 			String postSql, Object... args);
 	
+	/**
+	 * 查询列表，没有查询条件；总数使用估算值，文档同getPageWithEstimatedCount(clazz, page, pageSize, postSql, args)
+	 * @param clazz 【-支持@JoinTable-】
+	 * @param page 从1开始
+	 * @param pageSize
+	 * @return 返回的data不会是null
+	 */
+	<T> PageData<T> getPageWithEstimatedCount(Class<T> clazz, int page, int pageSize);
+	
+	/**
+	 * 查询列表，postSql可以带查询条件；总数使用mysql的估算值，适用于不需要精确总数的大表。<br>
+	 * 估算的总数PageData.isEstimated()为true；查到最后一页时总数是精确的；无法估算时(例如不是mysql)退回精确的getPage<br>
+	 * 估算方式见getEstimatedCount<br>
+	 * 【会自动处理软删除记录】
+	 * @param clazz 【-支持@JoinTable-】
+	 * @param page 从1开始
+	 * @param pageSize
+	 * @param postSql 包含where关键字起的后续SQL语句，【不能】包含limit子句
+	 * @return 返回的data不会是null
+	 */
+	<T> PageData<T> getPageWithEstimatedCount(Class<T> clazz, int page, int pageSize,
+			String postSql, Object... args);
+	
+	/**
+	 * 估算总数，文档同getEstimatedCount(clazz, postSql, args)
+	 * @param clazz 【-支持@JoinTable-】
+	 * @return
+	 */
+	<T> int getEstimatedCount(Class<T> clazz);
+	
+	/**
+	 * 估算总数，只适用于mysql，不走总数缓存。<br>
+	 * 没有查询条件且没有软删除的表使用information_schema的TABLE_ROWS，其它情况使用EXPLAIN的rows估算，
+	 * 误差可能很大，只适合展示“大约多少条”；无法估算时退回精确的getCount<br>
+	 * 【会自动处理软删除记录】
+	 * @param clazz 【-支持@JoinTable-】
+	 * @param postSql
+	 * @param args
+	 * @return
+	 */
+	<T> int getEstimatedCount(Class<T> clazz, String postSql, Object... args);
+	
+	/**
+	 * keyset分页查询，没有查询条件，文档同getPageAfter(clazz, lastKey, pageSize, postSql, args)
+	 * @param clazz
+	 * @param lastKey
+	 * @param pageSize
+	 * @return
+	 */
+	<T> SeekPageData<T> getPageAfter(Class<T> clazz, Object lastKey, int pageSize);
+	
+	/**
+	 * keyset分页查询：按key升序，查询key大于lastKey的pageSize条记录，不用limit offset，翻到很深的页也不变慢。
+	 * 不查询总数。<br>
+	 * 【会自动处理软删除记录】
+	 * @param clazz 【-不支持@JoinTable-】
+	 * @param lastKey 上一页返回的SeekPageData.getLastKey()，null表示查询第一页。多个key时是按key顺序的List或数组
+	 * @param pageSize
+	 * @param postSql 只能包含where条件，【不能】包含group by/having/order by/limit子句，否则抛出InvalidParameterException
+	 * @param args
+	 * @return 返回的data不会是null
+	 */
+	<T> SeekPageData<T> getPageAfter(Class<T> clazz, Object lastKey, int pageSize,
+			String postSql, Object... args);
+	
 	/**
 	 * 查询列表，查询所有记录，如果数据量大请慎用<br>
 	 * 【会自动处理软删除记录】
@@ -192,6 +264,31 @@ public interface DBHelper {
 	 * @return 返回不会是null
 	 */
 	<T> List<T> getAll(Class<T> clazz, String postSql, Object... args);
+	
+	/**
+	 * 流式查询记录，逐行回调callback，不会把全部记录放到内存中，适合导出大表。<br>
+	 * 使用只向前的结果集，fetchSize为streamFetchSize(默认Integer.MIN_VALUE，即mysql逐行读取)，
+	 * @RelatedColumn每1000行批量处理一次。<br>
+	 * 注意：mysql逐行读取时，读完之前同一个连接不能执行其它sql，所以在事务中使用且有@RelatedColumn时，
+	 * 需要开启useCursorFetch=true并把streamFetchSize设置为正数，否则抛出InvalidParameterException。<br>
+	 * 【会自动处理软删除记录】
+	 * @param clazz 【-支持@JoinTable-】
+	 * @param callback 处理每一行记录
+	 * @param postSql
+	 * @param args
+	 * @return 处理的记录数
+	 */
+	<T> int forEach(Class<T> clazz, RowCallback<T> callback, String postSql, Object... args);
+	
+	/**
+	 * 流式查询记录，返回的迭代器逐行读取数据库，文档同forEach。<br>
+	 * 迭代器持有数据库连接，遍历完会自动关闭；没有遍历完时必须在finally中调用close。
+	 * @param clazz 【-支持@JoinTable-】
+	 * @param postSql
+	 * @param args
+	 * @return
+	 */
+	<T> CloseableIterator<T> getAllIterator(Class<T> clazz, String postSql, Object... args);
 
 	/**
 	 * 查询一条记录，如果有多条，也只返回第一条。该方法适合于知道返回值只有一条记录的情况。<br>
@@ -212,7 +309,7 @@ public interface DBHelper {
 	<T> T getOne(Class<T> clazz, String postSql, Object... args);
 	
 	/**
-	 * 是否出现至少一条记录
+	 * 是否出现至少一条记录，使用select 1 ... limit 1查询，不查询字段也不处理@RelatedColumn
 	 * @param clazz
 	 * @param postSql 不能有limit子句
 	 * @param args
@@ -221,7 +318,7 @@ public interface DBHelper {
 	<T> boolean isExist(Class<T> clazz, String postSql, Object... args);
 	
 	/**
-	 * 是否出现至少N条记录(含N条)
+	 * 是否出现至少N条记录(含N条)，最多只扫描N条记录，不计算全部总数
 	 * @param atLeastCounts 至少有N条记录（isExist方法等级于atLeastCounts=1）
 	 * @param clazz
 	 * @param postSql 不能有limit子句
@@ -231,6 +328,16 @@ public interface DBHelper {
 	<T> boolean isExistAtLeast(int atLeastCounts, Class<T> clazz,
 			String postSql, Object... args);
 	
+	/**
+	 * 一条sql查询多个key中哪些存在，只查询主键列。只支持一个主键的类。<br>
+	 * key和getByKeyList一样用equals匹配，类型需要和@Column主键字段的类型一致。<br>
+	 * 【会自动处理软删除记录】
+	 * @param clazz
+	 * @param keyValues
+	 * @return 存在的key，顺序和keyValues一致，不会是null
+	 */
+	<T, K> Set<K> existsByKeys(Class<T> clazz, Collection<K> keyValues);
+	
 	// ===============Query methods END ==================================
 	
 	/**
@@ -244,7 +351,9 @@ public interface DBHelper {
 	
 	/**
 	 * 插入多条记录，返回数据库实际修改的条数。<br>
-	 * 实际上，这个是int insert(T t)的循环遍历而已。插入性能并不会因多条而提升。<br>
+	 * 默认是int insert(T t)的循环遍历，插入性能并不会因多条而提升。<br>
+	 * 设置了insertBatchSize时，按list的顺序把相邻且非null的列一样的记录合成一批使用jdbc batch插入，
+	 * 插入顺序和自增id的顺序都和list一致，自增id同样会被设置；驱动没有返回行数的记录不计入返回值。<br>
 	 * 【注】只插入非null的值。该方法为一个事务，要么全部插入成功，要么全部插入失败。
 	 * @param list
 	 * @return
@@ -284,8 +393,11 @@ public interface DBHelper {
 	<T> int insertWithNullWhereNotExist(T t, String whereSql, Object... args);
 	
 	/**
-	 * 插入几条数据，通过拼凑成一条sql插入
-	 *【重要】批量插入不支持回设自增id。批量插入会把所有属性都插入，不支持只插入非null的值。
+	 * 插入几条数据，通过拼凑成一条sql插入。数据太多时(超过65535个占位符或者估算大小超过insertOneSQLMaxBytes)
+	 * 会自动拆成多条sql依次插入。拆成多条sql时，已在事务中则加入该事务，否则用jdbcTemplate的数据源开启事务，
+	 * 保证全部成功或全部失败；只有一条sql时不开启事务。<br>
+	 * 同一条sql中的对象自增id都为null时，会按顺序回设生成的自增id。<br>
+	 *【重要】批量插入会把所有属性都插入，不支持只插入非null的值。
 	 * (说明:这个方法之前叫insertInOneSQL)
 	 * @param list
 	 * @return 返回影响的行数
@@ -322,6 +434,27 @@ public interface DBHelper {
 	@Transactional
 	<T> int insertOrUpdateWithNull(List<T> list);
 	
+	/**
+	 * 使用多行INSERT ... ON DUPLICATE KEY UPDATE插入或更新list，每条sql的行数为upsertBatchSize(默认500)。
+	 * 只有非null的值会插入，主键或唯一键冲突时只更新非null的值。list中的对象必须是同一个类。<br>
+	 * 和insertOrUpdate(List)的区别：有主键值但数据库中不存在的对象会被插入(insertOrUpdate只会update，不修改任何记录)。<br>
+	 * 没有主键值的对象直接插入并回设自增id；插入时才自动填充的列(软删除标记、setTimeWhenInsert等)冲突时不更新，
+	 * 有主键值的对象这些自动填充的值不会回写到对象中。已软删除的记录冲突时不会被更新，和update一致。
+	 * @param list
+	 * @return 插入和更新的条数是根据mysql的affected rows约定(插入计1，更新计2)推算的估算值，
+	 *         数据库返回的准确值见UpsertResult.getAffectedRows
+	 */
+	@Transactional
+	<T> UpsertResult upsert(List<T> list);
+	
+	/**
+	 * 文档同upsert，只是会插入或更新null值
+	 * @param list
+	 * @return
+	 */
+	@Transactional
+	<T> UpsertResult upsertWithNull(List<T> list);
+	
 	/**
 	 * 全量更新指定的列表，只处理非null字段。dbList表示原来的数据，必须都带上key。<br>
 	 * newList表示新的数据，可以带有key也可以没有。<br>
@@ -406,7 +539,9 @@ public interface DBHelper {
 	
 	/**
 	 * 更新数据库记录，更新包含null的字段，返回数据库实际修改条数。
-	 * 【注】批量更新的方法并不会比程序中循环调用int updateNotNull(T t)更快
+	 * 【注】默认批量更新的方法并不会比程序中循环调用int updateNotNull(T t)更快，
+	 * 设置了updateBatchSize时按更新的列分组使用jdbc batch执行，驱动没有返回行数的记录不计入返回值，
+	 * 需要每条记录的结果请用updateWithNullBatch
 	 * @param list
 	 * @return
 	 * @throws NullKeyValueException
@@ -416,7 +551,9 @@ public interface DBHelper {
 	
 	/**
 	 * 更新数据库记录，返回数据库实际修改条数。
-	 * 【注】批量更新的方法并不会比程序中循环调用int update(T t)更快
+	 * 【注】默认批量更新的方法并不会比程序中循环调用int update(T t)更快，
+	 * 设置了updateBatchSize时按更新的列分组使用jdbc batch执行，驱动没有返回行数的记录不计入返回值，
+	 * 需要每条记录的结果请用updateBatch
 	 * 【只更新非null字段】
 	 * @param list
 	 * @return
@@ -425,6 +562,38 @@ public interface DBHelper {
 	@Transactional
 	<T> int update(List<T> list) throws NullKeyValueException;
 	
+	/**
+	 * 使用jdbc batch更新数据库记录，按更新的列分组，每组按updateBatchSize(默认500)分批执行。<br>
+	 * 【只更新非null字段】
+	 * @param list
+	 * @return 和list一一对应的修改条数：null元素或没有需要更新的列时为0；
+	 *         驱动没有返回行数时为java.sql.Statement.SUCCESS_NO_INFO(-2)，原样返回
+	 * @throws NullKeyValueException
+	 */
+	@Transactional
+	<T> int[] updateBatch(List<T> list) throws NullKeyValueException;
+	
+	/**
+	 * 文档同updateBatch，只是会更新包含null的字段
+	 * @param list
+	 * @return
+	 * @throws NullKeyValueException
+	 */
+	@Transactional
+	<T> int[] updateWithNullBatch(List<T> list) throws NullKeyValueException;
+	
+	/**
+	 * 使用UPDATE ... SET col=CASE WHEN key=? THEN ? ... END WHERE key IN (...)的方式，
+	 * 一条sql更新多个对象，数据多时按updateBatchSize(默认500)分成多条sql，返回数据库实际修改条数。<br>
+	 * 【只更新非null字段】list中的对象必须是同一个类，且必须带上key。<br>
+	 * key重复的对象和逐个update(T t)的结果一致，每一列以最后一个非null的值为准，但同一条记录只计一次修改条数。
+	 * @param list
+	 * @return
+	 * @throws NullKeyValueException
+	 */
+	@Transactional
+	<T> int updateBulk(List<T> list) throws NullKeyValueException;
+	
 	/**
 	 * 删除数据库记录，返回数据库实际修改条数。
 	 * 该操作【会】自动使用软删除进行删除
@@ -446,6 +615,27 @@ public interface DBHelper {
 	<T> int deleteByKey(Class<T> clazz, Object keyValue) throws NullKeyValueException,
 	    MustProvideconstructorException;
 
+	/**
+	 * 按多个key删除数据库记录，返回实际修改数据库条数，这个接口只支持单个字段是key的情况。
+	 * 每deleteBatchSize(默认1000)个key一条DELETE ... WHERE key IN (...)语句，
+	 * 有软删除字段时是软删除的UPDATE语句，并更新setTimeWhenUpdate的字段。<br>
+	 * 该方法不带事务，没有外层事务时每条sql单独提交；需要全部成功或全部失败时，请在外层加@Transactional。
+	 * @param clazz
+	 * @param keyValues 重复的key只删除一次，不能有null
+	 * @return
+	 * @throws NullKeyValueException
+	 */
+	<T> int deleteByKeyList(Class<T> clazz, Collection<?> keyValues) throws NullKeyValueException;
+	
+	/**
+	 * 按对象的key批量删除数据库记录，支持多个字段是key，文档同deleteByKeyList。
+	 * list中的对象必须是同一个类，且必须带上key。
+	 * @param list
+	 * @return
+	 * @throws NullKeyValueException
+	 */
+	<T> int deleteByKey(List<T> list) throws NullKeyValueException;
+
 	/**
 	 * 自定义条件删除数据，该操作【会】自动使用软删除标记
 	 * @param clazz 必须有默认构造方法
@@ -0,0 +1,46 @@
+package com.pugwoo.dbhelper.enums;
+
+/**
+ * getPage和getCount计算总数的方式枚举
+ */
+public enum CountStrategyEnum {
+
+	COUNT_QUERY("count_query", "单独的count(*)查询，有group by/distinct时作为子查询；设置了countExecutor且不在事务中时和分页查询并行执行"),
+	COUNT_OVER("count_over", "分页查询带上COUNT(*) OVER()，需要mysql 8.0+，有group by/having/distinct时使用COUNT_QUERY，分页没有数据时退回count(*)查询"),
+	FOUND_ROWS("found_rows", "旧的方式，SQL_CALC_FOUND_ROWS配合select FOUND_ROWS()");
+
+	private String code;
+
+	private String name;
+
+	private CountStrategyEnum(String code, String name) {
+		this.code = code;
+		this.name = name;
+	}
+
+	public static CountStrategyEnum getByCode(String code) {
+		for(CountStrategyEnum e : CountStrategyEnum.values()) {
+			if(code == e.getCode() || code != null && code.equals(e.getCode())) {
+				return e;
+			}
+		}
+		return null;
+	}
+
+	public String getCode() {
+		return code;
+	}
+
+	public void setCode(String code) {
+		this.code = code;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+}
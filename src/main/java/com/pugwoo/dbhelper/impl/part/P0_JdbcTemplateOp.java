@@ -1,7 +1,11 @@
 package com.pugwoo.dbhelper.impl.part;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,13 +13,21 @@ import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
 import com.pugwoo.dbhelper.DBHelper;
+import com.pugwoo.dbhelper.enums.CountStrategyEnum;
 import com.pugwoo.dbhelper.impl.SpringJdbcDBHelper;
+import com.pugwoo.dbhelper.utils.AnnotationSupportRowMapper;
+import com.pugwoo.dbhelper.utils.FastRowMapper;
 import com.pugwoo.dbhelper.utils.NamedParameterUtils;
+import com.pugwoo.dbhelper.utils.NamedParameterUtils.ExpandedSQL;
 
 /**
  * jdbcTemplate原生操作接口封装
@@ -28,6 +40,30 @@ public abstract class P0_JdbcTemplateOp implements DBHelper, ApplicationContextA
 	protected JdbcTemplate jdbcTemplate;
 	protected NamedParameterJdbcTemplate namedParameterJdbcTemplate;
 	protected long timeoutWarningValve = 1000;
+	/**是否使用预编译的FastRowMapper，默认false使用AnnotationSupportRowMapper*/
+	protected boolean fastRowMapper = false;
+	/**是否把in (?)的集合参数补齐到分桶大小并展开成?参数，默认false*/
+	protected boolean inListBucketing = false;
+	/**insert(List)每批执行的条数，0表示不使用jdbc batch，逐条插入*/
+	protected int insertBatchSize = 0;
+	/**insertWithNullInOneSQL每条sql估算的最大字节数，超过时拆成多条sql，需小于mysql的max_allowed_packet*/
+	protected long insertOneSQLMaxBytes = 1024 * 1024;
+	/**update(List)每批执行的条数，0表示不使用jdbc batch，逐条更新*/
+	protected int updateBatchSize = 0;
+	/**upsert(List)每条INSERT ... ON DUPLICATE KEY UPDATE语句的行数，0表示使用默认值500*/
+	protected int upsertBatchSize = 0;
+	/**deleteByKeyList和deleteByKey(List)每条sql的key个数*/
+	protected int deleteBatchSize = 1000;
+	/**流式查询的fetchSize，默认Integer.MIN_VALUE，即mysql驱动逐行读取*/
+	protected int streamFetchSize = Integer.MIN_VALUE;
+	/**getPage和getCount计算总数的方式*/
+	protected CountStrategyEnum countStrategy = CountStrategyEnum.COUNT_QUERY;
+	/**COUNT_QUERY时并行执行count查询的线程池，null表示和分页查询串行执行*/
+	protected ExecutorService countExecutor;
+	/**getPage和getCount总数缓存的有效期毫秒数，0表示不缓存*/
+	protected long countCacheTtl = 0;
+	/**总数缓存最多缓存的查询数*/
+	protected int countCacheSize = 1000;
 	
 	protected ApplicationContext applicationContext;
 	
@@ -66,6 +102,10 @@ public abstract class P0_JdbcTemplateOp implements DBHelper, ApplicationContextA
 	
 	@Override
 	public <T> T queryForObject(Class<T> clazz, String sql, Object... args) {
+		ExpandedSQL p = getPositionalSQL(sql, args);
+		if(p != null) {
+			return jdbcTemplate.queryForObject(p.getSql(), clazz, p.getArgs()); // 没有in (?)或已展开时直接用jdbcTemplate
+		}
 		return namedParameterJdbcTemplate.queryForObject(
 				NamedParameterUtils.trans(sql.toString()),
 				NamedParameterUtils.transParam(args),
@@ -74,6 +114,10 @@ public abstract class P0_JdbcTemplateOp implements DBHelper, ApplicationContextA
 	
 	@Override
 	public SqlRowSet queryForRowSet(String sql, Object... args) {
+		ExpandedSQL p = getPositionalSQL(sql, args);
+		if(p != null) {
+			return jdbcTemplate.queryForRowSet(p.getSql(), p.getArgs()); // 没有in (?)或已展开时直接用jdbcTemplate
+		}
 		SqlRowSet sqlRowSet = namedParameterJdbcTemplate.queryForRowSet(
 				NamedParameterUtils.trans(sql.toString()),
 				NamedParameterUtils.transParam(args)); // 因为有in (?)所以用namedParameterJdbcTemplate
@@ -82,6 +126,10 @@ public abstract class P0_JdbcTemplateOp implements DBHelper, ApplicationContextA
 	
 	@Override
 	public Map<String, Object> queryForMap(String sql, Object... args) {
+		ExpandedSQL p = getPositionalSQL(sql, args);
+		if(p != null) {
+			return jdbcTemplate.queryForMap(p.getSql(), p.getArgs()); // 没有in (?)或已展开时直接用jdbcTemplate
+		}
 		Map<String, Object> map = namedParameterJdbcTemplate.queryForMap(
 				NamedParameterUtils.trans(sql.toString()),
 				NamedParameterUtils.transParam(args)); // 因为有in (?)所以用namedParameterJdbcTemplate
@@ -90,6 +138,10 @@ public abstract class P0_JdbcTemplateOp implements DBHelper, ApplicationContextA
 	
 	@Override
 	public List<Map<String, Object>> queryForList(String sql, Object... args) {
+		ExpandedSQL p = getPositionalSQL(sql, args);
+		if(p != null) {
+			return jdbcTemplate.queryForList(p.getSql(), p.getArgs()); // 没有in (?)或已展开时直接用jdbcTemplate
+		}
 		List<Map<String, Object>> list = namedParameterJdbcTemplate.queryForList(
 				NamedParameterUtils.trans(sql.toString()),
 				NamedParameterUtils.transParam(args)); // 因为有in (?)所以用namedParameterJdbcTemplate
@@ -98,6 +150,10 @@ public abstract class P0_JdbcTemplateOp implements DBHelper, ApplicationContextA
 	
 	@Override
 	public <T> List<T> queryForList(Class<T> clazz, String sql, Object... args) {
+		ExpandedSQL p = getPositionalSQL(sql, args);
+		if(p != null) {
+			return jdbcTemplate.queryForList(p.getSql(), clazz, p.getArgs()); // 没有in (?)或已展开时直接用jdbcTemplate
+		}
 		List<T> list = namedParameterJdbcTemplate.queryForList(
 				NamedParameterUtils.trans(sql.toString()),
 				NamedParameterUtils.transParam(args),
@@ -105,6 +161,86 @@ public abstract class P0_JdbcTemplateOp implements DBHelper, ApplicationContextA
 		return list;
 	}
 	
+	/**
+	 * 获得可以直接用jdbcTemplate执行的sql和参数：参数中没有集合或数组时原样返回；
+	 * 开启了inListBucketing时，把集合展开成?,?,?，in (?)的集合补齐到分桶大小
+	 * @param sql
+	 * @param args
+	 * @return 需要使用namedParameterJdbcTemplate时返回null
+	 */
+	protected ExpandedSQL getPositionalSQL(String sql, Object... args) {
+		if(!NamedParameterUtils.isNeedNamedParam(args)) {
+			return new ExpandedSQL(sql, args);
+		}
+		if(inListBucketing) {
+			return NamedParameterUtils.expandInList(sql, args); // ?个数不一致时返回null，交给namedParameterJdbcTemplate报错
+		}
+		return null;
+	}
+	
+	/**
+	 * 获得可以直接用于PreparedStatement的sql和参数，有集合参数时展开成?,?,?
+	 * @param sql
+	 * @param args
+	 * @return
+	 */
+	protected ExpandedSQL getPreparedSQL(String sql, Object... args) {
+		ExpandedSQL p = getPositionalSQL(sql, args);
+		if(p != null) {
+			return p;
+		}
+		ParsedSql parsedSql = org.springframework.jdbc.core.namedparam.NamedParameterUtils
+				.parseSqlStatement(NamedParameterUtils.trans(sql));
+		SqlParameterSource paramSource = new MapSqlParameterSource(NamedParameterUtils.transParam(args));
+		Object[] values = org.springframework.jdbc.core.namedparam.NamedParameterUtils
+				.buildValueArray(parsedSql, paramSource, null);
+		
+		// 集合参数已展开成多个?，值也要对应展开，和PreparedStatementCreatorFactory的处理一致
+		List<Object> expandedValues = new ArrayList<Object>();
+		for(Object value : values) {
+			if(value instanceof Collection) {
+				for(Object obj : (Collection<?>) value) {
+					if(obj instanceof Object[]) {
+						expandedValues.addAll(Arrays.asList((Object[]) obj));
+					} else {
+						expandedValues.add(obj);
+					}
+				}
+			} else {
+				expandedValues.add(value);
+			}
+		}
+		return new ExpandedSQL(
+				org.springframework.jdbc.core.namedparam.NamedParameterUtils
+					.substituteNamedParameters(parsedSql, paramSource),
+				expandedValues.toArray());
+	}
+	
+	/**
+	 * 获得查询clazz的rowMapper
+	 * @param clazz
+	 * @return
+	 */
+	protected <T> RowMapper<T> getRowMapper(Class<T> clazz) {
+		if(fastRowMapper) {
+			return FastRowMapper.create(clazz); // 不支持的类会自动退回AnnotationSupportRowMapper
+		}
+		return new AnnotationSupportRowMapper<T>(clazz);
+	}
+	
+	/**
+	 * 获得查询clazz的rowMapper，查询结果写入t中
+	 * @param clazz
+	 * @param t
+	 * @return
+	 */
+	protected <T> RowMapper<T> getRowMapper(Class<T> clazz, T t) {
+		if(fastRowMapper) {
+			return FastRowMapper.create(clazz, t);
+		}
+		return new AnnotationSupportRowMapper<T>(clazz, t);
+	}
+	
 	/**
 	 * 使用jdbcTemplate模版执行update，不支持in (?)表达式 
 	 * @param sql
@@ -121,7 +257,23 @@ public abstract class P0_JdbcTemplateOp implements DBHelper, ApplicationContextA
 	}
 	
 	/**
-	 * 使用namedParameterJdbcTemplate模版执行update，支持in(?)表达式
+	 * 使用jdbcTemplate的batchUpdate执行同一条sql的多组参数，不支持in (?)表达式
+	 * @param sql
+	 * @param batchArgs
+	 * @return 每组参数修改的行数，原样返回驱动的结果，可能是Statement.SUCCESS_NO_INFO
+	 */
+	protected int[] jdbcBatchUpdate(String sql, List<Object[]> batchArgs) {
+		log(sql);
+		long start = System.currentTimeMillis();
+		int[] counts = jdbcTemplate.batchUpdate(sql, batchArgs);
+		long cost = System.currentTimeMillis() - start;
+		logSlow(cost, sql, batchArgs.size());
+		return counts;
+	}
+	
+	/**
+	 * 使用namedParameterJdbcTemplate模版执行update，支持in(?)表达式。
+	 * 参数中没有集合或数组或者开启了inListBucketing时，直接使用jdbcTemplate
 	 * @param sql
 	 * @param args
 	 * @return
@@ -129,9 +281,15 @@ public abstract class P0_JdbcTemplateOp implements DBHelper, ApplicationContextA
 	protected int namedJdbcExecuteUpdate(String sql, Object... args) {
 		LOGGER.debug("ExecSQL:{}", sql);
 		long start = System.currentTimeMillis();
-		int rows = namedParameterJdbcTemplate.update(
-				NamedParameterUtils.trans(sql),
-				NamedParameterUtils.transParam(args)); // 因为有in (?) 所以使用namedParameterJdbcTemplate
+		int rows;
+		ExpandedSQL p = getPositionalSQL(sql, args);
+		if(p != null) {
+			rows = jdbcTemplate.update(p.getSql(), p.getArgs());
+		} else {
+			rows = namedParameterJdbcTemplate.update(
+					NamedParameterUtils.trans(sql),
+					NamedParameterUtils.transParam(args)); // 因为有in (?) 所以使用namedParameterJdbcTemplate
+		}
 		long cost = System.currentTimeMillis() - start;
 		if(cost > timeoutWarningValve) {
 			LOGGER.warn("SlowSQL:{},cost:{}ms,params:{}", sql, cost, args);
@@ -150,6 +308,157 @@ public abstract class P0_JdbcTemplateOp implements DBHelper, ApplicationContextA
 	public void setTimeoutWarningValve(long timeMS) {
 		timeoutWarningValve = timeMS;
 	}
+	
+	/**
+	 * 设置是否使用预编译的FastRowMapper，适合大量行映射的场景
+	 * @param fastRowMapper
+	 */
+	public void setFastRowMapper(boolean fastRowMapper) {
+		this.fastRowMapper = fastRowMapper;
+	}
+	
+	public boolean isFastRowMapper() {
+		return fastRowMapper;
+	}
+	
+	/**
+	 * 设置是否把in (?)的集合参数用最后一个值补齐到分桶大小(1,2,4,...,1024)，
+	 * 使不同长度的集合生成相同的sql，复用PreparedStatement。<br>
+	 * 只补齐in (?)和not in (?)的集合，重复的值对in没有影响；其它位置(例如insert的values (?))的集合按原长度展开
+	 * @param inListBucketing
+	 */
+	public void setInListBucketing(boolean inListBucketing) {
+		this.inListBucketing = inListBucketing;
+	}
+	
+	public boolean isInListBucketing() {
+		return inListBucketing;
+	}
+	
+	/**
+	 * 设置insert(List)使用jdbc batch插入时每批的条数，0(默认)表示逐条插入
+	 * @param insertBatchSize
+	 */
+	public void setInsertBatchSize(int insertBatchSize) {
+		this.insertBatchSize = insertBatchSize;
+	}
+	
+	public int getInsertBatchSize() {
+		return insertBatchSize;
+	}
+	
+	/**
+	 * 设置insertWithNullInOneSQL每条sql估算的最大字节数，默认1M，超过时拆成多条sql插入
+	 * @param insertOneSQLMaxBytes
+	 */
+	public void setInsertOneSQLMaxBytes(long insertOneSQLMaxBytes) {
+		this.insertOneSQLMaxBytes = insertOneSQLMaxBytes;
+	}
+	
+	public long getInsertOneSQLMaxBytes() {
+		return insertOneSQLMaxBytes;
+	}
+	
+	/**
+	 * 设置update(List)和updateWithNull(List)使用jdbc batch更新时每批的条数，0(默认)表示逐条更新
+	 * @param updateBatchSize
+	 */
+	public void setUpdateBatchSize(int updateBatchSize) {
+		this.updateBatchSize = updateBatchSize;
+	}
+	
+	public int getUpdateBatchSize() {
+		return updateBatchSize;
+	}
+	
+	/**
+	 * 设置upsert(List)和upsertWithNull(List)每条INSERT ... ON DUPLICATE KEY UPDATE语句的行数，
+	 * 0(默认)表示每条sql500行。insertOrUpdate(List)不受影响，总是逐条insert或update
+	 * @param upsertBatchSize
+	 */
+	public void setUpsertBatchSize(int upsertBatchSize) {
+		this.upsertBatchSize = upsertBatchSize;
+	}
+	
+	public int getUpsertBatchSize() {
+		return upsertBatchSize;
+	}
+	
+	/**
+	 * 设置deleteByKeyList和deleteByKey(List)每条sql的key个数，默认1000
+	 * @param deleteBatchSize
+	 */
+	public void setDeleteBatchSize(int deleteBatchSize) {
+		this.deleteBatchSize = deleteBatchSize;
+	}
+	
+	public int getDeleteBatchSize() {
+		return deleteBatchSize;
+	}
+	
+	/**
+	 * 设置forEach和getAllIterator的fetchSize，默认Integer.MIN_VALUE，是mysql驱动逐行读取的约定。<br>
+	 * 其它数据库或mysql驱动开启了useCursorFetch=true时，设置为正数，例如1000
+	 * @param streamFetchSize
+	 */
+	public void setStreamFetchSize(int streamFetchSize) {
+		this.streamFetchSize = streamFetchSize;
+	}
+	
+	public int getStreamFetchSize() {
+		return streamFetchSize;
+	}
+	
+	/**
+	 * 设置getPage和getCount计算总数的方式，默认COUNT_QUERY，即单独的count(*)查询。
+	 * FOUND_ROWS是旧的SQL_CALC_FOUND_ROWS方式(0.3.7及以前版本的默认方式)，会让mysql算出全部结果，大表上第一页也很慢
+	 * @param countStrategy
+	 */
+	public void setCountStrategy(CountStrategyEnum countStrategy) {
+		this.countStrategy = countStrategy;
+	}
+	
+	public CountStrategyEnum getCountStrategy() {
+		return countStrategy;
+	}
+	
+	/**
+	 * 设置COUNT_QUERY方式时并行执行count查询的线程池，count查询使用另外的数据库连接。
+	 * 在事务中时仍然串行执行，因为另外的连接看不到事务中未提交的数据
+	 * @param countExecutor
+	 */
+	public void setCountExecutor(ExecutorService countExecutor) {
+		this.countExecutor = countExecutor;
+	}
+	
+	public ExecutorService getCountExecutor() {
+		return countExecutor;
+	}
+	
+	/**
+	 * 设置getPage和getCount总数缓存的有效期毫秒数，默认0不缓存。<br>
+	 * 缓存按(类,postSql,参数)记录总数，通过DBHelper写入相关表时失效；其它方式写入的数据要等有效期过了才能看到
+	 * @param countCacheTtl
+	 */
+	public void setCountCacheTtl(long countCacheTtl) {
+		this.countCacheTtl = countCacheTtl;
+	}
+	
+	public long getCountCacheTtl() {
+		return countCacheTtl;
+	}
+	
+	/**
+	 * 设置总数缓存最多缓存的查询数，默认1000，需要在第一次查询之前设置
+	 * @param countCacheSize
+	 */
+	public void setCountCacheSize(int countCacheSize) {
+		this.countCacheSize = countCacheSize;
+	}
+	
+	public int getCountCacheSize() {
+		return countCacheSize;
+	}
 
 	public JdbcTemplate getJdbcTemplate() {
 		return jdbcTemplate;
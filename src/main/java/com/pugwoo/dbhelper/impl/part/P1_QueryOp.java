@@ -1,30 +1,73 @@
 package com.pugwoo.dbhelper.impl.part;
 
 import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.sql.DataSource;
+
+import org.springframework.dao.DataAccessException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SingleColumnRowMapper;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.pugwoo.dbhelper.annotation.IDBHelperDataService;
-import com.pugwoo.dbhelper.annotation.JoinTable;
 import com.pugwoo.dbhelper.annotation.RelatedColumn;
+import com.pugwoo.dbhelper.enums.CountStrategyEnum;
+import com.pugwoo.dbhelper.exception.InvalidParameterException;
 import com.pugwoo.dbhelper.exception.NotOnlyOneKeyColumnException;
 import com.pugwoo.dbhelper.exception.NullKeyValueException;
+import com.pugwoo.dbhelper.model.CloseableIterator;
 import com.pugwoo.dbhelper.model.PageData;
+import com.pugwoo.dbhelper.model.RowCallback;
+import com.pugwoo.dbhelper.model.SeekPageData;
 import com.pugwoo.dbhelper.sql.SQLAssert;
 import com.pugwoo.dbhelper.sql.SQLUtils;
-import com.pugwoo.dbhelper.utils.AnnotationSupportRowMapper;
 import com.pugwoo.dbhelper.utils.DOInfoReader;
+import com.pugwoo.dbhelper.utils.EntityMeta;
+import com.pugwoo.dbhelper.utils.FieldAccessor;
+import com.pugwoo.dbhelper.utils.LRUCache;
 import com.pugwoo.dbhelper.utils.NamedParameterUtils;
+import com.pugwoo.dbhelper.utils.NamedParameterUtils.ExpandedSQL;
 
 import net.sf.jsqlparser.JSQLParserException;
 
 public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
 	
+	/**流式查询每次处理@RelatedColumn的行数*/
+	private static final int STREAM_WINDOW_SIZE = 1000;
+	
+	/**getPage和getCount的总数缓存，countCacheTtl大于0时才创建*/
+	private volatile LRUCache<CountCacheKey, CachedCount> countCache;
+	/**每个表被DBHelper写入的次数，用于使总数缓存失效*/
+	private final ConcurrentHashMap<String, AtomicLong> tableVersions = new ConcurrentHashMap<String, AtomicLong>();
+	
 	@Override
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public <T> boolean getByKey(T t) throws NullKeyValueException {
@@ -38,7 +81,7 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
 			log(sql);
 			long start = System.currentTimeMillis();
 			jdbcTemplate.queryForObject(sql.toString(),
-					new AnnotationSupportRowMapper(t.getClass(), t),
+					getRowMapper((Class<T>) t.getClass(), t),
 					keyValues.toArray()); // 此处可以用jdbcTemplate，因为没有in (?)表达式
 			
 			postHandleRelatedColumn(t);
@@ -69,7 +112,7 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
 			log(sql);
 			long start = System.currentTimeMillis();
 			T t = (T) jdbcTemplate.queryForObject(sql.toString(),
-					new AnnotationSupportRowMapper(clazz),
+					getRowMapper(clazz),
 					keyValue); // 此处可以用jdbcTemplate，因为没有in (?)表达式
 			
 			postHandleRelatedColumn(t);
@@ -88,6 +131,16 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
 		if(keyValues == null || keyValues.isEmpty()) {
 			return new HashMap<K, T>();
 		}
+		// 去掉重复和null的key，重复的key只查询一次
+		List<K> keys = new ArrayList<K>();
+		for(K key : new LinkedHashSet<K>(keyValues)) {
+			if(key != null) {
+				keys.add(key);
+			}
+		}
+		if(keys.isEmpty()) {
+			return new HashMap<K, T>();
+		}
 		
 		StringBuilder sql = new StringBuilder();
 		sql.append(SQLUtils.getSelectSQL(clazz, false));
@@ -95,30 +148,48 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
 		
 		log(sql);
 		long start = System.currentTimeMillis();
-		List<T> list = namedParameterJdbcTemplate.query(
-				NamedParameterUtils.trans(sql.toString()),
-				NamedParameterUtils.transParam(keyValues),
-				new AnnotationSupportRowMapper(clazz)); // 因为有in (?)所以用namedParameterJdbcTemplate
+		List<T> list;
+		ExpandedSQL p = getPositionalSQL(sql.toString(), keys);
+		if(p != null) {
+			list = jdbcTemplate.query(p.getSql(),
+					getRowMapper((Class<T>) clazz), p.getArgs()); // 已展开in (?)
+		} else {
+			list = namedParameterJdbcTemplate.query(
+					NamedParameterUtils.trans(sql.toString()),
+					NamedParameterUtils.transParam(keys),
+					getRowMapper((Class<T>) clazz)); // 因为有in (?)所以用namedParameterJdbcTemplate
+		}
 		
 		postHandleRelatedColumn(list);
 		
 		long cost = System.currentTimeMillis() - start;
-		logSlow(cost, sql, keyValues);
+		logSlow(cost, sql, keys);
 		
 		if(list == null || list.isEmpty()) {
 			return new HashMap<K, T>();
 		}
 		
-		Field keyField = DOInfoReader.getOneKeyColumn(clazz);
+		// 按key建立索引，每行只读取一次key，key相同时保留第一行
+		FieldAccessor keyAccessor = DOInfoReader.getAccessor(clazz, DOInfoReader.getOneKeyColumn(clazz));
+		Map<Object, T> key2Obj = new HashMap<Object, T>(list.size() * 4 / 3 + 1);
+		for(T t : list) {
+			Object k;
+			try {
+				k = keyAccessor.get(t);
+			} catch (IllegalAccessException e) {
+				LOGGER.error("get key value fail, class:{}", clazz.getName(), e);
+				continue;
+			}
+			if(k != null && !key2Obj.containsKey(k)) {
+				key2Obj.put(k, t);
+			}
+		}
+		
 		Map<K, T> map = new LinkedHashMap<K, T>();
-		for(K key : keyValues) {
-			if(key == null) {continue;}
-			for(T t : list) {
-				Object k = DOInfoReader.getValue(keyField, t);
-				if(k != null && key.equals(k)) {
-					map.put(key, t);
-					break;
-				}
+		for(K key : keys) {
+			T t = key2Obj.get(key);
+			if(t != null) {
+				map.put(key, t);
 			}
 		}
 		return map;
@@ -138,12 +209,29 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
     
 	@Override
 	public <T> int getCount(Class<T> clazz) {
-		return getTotal(clazz);
+		Integer cached = getCachedCount(clazz, null);
+		if(cached != null) {
+			return cached;
+		}
+		long[] versions = getTableVersions(clazz);
+		int total = getTotal(clazz);
+		putCachedCount(clazz, null, null, versions, total);
+		return total;
 	}
 	
 	@Override
 	public <T> int getCount(Class<T> clazz, String postSql, Object... args) {
-		return _getPage(clazz, true, 0, 1, postSql, args).getTotal();
+		if(countStrategy == CountStrategyEnum.FOUND_ROWS) {
+			return _getPage(clazz, true, 0, 1, postSql, args).getTotal();
+		}
+		Integer cached = getCachedCount(clazz, postSql, args);
+		if(cached != null) {
+			return cached;
+		}
+		long[] versions = getTableVersions(clazz);
+		int total = getCountByQuery(clazz, postSql, args);
+		putCachedCount(clazz, postSql, args, versions, total);
+		return total;
 	}
 	 
     @Override
@@ -158,6 +246,97 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
 		return getPageWithoutCount(clazz, page, pageSize, null);
 	}
     
+    @Override
+    public <T> PageData<T> getPageWithEstimatedCount(Class<T> clazz, int page, int pageSize,
+    		String postSql, Object... args) {
+    	Integer estimated = estimateCount(clazz, postSql, args);
+    	if(estimated == null) {
+    		return getPage(clazz, page, pageSize, postSql, args); // 无法估算时查询精确总数
+    	}
+    	
+		int offset = (page - 1) * pageSize;
+		PageData<T> pageData = _getPage(clazz, false, offset, pageSize, postSql, args);
+		int size = pageData.getData().size();
+		if(size < pageSize && (size > 0 || offset == 0)) {
+			pageData.setTotal(offset + size); // 最后一页，总数是精确的
+		} else {
+			pageData.setTotal(Math.max(estimated, offset + size));
+			pageData.setEstimated(true);
+		}
+		return pageData;
+    }
+    
+    @Override
+    public <T> PageData<T> getPageWithEstimatedCount(Class<T> clazz, int page, int pageSize) {
+    	return getPageWithEstimatedCount(clazz, page, pageSize, null);
+    }
+    
+    @Override
+    public <T> int getEstimatedCount(Class<T> clazz) {
+    	Integer estimated = estimateCount(clazz, null);
+    	return estimated == null ? getCount(clazz) : estimated;
+    }
+    
+    @Override
+    public <T> int getEstimatedCount(Class<T> clazz, String postSql, Object... args) {
+    	Integer estimated = estimateCount(clazz, postSql, args);
+    	return estimated == null ? getCount(clazz, postSql, args) : estimated;
+    }
+    
+    @Override
+    public <T> SeekPageData<T> getPageAfter(Class<T> clazz, Object lastKey, int pageSize) {
+    	return getPageAfter(clazz, lastKey, pageSize, null);
+    }
+    
+    @Override
+    public <T> SeekPageData<T> getPageAfter(Class<T> clazz, Object lastKey, int pageSize,
+    		String postSql, Object... args) {
+    	List<Field> keyFields = DOInfoReader.getKeyColumns(clazz);
+    	List<Object> lastKeyValues = null;
+    	if(lastKey != null) {
+    		if(keyFields.size() == 1) {
+    			lastKeyValues = new ArrayList<Object>();
+    			lastKeyValues.add(lastKey);
+    		} else if(lastKey instanceof List) {
+    			lastKeyValues = new ArrayList<Object>((List<?>) lastKey);
+    		} else if(lastKey instanceof Object[]) {
+    			lastKeyValues = new ArrayList<Object>(Arrays.asList((Object[]) lastKey));
+    		}
+    		if(lastKeyValues == null || lastKeyValues.size() != keyFields.size()
+    				|| lastKeyValues.contains(null)) {
+    			throw new InvalidParameterException("lastKey must have " + keyFields.size() + " key values");
+    		}
+    	}
+    	
+    	List<Object> values = new ArrayList<Object>();
+    	String seekPostSql = SQLUtils.getSeekPostSQL(clazz, lastKeyValues, postSql, values);
+    	if(args != null) {
+    		values.addAll(Arrays.asList(args));
+    	}
+    	
+    	// 多查一条用于判断是否还有下一页
+    	List<T> list = _getPage(clazz, false, null, pageSize + 1, seekPostSql, values.toArray()).getData();
+    	boolean hasMore = list.size() > pageSize;
+    	if(hasMore) {
+    		list = new ArrayList<T>(list.subList(0, pageSize));
+    	}
+    	
+    	Object newLastKey = null;
+    	if(!list.isEmpty()) {
+    		T last = list.get(list.size() - 1);
+    		if(keyFields.size() == 1) {
+    			newLastKey = DOInfoReader.getValue(keyFields.get(0), last);
+    		} else {
+    			List<Object> keyValues = new ArrayList<Object>();
+    			for(Field keyField : keyFields) {
+    				keyValues.add(DOInfoReader.getValue(keyField, last));
+    			}
+    			newLastKey = keyValues;
+    		}
+    	}
+    	return new SeekPageData<T>(list, pageSize, newLastKey, hasMore);
+    }
+    
     @Override
 	public <T> List<T> getAll(final Class<T> clazz) {
 		return _getPage(clazz, false, null, null, null).getData();
@@ -180,44 +359,117 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
     	return list == null || list.isEmpty() ? null : list.get(0);
     }
     
+    @Override
+    public <T> int forEach(Class<T> clazz, RowCallback<T> callback, String postSql, Object... args) {
+    	CloseableIterator<T> it = getAllIterator(clazz, postSql, args);
+    	int rows = 0;
+    	try {
+    		while(it.hasNext()) {
+    			callback.handle(it.next());
+    			rows++;
+    		}
+    	} finally {
+    		it.close();
+    	}
+    	return rows;
+    }
+    
+    @Override
+    public <T> CloseableIterator<T> getAllIterator(Class<T> clazz, String postSql, Object... args) {
+		StringBuilder sql = new StringBuilder();
+		sql.append(SQLUtils.getSelectSQL(clazz, false));
+		sql.append(SQLUtils.autoSetSoftDeleted(postSql, clazz));
+		
+		log(sql);
+		ExpandedSQL p = getPreparedSQL(sql.toString(), args);
+		return new StreamIterator<T>(clazz, p, getRowMapper(clazz));
+    }
+    
 	/**
 	 * 查询列表
 	 * 
 	 * @param clazz
-	 * @param withCount 是否计算总数，将使用SQL_CALC_FOUND_ROWS配合select FOUND_ROWS();来查询
+	 * @param withCount 是否计算总数，计算方式见countStrategy
 	 * @param offset 从0开始，null时不生效；当offset不为null时，要求limit存在
 	 * @param limit null时不生效
 	 * @param postSql sql的where/group/order等sql语句
 	 * @param args 参数
 	 * @return
 	 */
-	@SuppressWarnings({ "unchecked", "rawtypes" })
 	private <T> PageData<T> _getPage(Class<T> clazz, boolean withCount,
 			Integer offset, Integer limit,
-			String postSql, Object... args) {
+			final String postSql, final Object... args) {
+		
+		CountStrategyEnum strategy = withCount ? countStrategy : null;
+		Integer cachedTotal = withCount ? getCachedCount(clazz, postSql, args) : null;
+		long[] versions = null;
+		if(cachedTotal != null) {
+			strategy = null; // 使用缓存的总数，只查询分页数据
+		} else if(withCount) {
+			versions = getTableVersions(clazz);
+		}
+		if(strategy == CountStrategyEnum.COUNT_OVER && !SQLUtils.isCountOverSupported(clazz, postSql)) {
+			strategy = CountStrategyEnum.COUNT_QUERY; // 有group by/distinct时COUNT(*) OVER()不是结果的行数
+		}
 		
 		StringBuilder sql = new StringBuilder();
-		sql.append(SQLUtils.getSelectSQL(clazz, withCount));
+		if(strategy == CountStrategyEnum.COUNT_OVER) {
+			sql.append(SQLUtils.getSelectCountOverSQL(clazz));
+		} else {
+			sql.append(SQLUtils.getSelectSQL(clazz, strategy == CountStrategyEnum.FOUND_ROWS));
+		}
 		sql.append(SQLUtils.autoSetSoftDeleted(postSql, clazz));
 		sql.append(SQLUtils.genLimitSQL(offset, limit));
 		
+		// 不在事务中时，count查询用另外的连接和分页查询并行执行
+		Future<Integer> countFuture = null;
+		if(strategy == CountStrategyEnum.COUNT_QUERY && countExecutor != null
+				&& !TransactionSynchronizationManager.isActualTransactionActive()) {
+			final Class<T> _clazz = clazz;
+			countFuture = countExecutor.submit(new Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					return getCountByQuery(_clazz, postSql, args);
+				}
+			});
+		}
+		
 		log(sql);
 		long start = System.currentTimeMillis();
+		RowMapper<T> rowMapper = getRowMapper(clazz);
+		CountOverRowMapper<T> countOverRowMapper = null;
+		if(strategy == CountStrategyEnum.COUNT_OVER) {
+			countOverRowMapper = new CountOverRowMapper<T>(rowMapper);
+			rowMapper = countOverRowMapper;
+		}
 		List<T> list;
-		if(args == null || args.length == 0) {
-			list = namedParameterJdbcTemplate.query(sql.toString(),
-					new AnnotationSupportRowMapper(clazz)); // 因为有in (?)所以用namedParameterJdbcTemplate
+		ExpandedSQL p = getPositionalSQL(sql.toString(), args);
+		if(p != null) {
+			list = jdbcTemplate.query(p.getSql(),
+					rowMapper, p.getArgs()); // 没有in (?)或已展开时直接用jdbcTemplate
 		} else {
 			list = namedParameterJdbcTemplate.query(
 					NamedParameterUtils.trans(sql.toString()),
 					NamedParameterUtils.transParam(args),
-					new AnnotationSupportRowMapper(clazz)); // 因为有in (?)所以用namedParameterJdbcTemplate
+					rowMapper); // 因为有in (?)所以用namedParameterJdbcTemplate
 		}
 		
 		int total = -1; // -1 表示没有查询总数，未知
-		if(withCount) {
+		if(strategy == CountStrategyEnum.FOUND_ROWS) {
 			// 注意：必须在查询完列表之后马上查询总数
 			total = jdbcTemplate.queryForObject("select FOUND_ROWS()", Integer.class);
+		} else if(strategy == CountStrategyEnum.COUNT_OVER) {
+			total = countOverRowMapper.getTotal();
+			if(total < 0) { // 分页没有数据，不知道总数
+				total = (offset == null || offset == 0) ? 0 : getCountByQuery(clazz, postSql, args);
+			}
+		} else if(strategy == CountStrategyEnum.COUNT_QUERY) {
+			total = countFuture == null ? getCountByQuery(clazz, postSql, args) : getFuture(countFuture);
+		}
+		if(cachedTotal != null) {
+			total = cachedTotal;
+		} else if(withCount) {
+			putCachedCount(clazz, postSql, args, versions, total);
 		}
 		
 		postHandleRelatedColumn(list);
@@ -235,10 +487,75 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
 		return pageData;
 	}
 	
+	/**
+	 * 使用单独的count(*)查询计算postSql的结果总数
+	 */
+	private int getCountByQuery(Class<?> clazz, String postSql, Object... args) {
+		String sql = SQLUtils.getCountSQL(clazz, postSql);
+		
+		log(sql);
+		long start = System.currentTimeMillis();
+		Integer rows;
+		ExpandedSQL p = getPositionalSQL(sql, args);
+		if(p != null) {
+			rows = jdbcTemplate.queryForObject(p.getSql(), Integer.class, p.getArgs());
+		} else {
+			rows = namedParameterJdbcTemplate.queryForObject(
+					NamedParameterUtils.trans(sql),
+					NamedParameterUtils.transParam(args),
+					Integer.class);
+		}
+		
+		long cost = System.currentTimeMillis() - start;
+		logSlow(cost, sql, args);
+		return rows == null ? 0 : rows;
+	}
+	
+	private static int getFuture(Future<Integer> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted when waiting for count query", e);
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("count query fail", e.getCause());
+		}
+	}
+	
+	/**
+	 * 读取COUNT(*) OVER()总数列的rowMapper，其它列交给原rowMapper
+	 */
+	private static class CountOverRowMapper<T> implements RowMapper<T> {
+		
+		private final RowMapper<T> rowMapper;
+		private int total = -1;
+		
+		CountOverRowMapper(RowMapper<T> rowMapper) {
+			this.rowMapper = rowMapper;
+		}
+		
+		@Override
+		public T mapRow(ResultSet rs, int rowNum) throws SQLException {
+			if(total < 0) {
+				total = rs.getInt(SQLUtils.COUNT_OVER_LABEL);
+			}
+			return rowMapper.mapRow(rs, rowNum);
+		}
+		
+		/**
+		 * @return 没有数据时返回-1
+		 */
+		public int getTotal() {
+			return total;
+		}
+	}
+	
 	/**
 	 * 查询列表总数。
-	 * 0.3.1+版本起，带条件的count不使用count(*)计算总数，
-	 * 而改用FOUND_ROWS()，目的是统一group by等复杂子句的总数计算方式。
+	 * 带条件的count按countStrategy计算，group by等复杂子句见SQLUtils.getCountSQL。
 	 * @param clazz
 	 * @return
 	 */
@@ -256,18 +573,504 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
 		return rows;
 	}
 	
+	/**
+	 * 估算postSql的结果总数，只适用于mysql：
+	 * 没有查询条件且没有软删除的表使用information_schema的TABLE_ROWS，其它情况使用EXPLAIN count语句的行数
+	 * @return 无法估算时返回null
+	 */
+	private Integer estimateCount(Class<?> clazz, String postSql, Object... args) {
+		try {
+			if((postSql == null || postSql.trim().isEmpty())
+					&& !DOInfoReader.getEntityMeta(clazz).isJoinVO()
+					&& DOInfoReader.getSoftDeleteColumn(clazz) == null) {
+				Long rows = getTableRows(clazz);
+				if(rows != null) {
+					return (int) Math.min(rows, Integer.MAX_VALUE);
+				}
+			}
+			return getExplainRows(clazz, postSql, args);
+		} catch (DataAccessException e) {
+			LOGGER.warn("estimate count fail, use exact count instead, class:{}", clazz.getName(), e);
+			return null;
+		}
+	}
+	
+	/**
+	 * @return 查不到表或者是视图时返回null
+	 */
+	private Long getTableRows(Class<?> clazz) {
+		List<Object> values = new ArrayList<Object>();
+		String sql = SQLUtils.getTableRowsSQL(clazz, values);
+		
+		log(sql);
+		long start = System.currentTimeMillis();
+		List<Long> rows = jdbcTemplate.queryForList(sql, Long.class, values.toArray());
+		
+		long cost = System.currentTimeMillis() - start;
+		logSlow(cost, sql, values);
+		return rows.isEmpty() ? null : rows.get(0);
+	}
+	
+	/**
+	 * 从EXPLAIN的结果估算行数：最外层查询各表的rows * filtered% 相乘
+	 * @return 有表没有rows估算值(例如Select tables optimized away)时返回null
+	 */
+	private Integer getExplainRows(Class<?> clazz, String postSql, Object... args) {
+		String sql = SQLUtils.getExplainCountSQL(clazz, postSql);
+		
+		log(sql);
+		long start = System.currentTimeMillis();
+		ExpandedSQL p = getPreparedSQL(sql, args);
+		Double rows = jdbcTemplate.query(p.getSql(), new ResultSetExtractor<Double>() {
+			@Override
+			public Double extractData(ResultSet rs) throws SQLException {
+				ResultSetMetaData md = rs.getMetaData();
+				int idIndex = 0, rowsIndex = 0, filteredIndex = 0;
+				for(int i = 1; i <= md.getColumnCount(); i++) {
+					String label = JdbcUtils.lookupColumnName(md, i);
+					if("id".equalsIgnoreCase(label)) {
+						idIndex = i;
+					} else if("rows".equalsIgnoreCase(label)) {
+						rowsIndex = i;
+					} else if("filtered".equalsIgnoreCase(label)) {
+						filteredIndex = i; // mysql 5.7之前只有EXPLAIN EXTENDED才有
+					}
+				}
+				if(rowsIndex == 0) {
+					return null;
+				}
+				
+				Double result = null;
+				String firstId = null;
+				while(rs.next()) {
+					String id = idIndex == 0 ? null : rs.getString(idIndex);
+					if(result == null) {
+						firstId = id;
+					} else if(id == null ? firstId != null : !id.equals(firstId)) {
+						continue; // 子查询的行不影响结果行数
+					}
+					
+					Object tableRows = rs.getObject(rowsIndex);
+					if(tableRows == null) {
+						return null;
+					}
+					double estimated = ((Number) tableRows).doubleValue();
+					if(filteredIndex > 0) {
+						Object filtered = rs.getObject(filteredIndex);
+						if(filtered != null) {
+							estimated = estimated * ((Number) filtered).doubleValue() / 100;
+						}
+					}
+					result = result == null ? estimated : result * estimated;
+				}
+				return result;
+			}
+		}, p.getArgs());
+		
+		long cost = System.currentTimeMillis() - start;
+		logSlow(cost, sql, args);
+		return rows == null ? null : (int) Math.min(Math.round(rows), Integer.MAX_VALUE);
+	}
+	
 	@Override
 	public <T> boolean isExist(Class<T> clazz, String postSql, Object... args) {
-		return getOne(clazz, postSql, args) != null;
+		String sql = SQLUtils.getExistSQL(clazz, postSql, 1);
+		
+		log(sql);
+		long start = System.currentTimeMillis();
+		ExpandedSQL p = getPreparedSQL(sql, args);
+		Boolean exist = jdbcTemplate.query(p.getSql(), new ResultSetExtractor<Boolean>() {
+			@Override
+			public Boolean extractData(ResultSet rs) throws SQLException {
+				return rs.next();
+			}
+		}, p.getArgs());
+		
+		long cost = System.currentTimeMillis() - start;
+		logSlow(cost, sql, args);
+		return exist != null && exist;
 	}
 	
 	@Override
 	public <T> boolean isExistAtLeast(int atLeastCounts, Class<T> clazz,
 			String postSql, Object... args) {
+		if(atLeastCounts <= 0) {
+			return true;
+		}
 		if(atLeastCounts == 1) {
 			return isExist(clazz, postSql, args);
 		}
-		return getCount(clazz, postSql, args) >= atLeastCounts;
+		String sql = SQLUtils.getExistCountSQL(clazz, postSql, atLeastCounts);
+		
+		log(sql);
+		long start = System.currentTimeMillis();
+		Integer rows;
+		ExpandedSQL p = getPositionalSQL(sql, args);
+		if(p != null) {
+			rows = jdbcTemplate.queryForObject(p.getSql(), Integer.class, p.getArgs());
+		} else {
+			rows = namedParameterJdbcTemplate.queryForObject(
+					NamedParameterUtils.trans(sql),
+					NamedParameterUtils.transParam(args),
+					Integer.class);
+		}
+		
+		long cost = System.currentTimeMillis() - start;
+		logSlow(cost, sql, args);
+		return rows != null && rows >= atLeastCounts;
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T, K> Set<K> existsByKeys(Class<T> clazz, Collection<K> keyValues) {
+		Set<K> result = new LinkedHashSet<K>();
+		if(keyValues == null || keyValues.isEmpty()) {
+			return result;
+		}
+		List<K> keys = new ArrayList<K>();
+		for(K key : new LinkedHashSet<K>(keyValues)) {
+			if(key != null) {
+				keys.add(key);
+			}
+		}
+		if(keys.isEmpty()) {
+			return result;
+		}
+		
+		String sql = SQLUtils.getSelectExistKeysSQL(clazz);
+		RowMapper<Object> rowMapper = new SingleColumnRowMapper<Object>(
+				(Class<Object>) DOInfoReader.getOneKeyColumn(clazz).getType());
+		
+		log(sql);
+		long start = System.currentTimeMillis();
+		List<Object> list;
+		ExpandedSQL p = getPositionalSQL(sql, keys);
+		if(p != null) {
+			list = jdbcTemplate.query(p.getSql(), rowMapper, p.getArgs()); // 已展开in (?)
+		} else {
+			list = namedParameterJdbcTemplate.query(
+					NamedParameterUtils.trans(sql),
+					NamedParameterUtils.transParam(keys),
+					rowMapper); // 因为有in (?)所以用namedParameterJdbcTemplate
+		}
+		
+		long cost = System.currentTimeMillis() - start;
+		logSlow(cost, sql, keys);
+		
+		Set<Object> existKeys = new HashSet<Object>(list);
+		for(K key : keys) {
+			if(existKeys.contains(key)) {
+				result.add(key);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * 流式查询的迭代器：使用只向前的结果集逐行读取，每读满STREAM_WINDOW_SIZE行处理一次@RelatedColumn，
+	 * 内存中最多只有一个窗口的数据。遍历完或出错时自动关闭。
+	 */
+	private class StreamIterator<T> implements CloseableIterator<T> {
+		
+		private final String sql;
+		private final RowMapper<T> rowMapper;
+		private final DataSource dataSource;
+		private Connection con;
+		private PreparedStatement ps;
+		private ResultSet rs;
+		
+		private final List<T> window = new ArrayList<T>();
+		private int windowIndex = 0;
+		private int rowNum = 0;
+		private boolean closed = false;
+		
+		StreamIterator(Class<T> clazz, ExpandedSQL p, RowMapper<T> rowMapper) {
+			this.sql = p.getSql();
+			this.rowMapper = rowMapper;
+			this.dataSource = jdbcTemplate.getDataSource();
+			this.con = DataSourceUtils.getConnection(dataSource);
+			// 关联查询用的也是事务绑定的这个连接，mysql逐行读取时读完之前不能执行其它sql
+			if(streamFetchSize == Integer.MIN_VALUE && hasRelatedColumn(clazz)
+					&& DataSourceUtils.isConnectionTransactional(con, dataSource)) {
+				close();
+				throw new InvalidParameterException("class " + clazz.getName()
+						+ " has @RelatedColumn, can not stream row by row (streamFetchSize=Integer.MIN_VALUE)"
+						+ " in a transaction, call it outside the transaction,"
+						+ " or set useCursorFetch=true and a positive streamFetchSize");
+			}
+			try {
+				ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+				ps.setFetchSize(streamFetchSize);
+				Object[] args = p.getArgs();
+				if(args != null) {
+					for(int i = 0; i < args.length; i++) {
+						StatementCreatorUtils.setParameterValue(ps, i + 1, SqlTypeValue.TYPE_UNKNOWN, args[i]);
+					}
+				}
+				rs = ps.executeQuery();
+			} catch (SQLException e) {
+				close();
+				throw jdbcTemplate.getExceptionTranslator().translate("StreamQuery", sql, e);
+			} catch (RuntimeException e) {
+				close();
+				throw e;
+			}
+		}
+		
+		@Override
+		public boolean hasNext() {
+			if(windowIndex < window.size()) {
+				return true;
+			}
+			if(closed) {
+				return false;
+			}
+			window.clear();
+			windowIndex = 0;
+			try {
+				while(window.size() < STREAM_WINDOW_SIZE && rs.next()) {
+					window.add(rowMapper.mapRow(rs, rowNum++));
+				}
+				if(window.size() < STREAM_WINDOW_SIZE) {
+					close(); // 已经读完，先释放连接再处理关联数据
+				}
+				postHandleRelatedColumn(window);
+			} catch (SQLException e) {
+				close();
+				throw jdbcTemplate.getExceptionTranslator().translate("StreamQuery", sql, e);
+			} catch (RuntimeException e) {
+				close();
+				throw e;
+			}
+			return !window.isEmpty();
+		}
+		
+		@Override
+		public T next() {
+			if(!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return window.get(windowIndex++);
+		}
+		
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+		
+		@Override
+		public void close() {
+			if(closed) {
+				return;
+			}
+			closed = true;
+			JdbcUtils.closeResultSet(rs);
+			JdbcUtils.closeStatement(ps);
+			DataSourceUtils.releaseConnection(con, dataSource);
+			rs = null;
+			ps = null;
+			con = null;
+		}
+	}
+	
+	/**
+	 * clazz是否有@RelatedColumn，@JoinTable时看两边的类
+	 */
+	private static boolean hasRelatedColumn(Class<?> clazz) {
+		EntityMeta meta = DOInfoReader.getEntityMeta(clazz);
+		if(meta.isJoinVO()) {
+			return hasRelatedColumn(DOInfoReader.getJoinLeftTable(clazz).getType())
+					|| hasRelatedColumn(DOInfoReader.getJoinRightTable(clazz).getType());
+		}
+		return !meta.getRelatedColumns().isEmpty();
+	}
+	
+	// ======================= 总数缓存 ========================
+	
+	/**
+	 * 使DBHelper写入clazz对应的表之前缓存的总数失效，由插入、更新、删除操作在写入后调用。<br>
+	 * 在事务中写入时，事务结束前本事务和其它线程都可能缓存未提交或提交前的总数，所以事务结束后再失效一次
+	 * @param clazz
+	 */
+	protected void invalidateCountCache(Class<?> clazz) {
+		if(countCache == null) {
+			return;
+		}
+		final List<String> tables = getTableNames(clazz);
+		incrementTableVersions(tables);
+		if(TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					incrementTableVersions(tables);
+				}
+			});
+		}
+	}
+	
+	private void incrementTableVersions(List<String> tables) {
+		for(String table : tables) {
+			getTableVersion(table).incrementAndGet();
+		}
+	}
+	
+	/**
+	 * @return 没有开启缓存、没有缓存、已过期或表已被写入时返回null
+	 */
+	private Integer getCachedCount(Class<?> clazz, String postSql, Object... args) {
+		LRUCache<CountCacheKey, CachedCount> cache = getCountCache();
+		if(cache == null) {
+			return null;
+		}
+		CachedCount cachedCount = cache.get(new CountCacheKey(clazz, postSql, args));
+		if(cachedCount == null || cachedCount.expireTime < System.currentTimeMillis()
+				|| !Arrays.equals(cachedCount.versions, getTableVersions(clazz))) {
+			return null;
+		}
+		return cachedCount.total;
+	}
+	
+	/**
+	 * @param versions 查询总数之前的表版本，查询期间表被写入时，缓存会在下次读取时失效
+	 */
+	private void putCachedCount(Class<?> clazz, String postSql, Object[] args, long[] versions, int total) {
+		LRUCache<CountCacheKey, CachedCount> cache = getCountCache();
+		if(cache == null || total < 0 || versions == null) {
+			return;
+		}
+		cache.put(new CountCacheKey(clazz, postSql, args),
+				new CachedCount(total, System.currentTimeMillis() + countCacheTtl, versions));
+	}
+	
+	private LRUCache<CountCacheKey, CachedCount> getCountCache() {
+		if(countCacheTtl <= 0) {
+			return null;
+		}
+		if(countCache == null) {
+			synchronized (this) {
+				if(countCache == null) {
+					countCache = new LRUCache<CountCacheKey, CachedCount>(countCacheSize);
+				}
+			}
+		}
+		return countCache;
+	}
+	
+	/**
+	 * @return 没有开启缓存时返回null
+	 */
+	private long[] getTableVersions(Class<?> clazz) {
+		if(getCountCache() == null) {
+			return null;
+		}
+		List<String> tables = getTableNames(clazz);
+		long[] versions = new long[tables.size()];
+		for(int i = 0; i < versions.length; i++) {
+			versions[i] = getTableVersion(tables.get(i)).get();
+		}
+		return versions;
+	}
+	
+	private AtomicLong getTableVersion(String table) {
+		AtomicLong version = tableVersions.get(table);
+		if(version == null) {
+			version = new AtomicLong();
+			AtomicLong old = tableVersions.putIfAbsent(table, version);
+			if(old != null) {
+				version = old;
+			}
+		}
+		return version;
+	}
+	
+	/**
+	 * clazz查询涉及的表名，@JoinTable时是两个表。<br>
+	 * 去掉反引号并转成小写，多个类映射同一个表时(例如@Table("t_student")和@Table("`T_Student`"))共用同一个版本
+	 */
+	private static List<String> getTableNames(Class<?> clazz) {
+		List<String> tables = new ArrayList<String>();
+		if(DOInfoReader.getEntityMeta(clazz).isJoinVO()) {
+			tables.add(normalizeTableName(DOInfoReader.getTable(DOInfoReader.getJoinLeftTable(clazz).getType()).value()));
+			tables.add(normalizeTableName(DOInfoReader.getTable(DOInfoReader.getJoinRightTable(clazz).getType()).value()));
+		} else {
+			tables.add(normalizeTableName(DOInfoReader.getTable(clazz).value()));
+		}
+		return tables;
+	}
+	
+	private static String normalizeTableName(String table) {
+		return table.replace("`", "").trim().toLowerCase();
+	}
+	
+	/**
+	 * 总数缓存的key，postSql会去掉字符串之外多余的空白
+	 */
+	private static class CountCacheKey {
+		private final Class<?> clazz;
+		private final String postSql;
+		private final Object[] args;
+		
+		CountCacheKey(Class<?> clazz, String postSql, Object[] args) {
+			this.clazz = clazz;
+			this.postSql = normalize(postSql);
+			this.args = args == null ? new Object[0] : args;
+		}
+		
+		@Override
+		public int hashCode() {
+			return (clazz.hashCode() * 31 + postSql.hashCode()) * 31 + Arrays.deepHashCode(args);
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof CountCacheKey)) {
+				return false;
+			}
+			CountCacheKey other = (CountCacheKey) obj;
+			return clazz == other.clazz && postSql.equals(other.postSql)
+					&& Arrays.deepEquals(args, other.args);
+		}
+		
+		private static String normalize(String sql) {
+			if(sql == null) {
+				return "";
+			}
+			StringBuilder sb = new StringBuilder();
+			char quote = 0;
+			for(int i = 0; i < sql.length(); i++) {
+				char c = sql.charAt(i);
+				if(quote != 0) {
+					sb.append(c);
+					if(c == '\\' && i + 1 < sql.length()) {
+						sb.append(sql.charAt(++i));
+					} else if(c == quote) {
+						quote = 0;
+					}
+				} else if(Character.isWhitespace(c)) {
+					if(sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ') {
+						sb.append(' ');
+					}
+				} else {
+					if(c == '\'' || c == '"' || c == '`') {
+						quote = c;
+					}
+					sb.append(c);
+				}
+			}
+			return sb.toString().trim();
+		}
+	}
+	
+	private static class CachedCount {
+		private final int total;
+		private final long expireTime;
+		private final long[] versions;
+		
+		CachedCount(int total, long expireTime, long[] versions) {
+			this.total = total;
+			this.expireTime = expireTime;
+			this.versions = versions;
+		}
 	}
 	
 	// ======================= 处理 RelatedColumn数据 ========================
@@ -289,8 +1092,8 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
 			return;
 		}
 		
-		JoinTable joinTable = DOInfoReader.getJoinTable(tList.get(0).getClass());
-		if(joinTable != null) { // 处理join的方式
+		EntityMeta tMeta = DOInfoReader.getEntityMeta(tList.get(0).getClass());
+		if(tMeta.isJoinVO()) { // 处理join的方式
 			List<Object> list1 = new ArrayList<Object>();
 			List<Object> list2 = new ArrayList<Object>();
 			
@@ -315,7 +1118,7 @@ public abstract class P1_QueryOp extends P0_JdbcTemplateOp {
 		SQLAssert.allSameClass(tList);
 		Class<?> clazz = tList.get(0).getClass();
 		
-		List<Field> relatedColumns = DOInfoReader.getRelatedColumns(clazz);
+		List<Field> relatedColumns = tMeta.getRelatedColumns();
 		for(Field field : relatedColumns) {
 			
 			RelatedColumn column = field.getAnnotation(RelatedColumn.class);
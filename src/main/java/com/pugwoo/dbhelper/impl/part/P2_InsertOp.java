@@ -1,18 +1,42 @@
 package com.pugwoo.dbhelper.impl.part;
 
 import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.pugwoo.dbhelper.sql.SQLAssert;
 import com.pugwoo.dbhelper.sql.SQLUtils;
 import com.pugwoo.dbhelper.utils.DOInfoReader;
+import com.pugwoo.dbhelper.utils.EntityMeta;
 import com.pugwoo.dbhelper.utils.PreHandleObject;
 
 public abstract class P2_InsertOp extends P1_QueryOp {
+	
+	/**mysql一条sql最多的占位符个数*/
+	protected static final int MAX_PLACEHOLDERS = 65535;
 
 	@Override
 	public <T> int insert(T t) {
@@ -24,6 +48,9 @@ public abstract class P2_InsertOp extends P1_QueryOp {
 		if(list == null || list.isEmpty()) {
 			return 0;
 		}
+		if(insertBatchSize > 0) {
+			return insertBatch(list);
+		}
 		int sum = 0;
 		for(Object obj : list) {
 			sum += insert(obj, false);
@@ -31,6 +58,96 @@ public abstract class P2_InsertOp extends P1_QueryOp {
 		return sum;
 	}
 	
+	/**
+	 * 使用jdbc batch插入，只插入非null的值。
+	 * 按list的顺序，相邻且生成的sql(即非null的列)一样的对象合成一批，每批最多insertBatchSize条，
+	 * 所以插入顺序和自增id的顺序都和list一致。自增id从getGeneratedKeys回设。
+	 * @param list
+	 * @return
+	 */
+	private int insertBatch(List<?> list) {
+		int sum = 0;
+		String batchSql = null;
+		List<Object> objs = new ArrayList<Object>();
+		List<Object[]> values = new ArrayList<Object[]>();
+		for(Object obj : list) {
+			PreHandleObject.preHandleInsert(obj);
+			List<Object> objValues = new ArrayList<Object>();
+			String sql = SQLUtils.getInsertSQL(obj, objValues, false);
+			if(!objs.isEmpty() && (!sql.equals(batchSql) || objs.size() >= insertBatchSize)) {
+				sum += executeInsertBatch(batchSql, objs, values);
+				objs = new ArrayList<Object>();
+				values = new ArrayList<Object[]>();
+			}
+			batchSql = sql;
+			objs.add(obj);
+			values.add(objValues.toArray());
+		}
+		if(!objs.isEmpty()) {
+			sum += executeInsertBatch(batchSql, objs, values);
+		}
+		return sum;
+	}
+	
+	/**
+	 * 执行一批sql一样的insert，自增字段要么都有值要么都没有值，没有值时才需要回设
+	 * @return 插入的条数，驱动没有返回行数(SUCCESS_NO_INFO)的行不计入
+	 */
+	private int executeInsertBatch(String sql, List<Object> objs, List<Object[]> values) {
+		Field autoIncrementField = DOInfoReader.getAutoIncrementField(objs.get(0).getClass());
+		if(autoIncrementField != null && DOInfoReader.getValue(autoIncrementField, objs.get(0)) != null) {
+			autoIncrementField = null;
+		}
+		return executeInsertBatch(sql, objs, values, autoIncrementField);
+	}
+	
+	private int executeInsertBatch(final String sql, final List<Object> objs,
+			final List<Object[]> values, final Field autoIncrementField) {
+		log(sql);
+		long start = System.currentTimeMillis();
+		int rows = jdbcTemplate.execute(new PreparedStatementCreator() {
+			@Override
+			public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+				return con.prepareStatement(sql, autoIncrementField == null ?
+						Statement.NO_GENERATED_KEYS : Statement.RETURN_GENERATED_KEYS);
+			}
+		}, new PreparedStatementCallback<Integer>() {
+			@Override
+			public Integer doInPreparedStatement(PreparedStatement ps)
+					throws SQLException, DataAccessException {
+				for(Object[] args : values) {
+					for(int i = 0; i < args.length; i++) {
+						StatementCreatorUtils.setParameterValue(ps, i + 1, SqlTypeValue.TYPE_UNKNOWN, args[i]);
+					}
+					ps.addBatch();
+				}
+				int[] counts = ps.executeBatch();
+				int rows = 0;
+				for(int count : counts) {
+					if(count > 0) { // 和update(List)一致，SUCCESS_NO_INFO不计入
+						rows += count;
+					}
+				}
+				
+				if(autoIncrementField != null) {
+					ResultSet rs = ps.getGeneratedKeys();
+					try {
+						for(int i = 0; i < objs.size() && rs.next(); i++) {
+							DOInfoReader.setValue(autoIncrementField, objs.get(i), rs.getLong(1));
+						}
+					} finally {
+						JdbcUtils.closeResultSet(rs);
+					}
+				}
+				return rows;
+			}
+		});
+		long cost = System.currentTimeMillis() - start;
+		logSlow(cost, sql, objs.size());
+		invalidateCountCache(objs.get(0).getClass());
+		return rows;
+	}
+	
 	@Override
 	public <T> int insertWithNull(T t) {
 		return insert(t, true);
@@ -42,17 +159,49 @@ public abstract class P2_InsertOp extends P1_QueryOp {
 		List<Object> values = new ArrayList<Object>();
 		String sql = SQLUtils.getInsertSQL(t, values, isWithNullValue);
 		
+		return executeInsert(sql, values, Collections.singletonList(t),
+				DOInfoReader.getAutoIncrementField(t.getClass()));
+	}
+	
+	/**
+	 * 执行一条insert语句，如果有自增字段，从同一个statement的getGeneratedKeys拿到自增id并按顺序回设到objs
+	 * @param sql
+	 * @param values
+	 * @param objs sql插入的对象，顺序和values一致
+	 * @param autoIncrementField 为null时不回设自增id
+	 * @return
+	 */
+	private int executeInsert(final String sql, final List<Object> values, List<?> objs,
+			Field autoIncrementField) {
 		log(sql);
 		long start = System.currentTimeMillis();
-		int rows = jdbcTemplate.update(sql.toString(), values.toArray()); // 此处可以用jdbcTemplate，因为没有in (?)表达式
-		Field autoIncrementField = DOInfoReader.getAutoIncrementField(t.getClass());
-		if(autoIncrementField != null && rows == 1) {
-			Long id = jdbcTemplate.queryForObject("SELECT LAST_INSERT_ID()",
-					Long.class);
-			DOInfoReader.setValue(autoIncrementField, t, id);
+		int rows;
+		if(autoIncrementField == null) {
+			rows = jdbcTemplate.update(sql, values.toArray()); // 此处可以用jdbcTemplate，因为没有in (?)表达式
+		} else {
+			KeyHolder keyHolder = new GeneratedKeyHolder();
+			rows = jdbcTemplate.update(new PreparedStatementCreator() {
+				@Override
+				public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+					PreparedStatement ps = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+					for(int i = 0; i < values.size(); i++) {
+						StatementCreatorUtils.setParameterValue(ps, i + 1, SqlTypeValue.TYPE_UNKNOWN, values.get(i));
+					}
+					return ps;
+				}
+			}, keyHolder);
+			List<Map<String, Object>> keys = keyHolder.getKeyList();
+			for(int i = 0; i < objs.size() && i < keys.size(); i++) {
+				Iterator<Object> it = keys.get(i).values().iterator();
+				Object id = it.hasNext() ? it.next() : null;
+				if(id instanceof Number) {
+					DOInfoReader.setValue(autoIncrementField, objs.get(i), ((Number) id).longValue());
+				}
+			}
 		}
 		long cost = System.currentTimeMillis() - start;
 		logSlow(cost, sql, values);
+		invalidateCountCache(objs.get(0).getClass());
 		return rows;
 	}
 	
@@ -82,18 +231,8 @@ public abstract class P2_InsertOp extends P1_QueryOp {
 			}
 		}
 		
-		log(sql);
-		long start = System.currentTimeMillis();
-		int rows = jdbcTemplate.update(sql.toString(), values.toArray()); // 此处可以用jdbcTemplate，因为没有in (?)表达式
-		Field autoIncrementField = DOInfoReader.getAutoIncrementField(t.getClass());
-		if(autoIncrementField != null && rows == 1) {
-			Long id = jdbcTemplate.queryForObject("SELECT LAST_INSERT_ID()",
-					Long.class);
-			DOInfoReader.setValue(autoIncrementField, t, id);
-		}
-		long cost = System.currentTimeMillis() - start;
-		logSlow(cost, sql, values);
-		return rows;
+		return executeInsert(sql, values, Collections.singletonList(t),
+				DOInfoReader.getAutoIncrementField(t.getClass()));
 	}
 		
 	@Override
@@ -102,6 +241,9 @@ public abstract class P2_InsertOp extends P1_QueryOp {
 			return 0;
 		}
 		list.removeAll(Collections.singleton(null));
+		if(list.isEmpty()) {
+			return 0;
+		}
 		
 		SQLAssert.allSameClass(list);
 		
@@ -109,10 +251,101 @@ public abstract class P2_InsertOp extends P1_QueryOp {
 			PreHandleObject.preHandleInsert(t);
 		}
 		
-		List<Object> values = new ArrayList<Object>();
-		String sql = SQLUtils.getInsertSQLWithNull(list, values);
-				
-		return jdbcExecuteUpdate(sql.toString(), values.toArray());
+		final EntityMeta meta = DOInfoReader.getEntityMeta(list.get(0).getClass());
+		List<Field> insertColumns = meta.getInsertColumns();
+		int columnCount = Math.max(1, insertColumns.size());
+		int maxRows = Math.max(1, MAX_PLACEHOLDERS / columnCount);
+		
+		// 每个对象的值只读一次，用于估算大小和作为sql参数
+		final List<Object[]> rows = new ArrayList<Object[]>(list.size());
+		for(T t : list) {
+			Object[] row = new Object[insertColumns.size()];
+			for(int i = 0; i < row.length; i++) {
+				row[i] = DOInfoReader.getValue(insertColumns.get(i), t);
+			}
+			rows.add(row);
+		}
+		
+		// 按占位符个数和估算的sql大小分批，每批一条sql，ends[i]是第i批的结束下标(不含)
+		final List<Integer> ends = new ArrayList<Integer>();
+		int from = 0;
+		long bytes = 0;
+		for(int i = 0; i < rows.size(); i++) {
+			long rowBytes = estimateInsertBytes(rows.get(i));
+			if(i > from && (i - from >= maxRows || bytes + rowBytes > insertOneSQLMaxBytes)) {
+				ends.add(i);
+				from = i;
+				bytes = 0;
+			}
+			bytes += rowBytes;
+		}
+		ends.add(rows.size());
+		
+		// 只有一条sql时本身是原子的；拆成多条sql时，不在事务中则开启事务，保证全部成功或全部失败
+		if(ends.size() == 1 || TransactionSynchronizationManager.isActualTransactionActive()) {
+			return insertWithNullInOneSQL(meta, list, rows, ends);
+		}
+		final List<T> _list = list;
+		TransactionTemplate transactionTemplate = new TransactionTemplate(
+				new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+		return transactionTemplate.execute(new TransactionCallback<Integer>() {
+			@Override
+			public Integer doInTransaction(TransactionStatus status) {
+				return insertWithNullInOneSQL(meta, _list, rows, ends);
+			}
+		});
+	}
+	
+	private <T> int insertWithNullInOneSQL(EntityMeta meta, List<T> list, List<Object[]> rows,
+			List<Integer> ends) {
+		int sum = 0;
+		int from = 0;
+		for(int end : ends) {
+			sum += insertWithNullInOneSQL(meta, list.subList(from, end), rows.subList(from, end));
+			from = end;
+		}
+		return sum;
+	}
+	
+	private <T> int insertWithNullInOneSQL(EntityMeta meta, List<T> list, List<Object[]> rows) {
+		String sql = SQLUtils.getInsertSQLWithNull(meta.getClazz(), rows.size());
+		List<Object> values = new ArrayList<Object>(rows.size() * meta.getInsertColumns().size());
+		for(Object[] row : rows) {
+			Collections.addAll(values, row);
+		}
+		
+		// 只有全部对象都没有自增id时，多行insert生成的id才和对象一一对应
+		Field autoIncrementField = meta.getAutoIncrementField();
+		int autoIncrementIndex = meta.getInsertColumns().indexOf(autoIncrementField);
+		if(autoIncrementIndex >= 0) {
+			for(Object[] row : rows) {
+				if(row[autoIncrementIndex] != null) {
+					autoIncrementField = null;
+					break;
+				}
+			}
+		}
+		return executeInsert(sql, values, list, autoIncrementField);
+	}
+	
+	/**
+	 * 估算一行数据在insert sql中占用的字节数，包括占位符和参数值
+	 */
+	private static long estimateInsertBytes(Object[] row) {
+		long bytes = 3; // (),
+		for(Object value : row) {
+			bytes += 2; // ?,
+			if(value == null) {
+				bytes += 4;
+			} else if(value instanceof String) {
+				bytes += ((String) value).length() * 3L + 2; // utf8每个字符最多3字节，加上引号
+			} else if(value instanceof byte[]) {
+				bytes += ((byte[]) value).length * 2L + 2; // 转义后最多翻倍
+			} else {
+				bytes += 24;
+			}
+		}
+		return bytes;
 	}
 	
 }
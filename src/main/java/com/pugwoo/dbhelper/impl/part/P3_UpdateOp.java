@@ -2,16 +2,23 @@ package com.pugwoo.dbhelper.impl.part;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.transaction.annotation.Transactional;
 
 import com.pugwoo.dbhelper.exception.NullKeyValueException;
+import com.pugwoo.dbhelper.sql.SQLAssert;
 import com.pugwoo.dbhelper.sql.SQLUtils;
 import com.pugwoo.dbhelper.utils.DOInfoReader;
 import com.pugwoo.dbhelper.utils.PreHandleObject;
 
 public abstract class P3_UpdateOp extends P2_InsertOp {
+	
+	/**没有设置updateBatchSize时，updateBulk每条sql更新的对象数，updateBatch每批更新的对象数*/
+	private static final int DEFAULT_UPDATE_BULK_SIZE = 500;
 
 	@Override
 	public <T> int update(T t) throws NullKeyValueException {
@@ -38,6 +45,9 @@ public abstract class P3_UpdateOp extends P2_InsertOp {
 		if(list == null || list.isEmpty()) {
 			return 0;
 		}
+		if(updateBatchSize > 0) {
+			return sumUpdateCounts(updateBatch(list, true, updateBatchSize));
+		}
 		int rows = 0;
 		for(T t : list) {
 			if(t != null) {
@@ -52,6 +62,9 @@ public abstract class P3_UpdateOp extends P2_InsertOp {
 		if(list == null || list.isEmpty()) {
 			return 0;
 		}
+		if(updateBatchSize > 0) {
+			return sumUpdateCounts(updateBatch(list, false, updateBatchSize));
+		}
 		int rows = 0;
 		for(T t : list) {
 			if(t != null) {
@@ -61,6 +74,131 @@ public abstract class P3_UpdateOp extends P2_InsertOp {
 		return rows;
 	}
 	
+	@Override @Transactional
+	public <T> int[] updateBatch(List<T> list) throws NullKeyValueException {
+		if(list == null || list.isEmpty()) {
+			return new int[0];
+		}
+		return updateBatch(list, false, updateBatchSize > 0 ? updateBatchSize : DEFAULT_UPDATE_BULK_SIZE);
+	}
+	
+	@Override @Transactional
+	public <T> int[] updateWithNullBatch(List<T> list) throws NullKeyValueException {
+		if(list == null || list.isEmpty()) {
+			return new int[0];
+		}
+		return updateBatch(list, true, updateBatchSize > 0 ? updateBatchSize : DEFAULT_UPDATE_BULK_SIZE);
+	}
+	
+	/**
+	 * 累加jdbc batch每行修改的条数，驱动没有返回行数(SUCCESS_NO_INFO)的行不计入
+	 */
+	private static int sumUpdateCounts(int[] counts) {
+		int rows = 0;
+		for(int count : counts) {
+			if(count > 0) {
+				rows += count;
+			}
+		}
+		return rows;
+	}
+	
+	/**
+	 * 使用jdbc batch更新，按生成的sql(即更新的列)分组，每组按batchSize分批执行
+	 * @param list
+	 * @param withNull
+	 * @param batchSize
+	 * @return 和list一一对应的修改条数，null或不需要更新的对象为0
+	 */
+	private <T> int[] updateBatch(List<T> list, boolean withNull, int batchSize) {
+		Map<String, List<Object[]>> sql2Values = new LinkedHashMap<String, List<Object[]>>();
+		Map<String, List<Integer>> sql2Indexes = new HashMap<String, List<Integer>>();
+		Class<?> clazz = null;
+		for(int i = 0; i < list.size(); i++) {
+			T t = list.get(i);
+			if(t == null || DOInfoReader.getNotKeyColumns(t.getClass()).isEmpty()) {
+				continue;
+			}
+			PreHandleObject.preHandleUpdate(t);
+			
+			List<Object> values = new ArrayList<Object>();
+			String sql = SQLUtils.getUpdateSQL(t, values, withNull, null);
+			if(sql == null) {
+				continue; // 没有需要更新的字段
+			}
+			List<Object[]> batchArgs = sql2Values.get(sql);
+			if(batchArgs == null) {
+				batchArgs = new ArrayList<Object[]>();
+				sql2Values.put(sql, batchArgs);
+				sql2Indexes.put(sql, new ArrayList<Integer>());
+			}
+			batchArgs.add(values.toArray());
+			sql2Indexes.get(sql).add(i);
+			clazz = t.getClass();
+		}
+		
+		int[] rows = new int[list.size()];
+		for(Map.Entry<String, List<Object[]>> entry : sql2Values.entrySet()) {
+			List<Object[]> batchArgs = entry.getValue();
+			List<Integer> indexes = sql2Indexes.get(entry.getKey());
+			for(int from = 0; from < batchArgs.size(); from += batchSize) {
+				int to = Math.min(from + batchSize, batchArgs.size());
+				int[] counts = jdbcBatchUpdate(entry.getKey(), batchArgs.subList(from, to));
+				for(int j = 0; j < counts.length && from + j < to; j++) {
+					rows[indexes.get(from + j)] = counts[j];
+				}
+			}
+		}
+		if(clazz != null) {
+			invalidateCountCache(clazz);
+		}
+		return rows;
+	}
+	
+	@Override @Transactional
+	public <T> int updateBulk(List<T> list) throws NullKeyValueException {
+		if(list == null || list.isEmpty()) {
+			return 0;
+		}
+		List<T> tList = new ArrayList<T>();
+		for(T t : list) {
+			if(t != null) {
+				tList.add(t);
+			}
+		}
+		if(tList.isEmpty()) {
+			return 0;
+		}
+		SQLAssert.allSameClass(tList);
+		
+		Class<?> clazz = tList.get(0).getClass();
+		int notKeyCount = DOInfoReader.getNotKeyColumns(clazz).size();
+		if(notKeyCount == 0) {
+			return 0; // not need to update
+		}
+		for(T t : tList) {
+			PreHandleObject.preHandleUpdate(t);
+		}
+		
+		// 每个对象最多占用的占位符：每列一个WHEN的主键和值，加上where的主键
+		int keyCount = DOInfoReader.getKeyColumns(clazz).size();
+		int placeholdersPerRow = notKeyCount * (keyCount + 1) + keyCount;
+		int chunkSize = updateBatchSize > 0 ? updateBatchSize : DEFAULT_UPDATE_BULK_SIZE;
+		chunkSize = Math.max(1, Math.min(chunkSize, MAX_PLACEHOLDERS / placeholdersPerRow));
+		
+		int rows = 0;
+		for(int from = 0; from < tList.size(); from += chunkSize) {
+			List<T> chunk = tList.subList(from, Math.min(from + chunkSize, tList.size()));
+			List<Object> values = new ArrayList<Object>();
+			String sql = SQLUtils.getUpdateBulkSQL(chunk, values);
+			if(sql != null) {
+				rows += jdbcExecuteUpdate(sql, values.toArray()); // 不会有in(?)集合参数
+			}
+		}
+		invalidateCountCache(clazz);
+		return rows;
+	}
+	
 	private <T> int _update(T t, boolean withNull, String postSql, Object... args) 
 			throws NullKeyValueException {
 		
@@ -76,7 +214,9 @@ public abstract class P3_UpdateOp extends P2_InsertOp {
 			values.addAll(Arrays.asList(args));
 		}
 		
-		return namedJdbcExecuteUpdate(sql, values.toArray());
+		int rows = namedJdbcExecuteUpdate(sql, values.toArray());
+		invalidateCountCache(t.getClass());
+		return rows;
 	}
 	
 	@Override
@@ -92,7 +232,9 @@ public abstract class P3_UpdateOp extends P2_InsertOp {
 		
 		String sql = SQLUtils.getCustomUpdateSQL(t, values, setSql);
 		
-		return jdbcExecuteUpdate(sql, values.toArray()); // 不会有in(?)表达式
+		int rows = jdbcExecuteUpdate(sql, values.toArray()); // 不会有in(?)表达式
+		invalidateCountCache(t.getClass());
+		return rows;
 	}
 	
 	@Override
@@ -102,7 +244,9 @@ public abstract class P3_UpdateOp extends P2_InsertOp {
 		}
 		
 		String sql = SQLUtils.getUpdateAllSQL(clazz, setSql, whereSql);
-		return namedJdbcExecuteUpdate(sql, args);
+		int rows = namedJdbcExecuteUpdate(sql, args);
+		invalidateCountCache(clazz);
+		return rows;
 	}
 	
 }
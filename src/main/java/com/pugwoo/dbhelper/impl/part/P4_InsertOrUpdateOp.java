@@ -1,13 +1,27 @@
 package com.pugwoo.dbhelper.impl.part;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.springframework.transaction.annotation.Transactional;
 
+import com.pugwoo.dbhelper.model.UpsertResult;
+import com.pugwoo.dbhelper.sql.SQLAssert;
+import com.pugwoo.dbhelper.sql.SQLUtils;
 import com.pugwoo.dbhelper.utils.DOInfoReader;
+import com.pugwoo.dbhelper.utils.EntityMeta;
+import com.pugwoo.dbhelper.utils.PreHandleObject;
 
 public abstract class P4_InsertOrUpdateOp extends P3_UpdateOp {
+	
+	/**没有设置upsertBatchSize时，upsert每条sql的行数*/
+	private static final int DEFAULT_UPSERT_BATCH_SIZE = 500;
 
 	@Override
 	public <T> int insertOrUpdate(T t) {
@@ -63,6 +77,122 @@ public abstract class P4_InsertOrUpdateOp extends P3_UpdateOp {
 		return rows;
 	}
 	
+	@Override @Transactional
+	public <T> UpsertResult upsert(List<T> list) {
+		return upsert(list, false, upsertBatchSize > 0 ? upsertBatchSize : DEFAULT_UPSERT_BATCH_SIZE);
+	}
+	
+	@Override @Transactional
+	public <T> UpsertResult upsertWithNull(List<T> list) {
+		return upsert(list, true, upsertBatchSize > 0 ? upsertBatchSize : DEFAULT_UPSERT_BATCH_SIZE);
+	}
+	
+	/**
+	 * 没有主键值的对象走insert(会回设自增id)，有主键值的对象按插入的列和冲突时更新的列分组，
+	 * 每组按batchSize和占位符上限分成多条INSERT ... ON DUPLICATE KEY UPDATE语句。<br>
+	 * 冲突时更新的列和update/updateWithNull一致，但不包括insert时才自动填充的列(软删除标记、setTimeWhenInsert等)。
+	 * 有主键值的对象不知道最终是插入还是更新，insert时自动填充的值只放到sql中，不回写到对象。
+	 */
+	private <T> UpsertResult upsert(List<T> list, boolean withNull, int batchSize) {
+		UpsertResult result = new UpsertResult();
+		if(list == null || list.isEmpty()) {
+			return result;
+		}
+		List<T> notNullList = new ArrayList<T>();
+		for(T t : list) {
+			if(t != null) {
+				notNullList.add(t);
+			}
+		}
+		if(notNullList.isEmpty()) {
+			return result;
+		}
+		SQLAssert.allSameClass(notNullList);
+		
+		Class<?> clazz = notNullList.get(0).getClass();
+		EntityMeta meta = DOInfoReader.getEntityMeta(clazz);
+		List<Field> fields = DOInfoReader.getColumns(clazz);
+		Field softDeleteField = meta.getSoftDeleteField();
+		List<Field> columns = meta.getInsertColumns();
+		
+		List<T> insertList = new ArrayList<T>();
+		Map<List<List<Field>>, List<Object[]>> groups = new LinkedHashMap<List<List<Field>>, List<Object[]>>();
+		for(T t : notNullList) {
+			if(!isWithKey(t, fields)) {
+				insertList.add(t);
+				continue;
+			}
+			
+			PreHandleObject.preHandleUpdate(t);
+			List<Field> insertFields = new ArrayList<Field>();
+			List<Field> updateFields = new ArrayList<Field>();
+			List<Object> values = new ArrayList<Object>();
+			for(Field field : columns) {
+				Object value = DOInfoReader.getValue(field, t);
+				boolean isFilled = false;
+				if(value == null) {
+					value = PreHandleObject.getInsertFillValue(meta, field);
+					isFilled = value != null;
+				}
+				if(withNull || value != null) {
+					insertFields.add(field);
+					values.add(value);
+				}
+				// insert时自动填充的值，冲突时不更新
+				if(!meta.getColumn(field).isKey() && !field.equals(softDeleteField) && !isFilled
+						&& (withNull || value != null)) {
+					updateFields.add(field);
+				}
+			}
+			
+			@SuppressWarnings("unchecked")
+			List<List<Field>> key = Arrays.asList(insertFields, updateFields);
+			List<Object[]> group = groups.get(key);
+			if(group == null) {
+				group = new ArrayList<Object[]>();
+				groups.put(key, group);
+			}
+			group.add(values.toArray());
+		}
+		
+		if(!insertList.isEmpty()) {
+			int inserted = 0;
+			if(withNull) {
+				for(T t : insertList) {
+					inserted += insertWithNull(t);
+				}
+			} else {
+				inserted = insert(insertList);
+			}
+			result.setInserted(inserted);
+			result.setAffectedRows(inserted);
+		}
+		
+		for(Map.Entry<List<List<Field>>, List<Object[]>> entry : groups.entrySet()) {
+			List<Field> insertFields = entry.getKey().get(0);
+			List<Field> updateFields = entry.getKey().get(1);
+			List<Object[]> group = entry.getValue();
+			int maxRows = Math.max(1, Math.min(batchSize, MAX_PLACEHOLDERS / Math.max(1, insertFields.size())));
+			for(int from = 0; from < group.size(); from += maxRows) {
+				List<Object[]> rows = group.subList(from, Math.min(from + maxRows, group.size()));
+				List<Object> values = new ArrayList<Object>();
+				String sql = SQLUtils.getInsertOnDuplicateKeyUpdateSQL(clazz, rows, insertFields,
+						updateFields, values);
+				int affectedRows = jdbcExecuteUpdate(sql, values.toArray());
+				result.setAffectedRows(result.getAffectedRows() + affectedRows);
+				
+				// mysql约定：插入的行计1，更新的行计2，只能估算
+				int updated = Math.max(0, Math.min(affectedRows - rows.size(), rows.size()));
+				result.setUpdated(result.getUpdated() + updated);
+				result.setInserted(result.getInserted() + Math.min(affectedRows, rows.size()) - updated);
+			}
+		}
+		if(!groups.isEmpty()) {
+			invalidateCountCache(clazz);
+		}
+		return result;
+	}
+	
 	@Override @Transactional
 	public <T> int insertOrUpdateFull(List<T> dbList, List<T> newList) {
 		return insertOrUpdateFull(dbList, newList, false);
@@ -81,24 +211,28 @@ public abstract class P4_InsertOrUpdateOp extends P3_UpdateOp {
 			return 0; // 不需要处理了
 		}
 		
-		List<Field> fields = DOInfoReader.getColumns(
-				dbList != null && !dbList.isEmpty() ? dbList.get(0).getClass()
-						: newList.get(0).getClass());
-		
-		// 1. dbList中有key的，但是newList中没有的，删除掉
-		for(T t1 : dbList) {
-			if(isWithKey(t1, fields)) {
-				boolean isNewExists = false;
-				for(T t2 : newList) {
-					if(isKeyEquals(t1, t2, fields)) {
-						isNewExists = true;
-						break;
-					}
+		if(dbList != null && !dbList.isEmpty()) {
+			Class<?> clazz = dbList.get(0).getClass();
+			List<Field> keyFields = DOInfoReader.getKeyColumns(clazz);
+			
+			// 1. dbList中有key的，但是newList中没有的，删除掉
+			Set<List<Object>> newKeys = new HashSet<List<Object>>();
+			for(T t : newList) {
+				List<Object> keyValues = getKeyValues(t, keyFields);
+				if(keyValues != null) {
+					newKeys.add(keyValues);
 				}
-				if(!isNewExists) {
-					deleteByKey(t1);
+			}
+			Map<List<Object>, T> deleteMap = new LinkedHashMap<List<Object>, T>();
+			for(T t : dbList) {
+				List<Object> keyValues = getKeyValues(t, keyFields);
+				if(keyValues != null && !newKeys.contains(keyValues)) {
+					deleteMap.put(keyValues, t);
 				}
 			}
+			if(!deleteMap.isEmpty()) {
+				deleteByKey(new ArrayList<T>(deleteMap.values()));
+			}
 		}
 		
 		// 2. insert or update new list
@@ -106,28 +240,22 @@ public abstract class P4_InsertOrUpdateOp extends P3_UpdateOp {
 	}
 	
 	/**
-	 * 判断两个对象的key是否相等,只有都存在所有的key，且key（如多个，则每个）都相等，才返回true
-	 * @param t1
-	 * @param t2
-	 * @param fields
-	 * @return
+	 * 获得对象的全部key值，用于比较和作为map的key
+	 * @return 对象为null或有key值为null时返回null
 	 */
-	private <T> boolean isKeyEquals(T t1, T t2, List<Field> fields) {
-		if(t1 == null || t2 == null || fields == null) {
-			 return false;
-		}
-		List<Field> keyFields = DOInfoReader.getKeyColumns(t1.getClass());
-		if(keyFields == null || keyFields.isEmpty()) {
-			return false;
+	private static <T> List<Object> getKeyValues(T t, List<Field> keyFields) {
+		if(t == null || keyFields.isEmpty()) {
+			return null;
 		}
+		List<Object> keyValues = new ArrayList<Object>(keyFields.size());
 		for(Field keyField : keyFields) {
-			Object key1 = DOInfoReader.getValue(keyField, t1);
-			Object key2 = DOInfoReader.getValue(keyField, t2);
-			if(key1 == null || key2 == null || !key1.equals(key2)) {
-				return false;
+			Object value = DOInfoReader.getValue(keyField, t);
+			if(value == null) {
+				return null;
 			}
+			keyValues.add(value);
 		}
-		return true;
+		return keyValues;
 	}
 	
 	/**判断对象是否有主键值，必须全部有才返回true*/
@@ -137,10 +265,6 @@ public abstract class P4_InsertOrUpdateOp extends P3_UpdateOp {
 		}
 		
 		List<Field> keyFields = DOInfoReader.getKeyColumns(t.getClass());
-		if(keyFields.isEmpty()) {
-			return false;
-		}
-		
 		for(Field keyField : keyFields) {
 			if(DOInfoReader.getValue(keyField, t) == null) {
 				return false;
@@ -2,12 +2,16 @@ package com.pugwoo.dbhelper.impl.part;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 
 import com.pugwoo.dbhelper.annotation.Column;
 import com.pugwoo.dbhelper.exception.InvalidParameterException;
 import com.pugwoo.dbhelper.exception.MustProvideconstructorException;
 import com.pugwoo.dbhelper.exception.NullKeyValueException;
+import com.pugwoo.dbhelper.sql.SQLAssert;
 import com.pugwoo.dbhelper.sql.SQLUtils;
 import com.pugwoo.dbhelper.utils.DOInfoReader;
 
@@ -23,11 +27,13 @@ public abstract class P5_DeleteOp extends P4_InsertOrUpdateOp {
 		if(softDelete == null) { // 物理删除
 			sql = SQLUtils.getDeleteSQL(t, values);
 		} else { // 软删除
-			Column softDeleteColumn = softDelete.getAnnotation(Column.class);
+			Column softDeleteColumn = DOInfoReader.getEntityMeta(t.getClass()).getSoftDeleteColumn();
 			sql = SQLUtils.getSoftDeleteSQL(t, softDeleteColumn, values);
 		}
 
-		return jdbcExecuteUpdate(sql, values.toArray());
+		int rows = jdbcExecuteUpdate(sql, values.toArray());
+		invalidateCountCache(t.getClass());
+		return rows;
 	}
 		
 	@Override
@@ -50,6 +56,77 @@ public abstract class P5_DeleteOp extends P4_InsertOrUpdateOp {
 		}
 	}
 	
+	@Override
+	public <T> int deleteByKeyList(Class<T> clazz, Collection<?> keyValues) throws NullKeyValueException {
+		if(keyValues == null || keyValues.isEmpty()) {
+			return 0;
+		}
+		SQLAssert.onlyOneKeyColumn(clazz);
+		
+		List<List<Object>> keyValuesList = new ArrayList<List<Object>>();
+		for(Object keyValue : new LinkedHashSet<Object>(keyValues)) {
+			if(keyValue == null) {
+				throw new NullKeyValueException();
+			}
+			keyValuesList.add(Collections.singletonList(keyValue));
+		}
+		return deleteByKeyValues(clazz, keyValuesList);
+	}
+	
+	@Override
+	public <T> int deleteByKey(List<T> list) throws NullKeyValueException {
+		if(list == null || list.isEmpty()) {
+			return 0;
+		}
+		List<T> notNullList = new ArrayList<T>();
+		for(T t : list) {
+			if(t != null) {
+				notNullList.add(t);
+			}
+		}
+		if(notNullList.isEmpty()) {
+			return 0;
+		}
+		SQLAssert.allSameClass(notNullList);
+		
+		Class<?> clazz = notNullList.get(0).getClass();
+		List<Field> keyFields = DOInfoReader.getKeyColumns(clazz);
+		LinkedHashSet<List<Object>> keyValuesSet = new LinkedHashSet<List<Object>>();
+		for(T t : notNullList) {
+			List<Object> keyValues = new ArrayList<Object>(keyFields.size());
+			for(Field keyField : keyFields) {
+				Object value = DOInfoReader.getValue(keyField, t);
+				if(value == null) {
+					throw new NullKeyValueException();
+				}
+				keyValues.add(value);
+			}
+			keyValuesSet.add(keyValues);
+		}
+		return deleteByKeyValues(clazz, new ArrayList<List<Object>>(keyValuesSet));
+	}
+	
+	/**
+	 * 按deleteBatchSize和占位符上限分批删除，每批一条sql，有软删除字段时是软删除。<br>
+	 * 没有外层事务时每批sql单独提交。
+	 * @param clazz
+	 * @param keyValuesList 每个元素是一个对象的全部key值，顺序和DOInfoReader.getKeyColumns一致
+	 * @return
+	 */
+	private int deleteByKeyValues(Class<?> clazz, List<List<Object>> keyValuesList) {
+		int keyCount = DOInfoReader.getKeyColumns(clazz).size();
+		int maxRows = Math.max(1, Math.min(deleteBatchSize, MAX_PLACEHOLDERS / keyCount));
+		int rows = 0;
+		for(int from = 0; from < keyValuesList.size(); from += maxRows) {
+			List<Object> values = new ArrayList<Object>();
+			String sql = SQLUtils.getDeleteByKeysSQL(clazz,
+					keyValuesList.subList(from, Math.min(from + maxRows, keyValuesList.size())), values);
+			rows += jdbcExecuteUpdate(sql, values.toArray());
+		}
+		invalidateCountCache(clazz);
+		return rows;
+	}
+	
 	@Override
 	public <T> int delete(Class<T> clazz, String postSql, Object... args) {
 		if(postSql == null || postSql.trim().isEmpty()) { // warning: very dangerous
@@ -66,7 +143,9 @@ public abstract class P5_DeleteOp extends P4_InsertOrUpdateOp {
 			sql = SQLUtils.getCustomSoftDeleteSQL(clazz, postSql);
 		}
 
-		return namedJdbcExecuteUpdate(sql, args);
+		int rows = namedJdbcExecuteUpdate(sql, args);
+		invalidateCountCache(clazz);
+		return rows;
 	}
 	
 }
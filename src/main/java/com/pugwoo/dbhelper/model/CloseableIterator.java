@@ -0,0 +1,20 @@
+package com.pugwoo.dbhelper.model;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * 流式查询结果的迭代器，持有数据库连接和结果集。<br>
+ * 遍历完会自动关闭；没有遍历完时必须在finally中调用close，否则连接不会释放。
+ *
+ * @param <T>
+ */
+public interface CloseableIterator<T> extends Iterator<T>, Closeable {
+
+	/**
+	 * 关闭结果集并释放数据库连接，可以重复调用
+	 */
+	@Override
+	void close();
+
+}
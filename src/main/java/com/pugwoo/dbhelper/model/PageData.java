@@ -25,6 +25,11 @@ public class PageData<T> implements Serializable {
 	 * 数据
 	 */
 	private List<T> data;
+	
+	/**
+	 * 总数是否是估算值，见DBHelper.getPageWithEstimatedCount
+	 */
+	private boolean estimated;
 
 	public PageData() {
 		this.data = new ArrayList<T>();
@@ -70,4 +75,12 @@ public class PageData<T> implements Serializable {
 		this.data = data;
 	}
 
+	public boolean isEstimated() {
+		return estimated;
+	}
+
+	public void setEstimated(boolean estimated) {
+		this.estimated = estimated;
+	}
+
 }
@@ -0,0 +1,16 @@
+package com.pugwoo.dbhelper.model;
+
+/**
+ * 流式查询时逐行处理数据的回调接口
+ *
+ * @param <T>
+ */
+public interface RowCallback<T> {
+
+	/**
+	 * 处理一行数据，抛出的异常会终止查询并关闭结果集
+	 * @param t
+	 */
+	void handle(T t);
+
+}
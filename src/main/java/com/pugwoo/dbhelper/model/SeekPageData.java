@@ -0,0 +1,48 @@
+package com.pugwoo.dbhelper.model;
+
+import java.util.List;
+
+/**
+ * keyset分页的数据，记录本页最后一条记录的key，作为查询下一页的游标。不查询总数，total固定为-1
+ */
+public class SeekPageData<T> extends PageData<T> {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * 本页最后一条记录的key，单个key时是key的值，多个key时是按key顺序的List。本页没有数据时为null
+	 */
+	private Object lastKey;
+
+	/**
+	 * 是否还有下一页
+	 */
+	private boolean hasMore;
+
+	public SeekPageData() {
+		super();
+	}
+
+	public SeekPageData(List<T> data, int pageSize, Object lastKey, boolean hasMore) {
+		super(-1, data, pageSize);
+		this.lastKey = lastKey;
+		this.hasMore = hasMore;
+	}
+
+	public Object getLastKey() {
+		return lastKey;
+	}
+
+	public void setLastKey(Object lastKey) {
+		this.lastKey = lastKey;
+	}
+
+	public boolean isHasMore() {
+		return hasMore;
+	}
+
+	public void setHasMore(boolean hasMore) {
+		this.hasMore = hasMore;
+	}
+
+}
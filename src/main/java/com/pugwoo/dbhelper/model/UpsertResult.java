@@ -0,0 +1,75 @@
+package com.pugwoo.dbhelper.model;
+
+import java.io.Serializable;
+
+/**
+ * 记录upsert插入和更新的条数。<br>
+ * 【注意】只有affectedRows是数据库返回的准确值。inserted和updated是根据mysql的affected rows约定
+ * (插入计1，更新计2)推算的估算值：值没有变化的行(包括已软删除而不更新的行)按驱动是否设置
+ * CLIENT_FOUND_ROWS计0或1，会被算成插入或者不计入。
+ */
+public class UpsertResult implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * 插入的条数，估算值
+	 */
+	private int inserted;
+
+	/**
+	 * 更新的条数，估算值
+	 */
+	private int updated;
+
+	/**
+	 * 数据库返回的affected rows之和，更新的行计2
+	 */
+	private int affectedRows;
+
+	public UpsertResult() {
+	}
+
+	public UpsertResult(int inserted, int updated) {
+		this.inserted = inserted;
+		this.updated = updated;
+	}
+
+	/**
+	 * 插入和更新的总条数，估算值
+	 * @return
+	 */
+	public int getTotal() {
+		return inserted + updated;
+	}
+
+	public int getInserted() {
+		return inserted;
+	}
+
+	public void setInserted(int inserted) {
+		this.inserted = inserted;
+	}
+
+	public int getUpdated() {
+		return updated;
+	}
+
+	public void setUpdated(int updated) {
+		this.updated = updated;
+	}
+
+	public int getAffectedRows() {
+		return affectedRows;
+	}
+
+	public void setAffectedRows(int affectedRows) {
+		this.affectedRows = affectedRows;
+	}
+
+	@Override
+	public String toString() {
+		return "inserted:" + inserted + ",updated:" + updated + ",affectedRows:" + affectedRows;
+	}
+
+}
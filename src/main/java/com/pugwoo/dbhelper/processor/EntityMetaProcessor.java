@@ -0,0 +1,228 @@
+package com.pugwoo.dbhelper.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+import com.pugwoo.dbhelper.annotation.Column;
+import com.pugwoo.dbhelper.annotation.JoinLeftTable;
+import com.pugwoo.dbhelper.annotation.JoinRightTable;
+import com.pugwoo.dbhelper.annotation.JoinTable;
+import com.pugwoo.dbhelper.annotation.RelatedColumn;
+import com.pugwoo.dbhelper.annotation.Table;
+import com.pugwoo.dbhelper.utils.GeneratedEntityMeta;
+
+/**
+ * 编译期注解处理器：为每个@Table和@JoinTable类生成一个GeneratedEntityMeta实现类，
+ * 运行时DOInfoReader会优先使用它，不再反射扫描全部字段的注解，@Table类的select语句也直接使用生成的。<br>
+ * <br>
+ * 使用方式，在使用方项目的maven-compiler-plugin中配置：<br>
+ * &lt;annotationProcessors&gt;<br>
+ * &nbsp;&nbsp;&lt;annotationProcessor&gt;com.pugwoo.dbhelper.processor.EntityMetaProcessor&lt;/annotationProcessor&gt;<br>
+ * &lt;/annotationProcessors&gt;<br>
+ * 或者javac -processor com.pugwoo.dbhelper.processor.EntityMetaProcessor
+ */
+@SupportedAnnotationTypes({"com.pugwoo.dbhelper.annotation.Table",
+	"com.pugwoo.dbhelper.annotation.JoinTable"})
+public class EntityMetaProcessor extends AbstractProcessor {
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		List<TypeElement> types = new ArrayList<TypeElement>();
+		types.addAll(ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(Table.class)));
+		for(TypeElement type : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(JoinTable.class))) {
+			if(!types.contains(type)) {
+				types.add(type);
+			}
+		}
+
+		for(TypeElement type : types) {
+			if(type.getKind() != ElementKind.CLASS) {
+				continue;
+			}
+			if(type.getNestingKind() != NestingKind.TOP_LEVEL
+					&& type.getNestingKind() != NestingKind.MEMBER) {
+				continue; // 匿名类和局部类运行时找不到生成类
+			}
+			try {
+				generate(type);
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+						"generate entity meta fail:" + e.getMessage(), type);
+			}
+		}
+		return false;
+	}
+
+	private void generate(TypeElement type) throws IOException {
+		String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+		PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+		String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+		String simpleName = (packageName.isEmpty() ? binaryName
+				: binaryName.substring(packageName.length() + 1)).replace('$', '_')
+				+ GeneratedEntityMeta.CLASS_SUFFIX;
+
+		List<VariableElement> columns = getAnnotationColumns(type, Column.class);
+		List<VariableElement> relatedColumns = getAnnotationColumns(type, RelatedColumn.class);
+		List<VariableElement> lefts = getAnnotationColumns(type, JoinLeftTable.class);
+		List<VariableElement> rights = getAnnotationColumns(type, JoinRightTable.class);
+
+		String selectSQL = null;
+		Table table = getTable(type);
+		if(type.getAnnotation(JoinTable.class) == null && table != null && !columns.isEmpty()) {
+			selectSQL = getSelectColumns(columns) + " FROM `" + table.value() + "` " + table.alias();
+		}
+
+		StringBuilder sb = new StringBuilder();
+		if(!packageName.isEmpty()) {
+			sb.append("package ").append(packageName).append(";\n\n");
+		}
+		sb.append("/** generated by ").append(EntityMetaProcessor.class.getName())
+		  .append(" for ").append(binaryName).append(", do not modify */\n");
+		sb.append("public class ").append(simpleName).append(" implements ")
+		  .append(GeneratedEntityMeta.class.getName()).append(" {\n\n");
+		sb.append("\tpublic String[] getColumnFields() {\n\t\treturn ")
+		  .append(toArray(columns)).append(";\n\t}\n\n");
+		sb.append("\tpublic String[] getRelatedColumnFields() {\n\t\treturn ")
+		  .append(toArray(relatedColumns)).append(";\n\t}\n\n");
+		sb.append("\tpublic String getJoinLeftField() {\n\t\treturn ")
+		  .append(lefts.isEmpty() ? "null" : toLiteral(getFieldName(lefts.get(0)))).append(";\n\t}\n\n");
+		sb.append("\tpublic String getJoinRightField() {\n\t\treturn ")
+		  .append(rights.isEmpty() ? "null" : toLiteral(getFieldName(rights.get(0)))).append(";\n\t}\n\n");
+		sb.append("\tpublic String getSelectSQL() {\n\t\treturn ")
+		  .append(selectSQL == null ? "null" : toLiteral(selectSQL)).append(";\n\t}\n\n");
+		sb.append("}\n");
+
+		String className = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+		JavaFileObject file = processingEnv.getFiler().createSourceFile(className, type);
+		Writer writer = file.openWriter();
+		try {
+			writer.write(sb.toString());
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * 和SQLUtils拼凑select列的方式一致
+	 */
+	private static String getSelectColumns(List<VariableElement> columns) {
+		StringBuilder sb = new StringBuilder();
+		for(VariableElement field : columns) {
+			Column column = field.getAnnotation(Column.class);
+			String computed = column.computed().trim();
+			if(!computed.isEmpty()) {
+				sb.append("(").append(computed).append(") AS ");
+			}
+			sb.append("`").append(column.value()).append("`,");
+		}
+		return sb.substring(0, sb.length() - 1);
+	}
+
+	/**
+	 * 获得类上的@Table注解，如果子类没有，会往父类查找
+	 */
+	private static Table getTable(TypeElement type) {
+		TypeElement curType = type;
+		while(curType != null) {
+			Table table = curType.getAnnotation(Table.class);
+			if(table != null) {
+				return table;
+			}
+			curType = getSuperclass(curType);
+		}
+		return null;
+	}
+
+	/**
+	 * 获得type类及其父类有annoClazz注解的字段，父类优先，和DOInfoReader的顺序一致
+	 */
+	private static List<VariableElement> getAnnotationColumns(TypeElement type,
+			Class<? extends java.lang.annotation.Annotation> annoClazz) {
+		List<TypeElement> classLink = new ArrayList<TypeElement>();
+		TypeElement curType = type;
+		while(curType != null) {
+			classLink.add(curType);
+			curType = getSuperclass(curType);
+		}
+
+		List<VariableElement> result = new ArrayList<VariableElement>();
+		for(int i = classLink.size() - 1; i >= 0; i--) {
+			for(VariableElement field : ElementFilter.fieldsIn(classLink.get(i).getEnclosedElements())) {
+				if(field.getAnnotation(annoClazz) != null) {
+					result.add(field);
+				}
+			}
+		}
+		return result;
+	}
+
+	private static TypeElement getSuperclass(TypeElement type) {
+		TypeMirror superclass = type.getSuperclass();
+		if(superclass.getKind() != TypeKind.DECLARED) {
+			return null;
+		}
+		Element element = ((DeclaredType) superclass).asElement();
+		if(((TypeElement) element).getQualifiedName().contentEquals("java.lang.Object")) {
+			return null;
+		}
+		return (TypeElement) element;
+	}
+
+	private String getFieldName(VariableElement field) {
+		TypeElement owner = (TypeElement) field.getEnclosingElement();
+		return processingEnv.getElementUtils().getBinaryName(owner) + "#" + field.getSimpleName();
+	}
+
+	private String toArray(List<VariableElement> fields) {
+		StringBuilder sb = new StringBuilder("new String[] {");
+		for(int i = 0; i < fields.size(); i++) {
+			if(i > 0) {
+				sb.append(", ");
+			}
+			sb.append(toLiteral(getFieldName(fields.get(i))));
+		}
+		return sb.append("}").toString();
+	}
+
+	private static String toLiteral(String str) {
+		StringBuilder sb = new StringBuilder("\"");
+		for(int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+			switch (c) {
+			case '"': sb.append("\\\""); break;
+			case '\\': sb.append("\\\\"); break;
+			case '\n': sb.append("\\n"); break;
+			case '\r': sb.append("\\r"); break;
+			case '\t': sb.append("\\t"); break;
+			default: sb.append(c);
+			}
+		}
+		return sb.append("\"").toString();
+	}
+
+}
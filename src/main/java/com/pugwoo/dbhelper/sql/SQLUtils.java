@@ -4,7 +4,12 @@ import java.lang.reflect.Field;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,16 +23,24 @@ import com.pugwoo.dbhelper.enums.JoinTypeEnum;
 import com.pugwoo.dbhelper.exception.BadSQLSyntaxException;
 import com.pugwoo.dbhelper.exception.InvalidParameterException;
 import com.pugwoo.dbhelper.exception.NoKeyColumnAnnotationException;
+import com.pugwoo.dbhelper.exception.NoTableAnnotationException;
 import com.pugwoo.dbhelper.exception.NullKeyValueException;
 import com.pugwoo.dbhelper.exception.OnConditionIsNeedException;
 import com.pugwoo.dbhelper.utils.DOInfoReader;
+import com.pugwoo.dbhelper.utils.EntityMeta;
+import com.pugwoo.dbhelper.utils.LRUCache;
 
 import net.sf.jsqlparser.JSQLParserException;
 import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.Function;
+import net.sf.jsqlparser.expression.LongValue;
 import net.sf.jsqlparser.parser.CCJSqlParserUtil;
 import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.select.OrderByElement;
 import net.sf.jsqlparser.statement.select.PlainSelect;
 import net.sf.jsqlparser.statement.select.Select;
+import net.sf.jsqlparser.statement.select.SelectExpressionItem;
+import net.sf.jsqlparser.statement.select.SelectItem;
 
 /**
  * SQL解析工具类
@@ -39,6 +52,43 @@ public class SQLUtils {
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger(SQLUtils.class);
 	
+	/**
+	 * 每个类固定不变的SQL片段，每个类只拼凑一次。生成失败(抛异常)的不缓存
+	 */
+	private static Map<Class<?>, String> selectSQLCache = new ConcurrentHashMap<Class<?>, String>();
+	private static Map<Class<?>, String> selectCalcFoundRowsSQLCache = new ConcurrentHashMap<Class<?>, String>();
+	private static Map<Class<?>, String> selectCountSQLCache = new ConcurrentHashMap<Class<?>, String>();
+	private static Map<Class<?>, String> keysWhereSQLCache = new ConcurrentHashMap<Class<?>, String>();
+	private static Map<Class<?>, String> keyInWhereSQLCache = new ConcurrentHashMap<Class<?>, String>();
+	private static Map<Class<?>, String> selectCountOverSQLCache = new ConcurrentHashMap<Class<?>, String>();
+	
+	/**
+	 * getCountSQL的结果缓存，key是(类,postSql)
+	 */
+	private static final LRUCache<SoftDeletedKey, String> countSQLCache =
+			new LRUCache<SoftDeletedKey, String>(1024);
+	
+	/**
+	 * getExistSQL去掉limit的结果缓存，key是(类,postSql)
+	 */
+	private static final LRUCache<SoftDeletedKey, String> existSQLCache =
+			new LRUCache<SoftDeletedKey, String>(1024);
+	
+	/**
+	 * isCountOverSupported的结果缓存，key是(类,postSql)
+	 */
+	private static final LRUCache<SoftDeletedKey, Boolean> countOverSupportedCache =
+			new LRUCache<SoftDeletedKey, Boolean>(1024);
+	
+	/**getSelectCountOverSQL中总数列的名称*/
+	public static final String COUNT_OVER_LABEL = "__dbhelper_total";
+	
+	/**
+	 * autoSetSoftDeleted的结果缓存，key是(类,whereSql)，只缓存需要解析sql的软删除类
+	 */
+	private static final LRUCache<SoftDeletedKey, String> softDeletedCache =
+			new LRUCache<SoftDeletedKey, String>(1024);
+	
 	/**
 	 * select 字段 from t_table, 不包含where子句及以后的语句
 	 * @param clazz
@@ -46,34 +96,50 @@ public class SQLUtils {
 	 * @return
 	 */
 	public static String getSelectSQL(Class<?> clazz, boolean withSQL_CALC_FOUND_ROWS) {
+		Map<Class<?>, String> cache = withSQL_CALC_FOUND_ROWS ? selectCalcFoundRowsSQLCache : selectSQLCache;
+		String sql = cache.get(clazz);
+		if(sql == null) {
+			sql = _getSelectSQL(clazz, withSQL_CALC_FOUND_ROWS);
+			cache.put(clazz, sql);
+		}
+		return sql;
+	}
+	
+	private static String _getSelectSQL(Class<?> clazz, boolean withSQL_CALC_FOUND_ROWS) {
 		StringBuilder sql = new StringBuilder();
 		sql.append("SELECT ");
 		if(withSQL_CALC_FOUND_ROWS) {
 			sql.append("SQL_CALC_FOUND_ROWS ");
 		}
 		
+		EntityMeta meta = DOInfoReader.getEntityMeta(clazz);
+		if(meta.getSelectSQL() != null) { // 编译期已生成
+			sql.append(meta.getSelectSQL());
+			return sql.toString();
+		}
+		
 		// 处理join方式clazz
-		JoinTable joinTable = DOInfoReader.getJoinTable(clazz);
+		JoinTable joinTable = meta.getJoinTable();
 		if(joinTable != null) {
 			Field leftTableField = DOInfoReader.getJoinLeftTable(clazz);
 			Field rightTableField = DOInfoReader.getJoinRightTable(clazz);
 			
-			JoinLeftTable joinLeftTable = leftTableField.getAnnotation(JoinLeftTable.class);
-			JoinRightTable joinRightTable = rightTableField.getAnnotation(JoinRightTable.class);
+			JoinLeftTable joinLeftTable = meta.getJoinLeftTable();
+			JoinRightTable joinRightTable = meta.getJoinRightTable();
 			
-	        Table table1 = DOInfoReader.getTable(leftTableField.getType());
+			EntityMeta meta1 = DOInfoReader.getEntityMeta(leftTableField.getType());
 	        List<Field> fields1 = DOInfoReader.getColumns(leftTableField.getType());
 			
-	        Table table2 = DOInfoReader.getTable(rightTableField.getType());
+			EntityMeta meta2 = DOInfoReader.getEntityMeta(rightTableField.getType());
 	        List<Field> fields2 = DOInfoReader.getColumns(rightTableField.getType());
 	        
-	        sql.append(join(fields1, ",", joinLeftTable.alias() + "."));
+	        sql.append(join(meta1, fields1, ",", joinLeftTable.alias() + "."));
 	        sql.append(",");
-	        sql.append(join(fields2, ",", joinRightTable.alias() + "."));
-	        sql.append(" FROM ").append(getTableName(table1))
+	        sql.append(join(meta2, fields2, ",", joinRightTable.alias() + "."));
+	        sql.append(" FROM ").append(getTableName(leftTableField.getType()))
 	           .append(" ").append(joinLeftTable.alias()).append(" ");
 	        sql.append(joinTable.joinType().getCode()).append(" ");
-	        sql.append(getTableName(table2)).append(" ").append(joinRightTable.alias());
+	        sql.append(getTableName(rightTableField.getType())).append(" ").append(joinRightTable.alias());
 	        if(joinTable.on() == null || joinTable.on().trim().isEmpty()) {
 	        	throw new OnConditionIsNeedException("join table VO:" + clazz.getName());
 	        }
@@ -83,8 +149,8 @@ public class SQLUtils {
 			Table table = DOInfoReader.getTable(clazz);
 			List<Field> fields = DOInfoReader.getColumns(clazz);
 			
-			sql.append(join(fields, ","));
-			sql.append(" FROM ").append(getTableName(table)).append(" ").append(table.alias());
+			sql.append(join(meta, fields, ","));
+			sql.append(" FROM ").append(getTableName(clazz)).append(" ").append(table.alias());
 		}
 		
 		return sql.toString();
@@ -96,38 +162,230 @@ public class SQLUtils {
 	 * @return
 	 */
 	public static String getSelectCountSQL(Class<?> clazz) {
+		String sql = selectCountSQLCache.get(clazz);
+		if(sql == null) {
+			sql = _getSelectCountSQL(clazz);
+			selectCountSQLCache.put(clazz, sql);
+		}
+		return sql;
+	}
+	
+	private static String _getSelectCountSQL(Class<?> clazz) {
 		StringBuilder sql = new StringBuilder();
 		sql.append("SELECT count(*)");
 		
 		// 处理join方式clazz
-		JoinTable joinTable = DOInfoReader.getJoinTable(clazz);
+		EntityMeta meta = DOInfoReader.getEntityMeta(clazz);
+		JoinTable joinTable = meta.getJoinTable();
 		if(joinTable != null) {
 			Field leftTableField = DOInfoReader.getJoinLeftTable(clazz);
 			Field rightTableField = DOInfoReader.getJoinRightTable(clazz);
 			
-			JoinLeftTable joinLeftTable = leftTableField.getAnnotation(JoinLeftTable.class);
-			JoinRightTable joinRightTable = rightTableField.getAnnotation(JoinRightTable.class);
-			
-	        Table table1 = DOInfoReader.getTable(leftTableField.getType());
-	        Table table2 = DOInfoReader.getTable(rightTableField.getType());
+			JoinLeftTable joinLeftTable = meta.getJoinLeftTable();
+			JoinRightTable joinRightTable = meta.getJoinRightTable();
 	        
-	        sql.append(" FROM ").append(getTableName(table1))
+	        sql.append(" FROM ").append(getTableName(leftTableField.getType()))
 	           .append(" ").append(joinLeftTable.alias()).append(" ");
 	        sql.append(joinTable.joinType().getCode()).append(" ");
-	        sql.append(getTableName(table2)).append(" ").append(joinRightTable.alias());
+	        sql.append(getTableName(rightTableField.getType())).append(" ").append(joinRightTable.alias());
 	        if(joinTable.on() == null || joinTable.on().trim().isEmpty()) {
 	        	throw new OnConditionIsNeedException("join table VO:" + clazz.getName());
 	        }
 	        sql.append(" on ").append(joinTable.on().trim());
 	        
 		} else {
-			Table table = DOInfoReader.getTable(clazz);
-			sql.append(" FROM ").append(getTableName(table));
+			sql.append(" FROM ").append(getTableName(clazz));
 		}
 		
 		return sql.toString();
 	}
 	
+	/**
+	 * 生成计算postSql查询结果总数的sql，会自动处理软删除条件。<br>
+	 * 去掉order by(order by中有?参数时保留，否则参数对不上)；有group by/having/distinct时，把查询作为子查询再count(*)；
+	 * jsqlparser无法解析时整个查询作为子查询
+	 * @param clazz
+	 * @param postSql 和分页查询的postSql一样，不能有limit子句
+	 * @return
+	 */
+	public static String getCountSQL(Class<?> clazz, String postSql) {
+		SoftDeletedKey key = new SoftDeletedKey(clazz, postSql == null ? "" : postSql);
+		String result = countSQLCache.get(key);
+		if(result != null) {
+			return result;
+		}
+		
+		String selectSql = getSelectSQL(clazz, false) + autoSetSoftDeleted(postSql, clazz);
+		try {
+			Statement statement = CCJSqlParserUtil.parse(selectSql);
+			PlainSelect plainSelect = (PlainSelect) ((Select) statement).getSelectBody();
+			removeOrderBy(plainSelect);
+			if(plainSelect.getGroupByColumnReferences() != null || plainSelect.getHaving() != null
+					|| plainSelect.getDistinct() != null) {
+				result = "SELECT count(*) FROM (" + plainSelect.toString() + ") t_count";
+			} else {
+				Function count = new Function();
+				count.setName("count");
+				count.setAllColumns(true);
+				List<SelectItem> selectItems = new ArrayList<SelectItem>();
+				selectItems.add(new SelectExpressionItem(count));
+				plainSelect.setSelectItems(selectItems);
+				result = plainSelect.toString();
+			}
+		} catch (JSQLParserException e) {
+			result = "SELECT count(*) FROM (" + selectSql + ") t_count";
+		} catch (ClassCastException e) { // 例如union
+			result = "SELECT count(*) FROM (" + selectSql + ") t_count";
+		}
+		countSQLCache.put(key, result);
+		return result;
+	}
+	
+	/**
+	 * 去掉不影响行数的order by。order by中有?参数(例如order by field(id,?))时保留，
+	 * 因为调用者传入的参数包含了order by的参数
+	 */
+	private static void removeOrderBy(PlainSelect plainSelect) {
+		List<OrderByElement> orderByElements = plainSelect.getOrderByElements();
+		if(orderByElements == null) {
+			return;
+		}
+		for(OrderByElement orderByElement : orderByElements) {
+			if(orderByElement.toString().indexOf('?') >= 0) {
+				return;
+			}
+		}
+		plainSelect.setOrderByElements(null);
+	}
+	
+	/**
+	 * 判断postSql能否用COUNT(*) OVER()计算总数：distinct在窗口函数之后执行，COUNT(*) OVER()算的是去重前的行数；
+	 * group by/having和jsqlparser无法解析的sql也不确定结果行数是否一致，都返回false，由调用方改用count查询
+	 * @param clazz
+	 * @param postSql 和分页查询的postSql一样
+	 * @return
+	 */
+	public static boolean isCountOverSupported(Class<?> clazz, String postSql) {
+		SoftDeletedKey key = new SoftDeletedKey(clazz, postSql == null ? "" : postSql);
+		Boolean result = countOverSupportedCache.get(key);
+		if(result != null) {
+			return result;
+		}
+		
+		String selectSql = getSelectSQL(clazz, false) + autoSetSoftDeleted(postSql, clazz);
+		try {
+			Statement statement = CCJSqlParserUtil.parse(selectSql);
+			PlainSelect plainSelect = (PlainSelect) ((Select) statement).getSelectBody();
+			result = plainSelect.getGroupByColumnReferences() == null && plainSelect.getHaving() == null
+					&& plainSelect.getDistinct() == null;
+		} catch (JSQLParserException e) {
+			result = false;
+		} catch (ClassCastException e) { // 例如union
+			result = false;
+		}
+		countOverSupportedCache.put(key, result);
+		return result;
+	}
+	
+	/**
+	 * 生成判断postSql查询结果是否存在的sql，最多返回limit行，会自动处理软删除条件。<br>
+	 * 去掉order by(order by中有?参数时保留)，查询列换成1；有group by/having/distinct或jsqlparser无法解析时保留原查询列
+	 * @param clazz
+	 * @param postSql 和分页查询的postSql一样，不能有limit子句
+	 * @param limit
+	 * @return
+	 */
+	public static String getExistSQL(Class<?> clazz, String postSql, int limit) {
+		SoftDeletedKey key = new SoftDeletedKey(clazz, postSql == null ? "" : postSql);
+		String result = existSQLCache.get(key);
+		if(result == null) {
+			String selectSql = getSelectSQL(clazz, false) + autoSetSoftDeleted(postSql, clazz);
+			try {
+				Statement statement = CCJSqlParserUtil.parse(selectSql);
+				PlainSelect plainSelect = (PlainSelect) ((Select) statement).getSelectBody();
+				removeOrderBy(plainSelect);
+				if(plainSelect.getGroupByColumnReferences() == null && plainSelect.getHaving() == null
+						&& plainSelect.getDistinct() == null) {
+					List<SelectItem> selectItems = new ArrayList<SelectItem>();
+					selectItems.add(new SelectExpressionItem(new LongValue(1)));
+					plainSelect.setSelectItems(selectItems);
+				}
+				result = plainSelect.toString();
+			} catch (JSQLParserException e) {
+				result = selectSql;
+			} catch (ClassCastException e) { // 例如union
+				result = selectSql;
+			}
+			existSQLCache.put(key, result);
+		}
+		return result + genLimitSQL(null, limit);
+	}
+	
+	/**
+	 * 生成计算postSql查询结果前limit行行数的sql，用于判断是否至少有limit条记录，会自动处理软删除条件
+	 * @param clazz
+	 * @param postSql 和分页查询的postSql一样，不能有limit子句
+	 * @param limit
+	 * @return
+	 */
+	public static String getExistCountSQL(Class<?> clazz, String postSql, int limit) {
+		return "SELECT count(*) FROM (" + getExistSQL(clazz, postSql, limit) + ") t_exist";
+	}
+	
+	/**
+	 * 生成查询多个key中哪些存在的sql，只查询主键列，key通过in (?)传入，会自动处理软删除条件
+	 * @param clazz 只支持一个主键的类
+	 * @return
+	 */
+	public static String getSelectExistKeysSQL(Class<?> clazz) {
+		Field keyField = DOInfoReader.getOneKeyColumn(clazz);
+		return "SELECT " + DOInfoReader.getEntityMeta(clazz).getColumnName(keyField)
+				+ " FROM " + getTableName(clazz) + getKeyInWhereSQL(clazz);
+	}
+	
+	/**
+	 * select COUNT(*) OVER() AS 总数列, 字段 from t_table, 不包含where子句及以后的语句。需要mysql 8.0+
+	 * @param clazz
+	 * @return
+	 */
+	public static String getSelectCountOverSQL(Class<?> clazz) {
+		String sql = selectCountOverSQLCache.get(clazz);
+		if(sql == null) {
+			sql = "SELECT COUNT(*) OVER() AS `" + COUNT_OVER_LABEL + "`,"
+					+ getSelectSQL(clazz, false).substring("SELECT ".length());
+			selectCountOverSQLCache.put(clazz, sql);
+		}
+		return sql;
+	}
+
+	/**
+	 * 从information_schema查询表的估算行数，只适用于mysql，InnoDB的估算误差可能达到40%
+	 * @param clazz 只支持@Table的类
+	 * @param values 返回传入sql的参数
+	 * @return
+	 */
+	public static String getTableRowsSQL(Class<?> clazz, List<Object> values) {
+		String table = DOInfoReader.getTable(clazz).value();
+		int dot = table.indexOf('.');
+		if(dot > 0) {
+			values.add(table.substring(0, dot));
+			values.add(table.substring(dot + 1));
+			return "SELECT TABLE_ROWS FROM information_schema.TABLES WHERE TABLE_SCHEMA=? AND TABLE_NAME=?";
+		}
+		values.add(table);
+		return "SELECT TABLE_ROWS FROM information_schema.TABLES WHERE TABLE_SCHEMA=DATABASE() AND TABLE_NAME=?";
+	}
+	
+	/**
+	 * 用于估算postSql结果总数的EXPLAIN语句，会自动处理软删除条件
+	 * @param clazz
+	 * @param postSql 和分页查询的postSql一样，不能有limit子句
+	 * @return
+	 */
+	public static String getExplainCountSQL(Class<?> clazz, String postSql) {
+		return "EXPLAIN " + getCountSQL(clazz, postSql);
+	}
+	
 	/**
 	 * 获得主键where子句，包含where关键字。会自动处理软删除条件
 	 * 
@@ -140,13 +398,15 @@ public class SQLUtils {
 	public static <T> String getKeysWhereSQL(T t, List<Object> keyValues) 
 	    throws NoKeyColumnAnnotationException, NullKeyValueException {
 		
-		List<Field> keyFields = DOInfoReader.getKeyColumns(t.getClass());
+		String where = getKeysWhereSQL(t.getClass());
 		
 		List<Object> _keyValues = new ArrayList<Object>();
-		String where = joinWhereAndGetValue(keyFields, "AND", _keyValues, t);
+		for(Field keyField : DOInfoReader.getKeyColumns(t.getClass())) {
+			_keyValues.add(DOInfoReader.getValue(keyField, t));
+		}
 		
 		// 检查主键不允许为null
-		for(Object value : keyValues) {
+		for(Object value : _keyValues) {
 			if(value == null) {
 				throw new NullKeyValueException();
 			}
@@ -156,7 +416,7 @@ public class SQLUtils {
 			keyValues.addAll(_keyValues);
 		}
 		
-		return autoSetSoftDeleted("WHERE " + where, t.getClass());
+		return where;
 	}
 	
 	/**
@@ -167,9 +427,14 @@ public class SQLUtils {
 	 */
 	public static String getKeysWhereSQL(Class<?> clazz) 
 			throws NoKeyColumnAnnotationException {
-		List<Field> keyFields = DOInfoReader.getKeyColumns(clazz);
-		String where = joinWhere(keyFields, "AND");
-		return autoSetSoftDeleted("WHERE " + where, clazz);
+		String sql = keysWhereSQLCache.get(clazz);
+		if(sql == null) {
+			List<Field> keyFields = DOInfoReader.getKeyColumns(clazz);
+			String where = joinWhere(DOInfoReader.getEntityMeta(clazz), keyFields, "AND");
+			sql = autoSetSoftDeleted("WHERE " + where, clazz);
+			keysWhereSQLCache.put(clazz, sql);
+		}
+		return sql;
 	}
 	
 	/**
@@ -178,9 +443,14 @@ public class SQLUtils {
 	 * @return
 	 */
 	public static String getKeyInWhereSQL(Class<?> clazz) {
-		Field keyField = DOInfoReader.getOneKeyColumn(clazz);
-		return autoSetSoftDeleted("WHERE " +
-	           getColumnName(keyField.getAnnotation(Column.class)) + " in (?)", clazz);
+		String sql = keyInWhereSQLCache.get(clazz);
+		if(sql == null) {
+			Field keyField = DOInfoReader.getOneKeyColumn(clazz);
+			sql = autoSetSoftDeleted("WHERE " +
+		           DOInfoReader.getEntityMeta(clazz).getColumnName(keyField) + " in (?)", clazz);
+			keyInWhereSQLCache.put(clazz, sql);
+		}
+		return sql;
 	}
 	
 	/**
@@ -214,12 +484,13 @@ public class SQLUtils {
 			isWithNullValue = true; // 对于多个值的，只能含null值一起插入
 		}
 		
-		Table table = DOInfoReader.getTable(tList.get(0).getClass());
-		List<Field> fields = DOInfoReader.getColumns(tList.get(0).getClass());
+		Class<?> clazz = tList.get(0).getClass();
+		EntityMeta meta = DOInfoReader.getEntityMeta(clazz);
+		List<Field> fields = DOInfoReader.getColumns(clazz);
 		
-		sql.append(getTableName(table)).append(" (");
+		sql.append(getTableName(clazz)).append(" (");
 		List<Object> _values = new ArrayList<Object>(); // 之所以增加一个临时变量，是避免values初始不是空的易错情况
-		String fieldSql = joinAndGetValue(fields, ",", _values, tList.get(0), isWithNullValue);
+		String fieldSql = joinAndGetValue(meta, fields, ",", _values, tList.get(0), isWithNullValue);
 		sql.append(fieldSql);
 		sql.append(") VALUES ");
 		String dotSql = "(" + join("?", _values.size(), ",") + ")";
@@ -227,13 +498,92 @@ public class SQLUtils {
 		values.addAll(_values);
 		
 		for(int i = 1; i < tList.size(); i++) {
-			joinAndGetValue(fields, ",", values, tList.get(i), isWithNullValue);
+			joinAndGetValue(meta, fields, ",", values, tList.get(i), isWithNullValue);
 			sql.append(",").append(dotSql);
 		}
 			
 		return sql.toString();
 	}
-	
+
+	/**
+	 * 生成多行的INSERT INTO ... VALUES (...),(...)语句，插入所有非计算列(包括null值)。
+	 * 参数由调用方按DOInfoReader.getEntityMeta(clazz).getInsertColumns()的顺序逐行提供。
+	 * @param clazz
+	 * @param rows 行数，必须大于0
+	 * @return
+	 */
+	public static String getInsertSQLWithNull(Class<?> clazz, int rows) {
+		EntityMeta meta = DOInfoReader.getEntityMeta(clazz);
+		List<Field> insertFields = meta.getInsertColumns();
+
+		StringBuilder sql = new StringBuilder("INSERT INTO ");
+		sql.append(getTableName(clazz)).append(" (");
+		sql.append(join(meta, insertFields, ","));
+		sql.append(") VALUES ");
+		String dotSql = "(" + join("?", insertFields.size(), ",") + ")";
+		for(int i = 0; i < rows; i++) {
+			if(i > 0) {
+				sql.append(",");
+			}
+			sql.append(dotSql);
+		}
+		return sql.toString();
+	}
+
+	/**
+	 * 生成多行的INSERT INTO ... VALUES (...),(...) ON DUPLICATE KEY UPDATE col=VALUES(col),...语句，将值放到values中。<br>
+	 * 有软删除字段时更新写成col=IF(`deleted`=0,VALUES(col),col)，冲突的记录已软删除时不修改。
+	 * @param clazz
+	 * @param rows 每行插入的值，和insertFields一一对应
+	 * @param insertFields 插入的列
+	 * @param updateFields 主键或唯一键冲突时更新的列，为空时只写key=key，即不修改已有数据
+	 * @param values 必须
+	 * @return
+	 */
+	public static String getInsertOnDuplicateKeyUpdateSQL(Class<?> clazz, List<Object[]> rows,
+			List<Field> insertFields, List<Field> updateFields, List<Object> values) {
+		EntityMeta meta = DOInfoReader.getEntityMeta(clazz);
+
+		StringBuilder sql = new StringBuilder("INSERT INTO ");
+		sql.append(getTableName(clazz)).append(" (");
+		sql.append(join(meta, insertFields, ","));
+		sql.append(") VALUES ");
+		String dotSql = "(" + join("?", insertFields.size(), ",") + ")";
+		for(int i = 0; i < rows.size(); i++) {
+			if(i > 0) {
+				sql.append(",");
+			}
+			sql.append(dotSql);
+			for(Object value : rows.get(i)) {
+				values.add(value);
+			}
+		}
+
+		sql.append(" ON DUPLICATE KEY UPDATE ");
+		if(updateFields.isEmpty()) {
+			String keyColumn = meta.getColumnName(meta.getKeyColumns().get(0));
+			sql.append(keyColumn).append("=").append(keyColumn);
+		} else {
+			Field softDelete = meta.getSoftDeleteField();
+			String notDeleted = softDelete == null ? null
+					: meta.getColumnName(softDelete) + "=" + meta.getSoftDeleteNormalValue();
+			for(int i = 0; i < updateFields.size(); i++) {
+				String columnName = meta.getColumnName(updateFields.get(i));
+				if(i > 0) {
+					sql.append(",");
+				}
+				sql.append(columnName).append("=");
+				if(notDeleted == null) {
+					sql.append("VALUES(").append(columnName).append(")");
+				} else { // 已软删除的记录不更新，和update一致
+					sql.append("IF(").append(notDeleted).append(",VALUES(").append(columnName)
+					   .append("),").append(columnName).append(")");
+				}
+			}
+		}
+		return sql.toString();
+	}
+
 	/**
 	 * 生成insert into (...) select ?,?,? from where not exists (select 1 from where)语句
 	 * @param t
@@ -245,11 +595,12 @@ public class SQLUtils {
 			boolean isWithNullValue, String whereSql) {
 		StringBuilder sql = new StringBuilder("INSERT INTO ");
 		
-		Table table = DOInfoReader.getTable(t.getClass());
+		String tableName = getTableName(t.getClass());
+		EntityMeta meta = DOInfoReader.getEntityMeta(t.getClass());
 		List<Field> fields = DOInfoReader.getColumns(t.getClass());
 		
-		sql.append(getTableName(table)).append(" (");
-		sql.append(joinAndGetValue(fields, ",", values, t, isWithNullValue));
+		sql.append(tableName).append(" (");
+		sql.append(joinAndGetValue(meta, fields, ",", values, t, isWithNullValue));
 		sql.append(") select ");
 		sql.append(join("?", values.size(), ","));
 		sql.append(" from dual where not exists (select 1 from ");
@@ -259,7 +610,7 @@ public class SQLUtils {
 		}
 		whereSql = autoSetSoftDeleted(whereSql, t.getClass());
 		
-		sql.append(getTableName(table)).append(" ").append(whereSql).append(" limit 1)");
+		sql.append(tableName).append(" ").append(whereSql).append(" limit 1)");
 		
 		return sql.toString();
 	}
@@ -278,15 +629,16 @@ public class SQLUtils {
 		StringBuilder sql = new StringBuilder();
 		sql.append("UPDATE ");
 		
-		Table table = DOInfoReader.getTable(t.getClass());
+		EntityMeta meta = DOInfoReader.getEntityMeta(t.getClass());
+		String tableName = getTableName(t.getClass());
 		List<Field> keyFields = DOInfoReader.getKeyColumns(t.getClass());
 		
 		List<Field> notKeyFields = DOInfoReader.getNotKeyColumns(t.getClass());
 		
-		sql.append(getTableName(table)).append(" SET ");
+		sql.append(tableName).append(" SET ");
 		
 		List<Object> setValues = new ArrayList<Object>();
-		String setSql = joinSetAndGetValue(notKeyFields, setValues, t, withNull);
+		String setSql = joinSetAndGetValue(meta, notKeyFields, setValues, t, withNull);
 		if(setValues.isEmpty()) {
 			return null; // all field is empty, not need to update
 		}
@@ -294,7 +646,7 @@ public class SQLUtils {
 		values.addAll(setValues);
 		
 		List<Object> whereValues = new ArrayList<Object>();
-		String where = "WHERE " + joinWhereAndGetValue(keyFields, "AND", whereValues, t);
+		String where = "WHERE " + joinWhereAndGetValue(meta, keyFields, "AND", whereValues, t);
 		// 检查key值是否有null的，不允许有null
 		for(Object v : whereValues) {
 			if(v == null) {
@@ -319,6 +671,105 @@ public class SQLUtils {
 		return sql.toString();
 	}
 	
+	/**
+	 * 生成一条语句更新多个对象的update语句，只更新非null的字段：<br>
+	 * UPDATE t SET `a`=CASE WHEN `id`=? THEN ? ... ELSE `a` END,... WHERE `id` IN (?,...)<br>
+	 * 多个主键时WHEN条件为`k1`=? AND `k2`=?，where条件为多个主键条件的OR。会自动处理软删除条件。<br>
+	 * 主键重复的对象和按顺序逐个update的结果一致：每一列取最后一个非null的值。
+	 * 
+	 * @param tList 必须是同一个类的非null对象，不能为空
+	 * @param values 必须
+	 * @return 返回值为null表示不需要更新操作
+	 * @throws NullKeyValueException 当有对象的主键为null时抛出
+	 */
+	public static <T> String getUpdateBulkSQL(List<T> tList, List<Object> values) {
+		Class<?> clazz = tList.get(0).getClass();
+		EntityMeta meta = DOInfoReader.getEntityMeta(clazz);
+		List<Field> keyFields = DOInfoReader.getKeyColumns(clazz);
+		List<Field> notKeyFields = DOInfoReader.getNotKeyColumns(clazz);
+		
+		List<List<Object>> keyValuesList = new ArrayList<List<Object>>();
+		Set<List<Object>> distinctKeyValues = new LinkedHashSet<List<Object>>();
+		for(T t : tList) {
+			List<Object> keyValues = new ArrayList<Object>();
+			for(Field keyField : keyFields) {
+				Object value = DOInfoReader.getValue(keyField, t);
+				if(value == null) {
+					throw new NullKeyValueException();
+				}
+				keyValues.add(value);
+			}
+			keyValuesList.add(keyValues);
+			distinctKeyValues.add(keyValues);
+		}
+		String keyCondition = joinWhere(meta, keyFields, "AND");
+		
+		StringBuilder setSql = new StringBuilder();
+		List<Object> setValues = new ArrayList<Object>();
+		Object[] fieldValues = new Object[tList.size()];
+		for(Field field : notKeyFields) {
+			// CASE WHEN取第一个匹配的，所以主键重复时只保留最后一个非null的值
+			Set<List<Object>> setKeys = new HashSet<List<Object>>();
+			for(int i = tList.size() - 1; i >= 0; i--) {
+				Object value = DOInfoReader.getValue(field, tList.get(i));
+				fieldValues[i] = value != null && setKeys.add(keyValuesList.get(i)) ? value : null;
+			}
+			StringBuilder caseSql = new StringBuilder();
+			for(int i = 0; i < tList.size(); i++) {
+				if(fieldValues[i] == null) {
+					continue;
+				}
+				caseSql.append(" WHEN ").append(keyCondition).append(" THEN ?");
+				setValues.addAll(keyValuesList.get(i));
+				setValues.add(fieldValues[i]);
+			}
+			if(caseSql.length() == 0) {
+				continue; // 所有对象这一列都是null，不更新
+			}
+			String columnName = meta.getColumnName(field);
+			if(setSql.length() > 0) {
+				setSql.append(",");
+			}
+			setSql.append(columnName).append("=CASE").append(caseSql)
+			      .append(" ELSE ").append(columnName).append(" END");
+		}
+		if(setValues.isEmpty()) {
+			return null; // all field is empty, not need to update
+		}
+		
+		StringBuilder sql = new StringBuilder("UPDATE ");
+		sql.append(getTableName(clazz)).append(" SET ").append(setSql);
+		sql.append(autoSetSoftDeleted(joinKeysInWhere(meta, keyFields, distinctKeyValues.size()), clazz));
+		
+		values.addAll(setValues);
+		for(List<Object> keyValues : distinctKeyValues) {
+			values.addAll(keyValues);
+		}
+		return sql.toString();
+	}
+	
+	/**
+	 * 生成按多个key删除的sql，有软删除字段时生成软删除的update语句，将key值放到values中。
+	 * @param clazz
+	 * @param keyValuesList 每个元素是一个对象的全部key值，顺序和DOInfoReader.getKeyColumns一致，不能为空
+	 * @param values 必须
+	 * @return
+	 */
+	public static String getDeleteByKeysSQL(Class<?> clazz, List<List<Object>> keyValuesList,
+			List<Object> values) {
+		EntityMeta meta = DOInfoReader.getEntityMeta(clazz);
+		String where = joinKeysInWhere(meta, meta.getKeyColumns(), keyValuesList.size());
+		for(List<Object> keyValues : keyValuesList) {
+			values.addAll(keyValues);
+		}
+		
+		if(meta.getSoftDeleteField() == null) { // 物理删除
+			return getCustomDeleteSQL(clazz, where);
+		} else { // 软删除
+			return getCustomSoftDeleteSQL(clazz, where);
+		}
+	}
+	
 	/**
 	 * 获得批量更新sql
 	 * @param clazz
@@ -330,10 +781,7 @@ public class SQLUtils {
 		StringBuilder sql = new StringBuilder();
 		sql.append("UPDATE ");
 		
-		Table table = DOInfoReader.getTable(clazz);
-		List<Field> fields = DOInfoReader.getColumns(clazz);
-		
-		sql.append(getTableName(table)).append(" ");
+		sql.append(getTableName(clazz)).append(" ");
 		
 		if(setSql.trim().toLowerCase().startsWith("set ")) {
 			sql.append(setSql);
@@ -342,13 +790,7 @@ public class SQLUtils {
 		}
 		
 		// 加上更新时间
-		for(Field field : fields) {
-			Column column = field.getAnnotation(Column.class);
-			if(column.setTimeWhenUpdate() && Date.class.isAssignableFrom(field.getType())) {
-				sql.append(",").append(getColumnName(column))
-				   .append("=").append(getDateString(new Date()));
-			}
-		}
+		appendSetTimeWhenUpdate(sql, DOInfoReader.getEntityMeta(clazz));
 		
 		sql.append(autoSetSoftDeleted(whereSql, clazz));
 		return sql.toString();
@@ -365,11 +807,10 @@ public class SQLUtils {
 		StringBuilder sql = new StringBuilder();
 		sql.append("UPDATE ");
 		
-		Table table = DOInfoReader.getTable(t.getClass());
-		List<Field> fields = DOInfoReader.getColumns(t.getClass());
+		EntityMeta meta = DOInfoReader.getEntityMeta(t.getClass());
 		List<Field> keyFields = DOInfoReader.getKeyColumns(t.getClass());
 		
-		sql.append(getTableName(table)).append(" ");
+		sql.append(getTableName(t.getClass())).append(" ");
 		
 		if(setSql.trim().toLowerCase().startsWith("set ")) {
 			sql.append(setSql);
@@ -378,16 +819,10 @@ public class SQLUtils {
 		}
 		
 		// 加上更新时间
-		for(Field field : fields) {
-			Column column = field.getAnnotation(Column.class);
-			if(column.setTimeWhenUpdate() && Date.class.isAssignableFrom(field.getType())) {
-				sql.append(",").append(getColumnName(column))
-				   .append("=").append(getDateString(new Date()));
-			}
-		}
+		appendSetTimeWhenUpdate(sql, meta);
 		
 		List<Object> whereValues = new ArrayList<Object>();
-		String where = "WHERE " + joinWhereAndGetValue(keyFields, "AND", whereValues, t);
+		String where = "WHERE " + joinWhereAndGetValue(meta, keyFields, "AND", whereValues, t);
 		
 		for(Object value : whereValues) {
 			if(value == null) {
@@ -408,7 +843,7 @@ public class SQLUtils {
 	 * @return
 	 */
 	public static <T> String getSoftDeleteSQL(T t, Column softDeleteColumn, List<Object> values) {
-		String setSql = getColumnName(softDeleteColumn) + "="
+		String setSql = "`" + softDeleteColumn.value() + "`="
 	                    + softDeleteColumn.softDelete()[1];
 		return getCustomUpdateSQL(t, values, setSql);
 	}
@@ -422,10 +857,8 @@ public class SQLUtils {
 	public static <T> String getCustomDeleteSQL(Class<T> clazz, String postSql) {
 		StringBuilder sql = new StringBuilder();
 		
-		Table table = DOInfoReader.getTable(clazz);
-		
 		sql.append("DELETE FROM ");
-		sql.append(getTableName(table));
+		sql.append(getTableName(clazz));
 		
 		sql.append(autoSetSoftDeleted(postSql, clazz));
 		
@@ -434,26 +867,17 @@ public class SQLUtils {
 	
 	public static <T> String getCustomSoftDeleteSQL(Class<T> clazz, String postSql) {
 		
-		Table table = DOInfoReader.getTable(clazz);
-		List<Field> fields = DOInfoReader.getColumns(clazz);
+		EntityMeta meta = DOInfoReader.getEntityMeta(clazz);
 		Field softDelete = DOInfoReader.getSoftDeleteColumn(clazz);
-		Column softDeleteColumn = softDelete.getAnnotation(Column.class);
 		
 		StringBuilder sql = new StringBuilder();
 		
-		sql.append("UPDATE ").append(getTableName(table));
-		sql.append(" SET ").append(getColumnName(softDeleteColumn));
-		sql.append("=").append(softDeleteColumn.softDelete()[1]);
+		sql.append("UPDATE ").append(getTableName(clazz));
+		sql.append(" SET ").append(meta.getColumnName(softDelete));
+		sql.append("=").append(meta.getSoftDeleteDeletedValue());
 		
 		// 特殊处理@Column setTimeWhenUpdate时间
-		for(Field field : fields) {
-			Column column = field.getAnnotation(Column.class);
-			if(column.setTimeWhenUpdate() && Date.class.isAssignableFrom(field.getType())) {
-				sql.append(",").append(getColumnName(column)).append("='");
-				SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-				sql.append(df.format(new Date())).append("'");
-			}
-		}
+		appendSetTimeWhenUpdate(sql, meta);
 		
 		sql.append(autoSetSoftDeleted(postSql, clazz));
 		
@@ -468,16 +892,17 @@ public class SQLUtils {
 	 */
 	public static <T> String getDeleteSQL(T t, List<Object> values) {
 		
-		Table table = DOInfoReader.getTable(t.getClass());
+		String tableName = getTableName(t.getClass());
 		List<Field> keyFields = DOInfoReader.getKeyColumns(t.getClass());
 		
 		StringBuilder sql = new StringBuilder();
 		
 		sql.append("DELETE FROM ");
-		sql.append(getTableName(table));
+		sql.append(tableName);
 		
 		List<Object> _values = new ArrayList<Object>();
-		String where = "WHERE " + joinWhereAndGetValue(keyFields, "AND", _values, t);
+		String where = "WHERE " + joinWhereAndGetValue(DOInfoReader.getEntityMeta(t.getClass()),
+				keyFields, "AND", _values, t);
 		for(Object value : _values) { // 检查key的值是不是null
 			if(value == null) {
 				throw new NullKeyValueException();
@@ -497,6 +922,8 @@ public class SQLUtils {
 	 *      condExpress为 deleted=0
 	 * 那么返回：where deleted=0 and (a!=3 or a!=2) limit 1
 	 * 
+	 * 优先使用WhereSQLRewriter扫描改写，它无法处理的sql再用jsqlparser解析。
+	 * 
 	 * @param whereSql 从where起的sql子句，如果有where必须带上where关键字。
 	 * @param condExpression 例如a=?  不带where或and关键字。
 	 * @return 注意返回字符串前面没有空格
@@ -517,7 +944,23 @@ public class SQLUtils {
 			return "WHERE " + condExpression + " " + whereSql;
 		}
 		
-		
+		String result = WhereSQLRewriter.insertWhereAndExpression(whereSql, condExpression);
+		if(result != null) {
+			return result;
+		}
+		return insertWhereAndExpressionByParser(whereSql, condExpression);
+	}
+	
+	/**
+	 * 使用jsqlparser解析whereSql，将condExpression AND到where条件中
+	 * 
+	 * @param whereSql 以where关键字开头的where子句
+	 * @param condExpression 例如a=?  不带where或and关键字。
+	 * @return 注意返回字符串前面没有空格
+	 * @throws JSQLParserException
+	 */
+	public static String insertWhereAndExpressionByParser(String whereSql, String condExpression)
+			throws JSQLParserException {
 		String selectSql = "select * from dual "; // 辅助where sql解析用
 		Statement statement = CCJSqlParserUtil.parse(selectSql + whereSql);
 		Select selectStatement = (Select) statement;
@@ -544,13 +987,14 @@ public class SQLUtils {
 		String deletedExpression = "";
 		
 		// 处理join方式clazz
-		JoinTable joinTable = DOInfoReader.getJoinTable(clazz);
+		EntityMeta meta = DOInfoReader.getEntityMeta(clazz);
+		JoinTable joinTable = meta.getJoinTable();
 		if(joinTable != null) {
 			Field leftTableField = DOInfoReader.getJoinLeftTable(clazz);
 			Field rightTableField = DOInfoReader.getJoinRightTable(clazz);
 			
-			JoinLeftTable joinLeftTable = leftTableField.getAnnotation(JoinLeftTable.class);
-			JoinRightTable joinRightTable = rightTableField.getAnnotation(JoinRightTable.class);
+			JoinLeftTable joinLeftTable = meta.getJoinLeftTable();
+			JoinRightTable joinRightTable = meta.getJoinRightTable();
 			
 			Field softDeleteT1 = DOInfoReader.getSoftDeleteColumn(leftTableField.getType());
 			Field softDeleteT2 = DOInfoReader.getSoftDeleteColumn(rightTableField.getType());
@@ -561,8 +1005,9 @@ public class SQLUtils {
 			
 			StringBuilder deletedExpressionSb = new StringBuilder();
 			if(softDeleteT1 != null) {
-				Column softDeleteColumn = softDeleteT1.getAnnotation(Column.class);
-				String columnName = getColumnName(softDeleteColumn);
+				EntityMeta meta1 = DOInfoReader.getEntityMeta(leftTableField.getType());
+				Column softDeleteColumn = meta1.getSoftDeleteColumn();
+				String columnName = meta1.getColumnName(softDeleteT1);
 				if(joinTable.joinType() == JoinTypeEnum.RIGHT_JOIN) {
 					deletedExpressionSb.append("(").append(joinLeftTable.alias()).append(".").append(
 						columnName + "=" + softDeleteColumn.softDelete()[0])
@@ -578,8 +1023,9 @@ public class SQLUtils {
 				if(softDeleteT1 != null) {
 					deletedExpressionSb.append(" AND ");
 				}
-				Column softDeleteColumn = softDeleteT2.getAnnotation(Column.class);
-				String columnName = getColumnName(softDeleteColumn);
+				EntityMeta meta2 = DOInfoReader.getEntityMeta(rightTableField.getType());
+				Column softDeleteColumn = meta2.getSoftDeleteColumn();
+				String columnName = meta2.getColumnName(softDeleteT2);
 				if(joinTable.joinType() == JoinTypeEnum.LEFT_JOIN) {
 					deletedExpressionSb.append("(").append(joinRightTable.alias()).append(".").append(
 							columnName + "=" + softDeleteColumn.softDelete()[0])
@@ -598,18 +1044,129 @@ public class SQLUtils {
 				return " " + whereSql; // 不处理
 			}
 			
-			Column softDeleteColumn = softDelete.getAnnotation(Column.class);
-			deletedExpression = getColumnName(softDeleteColumn) + "=" 
-			                        + softDeleteColumn.softDelete()[0];
+			deletedExpression = meta.getColumnName(softDelete) + "=" 
+			                        + meta.getSoftDeleteNormalValue();
+		}
+		
+		SoftDeletedKey key = new SoftDeletedKey(clazz, whereSql);
+		String result = softDeletedCache.get(key);
+		if(result != null) {
+			return result;
 		}
 		
 		try {
-			return " " + SQLUtils.insertWhereAndExpression(whereSql, deletedExpression);
+			result = " " + SQLUtils.insertWhereAndExpression(whereSql, deletedExpression);
 		} catch (JSQLParserException e) {
 			LOGGER.error("Bad sql syntax,whereSql:{},deletedExpression:{}",
 					whereSql, deletedExpression, e);
 			throw new BadSQLSyntaxException();
 		}
+		softDeletedCache.put(key, result);
+		return result;
+	}
+	
+	/**
+	 * 生成keyset分页的postSql：在postSql的where条件前加上key大于上一页最后一条记录的key的条件，并按key升序排序。<br>
+	 * 单个key时为key>?，多个key时为(k1>?) OR (k1=? AND k2>?)...，不包含软删除条件和limit子句
+	 * @param clazz
+	 * @param lastKeyValues 上一页最后一条记录的全部key值，顺序和DOInfoReader.getKeyColumns一致，null表示第一页
+	 * @param postSql 只能包含where条件，有group by/having/order by/limit等子句时抛出InvalidParameterException
+	 * @param values key条件的参数，放在postSql的参数前面
+	 * @return
+	 */
+	public static String getSeekPostSQL(Class<?> clazz, List<Object> lastKeyValues, String postSql,
+			List<Object> values) {
+		EntityMeta meta = DOInfoReader.getEntityMeta(clazz);
+		List<Field> keyFields = DOInfoReader.getKeyColumns(clazz);
+		
+		String where = postSql == null ? "" : postSql.trim();
+		if(hasTailClause(where)) {
+			throw new InvalidParameterException("postSql of keyset page can only have where conditions,"
+					+ " group by/having/order by/limit are not allowed:" + postSql);
+		}
+		if(lastKeyValues != null) {
+			StringBuilder cond = new StringBuilder();
+			for(int i = 0; i < keyFields.size(); i++) {
+				if(i > 0) {
+					cond.append(" OR ");
+				}
+				cond.append("(");
+				for(int j = 0; j < i; j++) {
+					cond.append(meta.getColumnName(keyFields.get(j))).append("=? AND ");
+					values.add(lastKeyValues.get(j));
+				}
+				cond.append(meta.getColumnName(keyFields.get(i))).append(">?)");
+				values.add(lastKeyValues.get(i));
+			}
+			String condExpression = keyFields.size() == 1 ? cond.substring(1, cond.length() - 1)
+					: cond.toString();
+			try {
+				where = insertWhereAndExpression(where, condExpression);
+			} catch (JSQLParserException e) {
+				LOGGER.error("Bad sql syntax,whereSql:{},condExpression:{}", where, condExpression, e);
+				throw new BadSQLSyntaxException();
+			}
+		}
+		
+		return where + " ORDER BY " + join(meta, keyFields, ",");
+	}
+	
+	/**
+	 * where子句是否有group by/having/order by/limit等后续子句，扫描无法确定时用jsqlparser解析
+	 * @param where 已trim的where子句
+	 * @return jsqlparser也无法解析时返回false，由执行sql时报错
+	 */
+	private static boolean hasTailClause(String where) {
+		Boolean result = WhereSQLRewriter.hasTailClause(where);
+		if(result != null) {
+			return result;
+		}
+		try {
+			Statement statement = CCJSqlParserUtil.parse("select * from dual " + where);
+			PlainSelect plainSelect = (PlainSelect) ((Select) statement).getSelectBody();
+			return plainSelect.getGroupByColumnReferences() != null || plainSelect.getHaving() != null
+					|| plainSelect.getOrderByElements() != null || plainSelect.getLimit() != null
+					|| plainSelect.isForUpdate();
+		} catch (JSQLParserException e) {
+			return false;
+		} catch (ClassCastException e) { // 例如union
+			return true;
+		}
+	}
+	
+	/**
+	 * 获得autoSetSoftDeleted的结果缓存，可用于查看命中、未命中、淘汰次数
+	 * @return
+	 */
+	public static LRUCache<?, String> getSoftDeletedCache() {
+		return softDeletedCache;
+	}
+	
+	/**
+	 * autoSetSoftDeleted结果缓存的key
+	 */
+	private static class SoftDeletedKey {
+		private final Class<?> clazz;
+		private final String whereSql;
+		
+		SoftDeletedKey(Class<?> clazz, String whereSql) {
+			this.clazz = clazz;
+			this.whereSql = whereSql;
+		}
+		
+		@Override
+		public int hashCode() {
+			return clazz.hashCode() * 31 + whereSql.hashCode();
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof SoftDeletedKey)) {
+				return false;
+			}
+			SoftDeletedKey other = (SoftDeletedKey) obj;
+			return clazz == other.clazz && whereSql.equals(other.whereSql);
+		}
 	}
 	
 	/**
@@ -632,41 +1189,65 @@ public class SQLUtils {
 
     /**
      * 拼凑select的field的语句
+     * @param meta
      * @param fields
      * @param sep
      * @return
      */
-	private static String join(List<Field> fields, String sep) {
-	    return join(fields, sep, null);
+	private static String join(EntityMeta meta, List<Field> fields, String sep) {
+	    return join(meta, fields, sep, null);
     }
 	
     /**
      * 拼凑select的field的语句
+     * @param meta
      * @param fields
      * @param sep
      * @param fieldPrefix
      * @return
      */
-    private static String join(List<Field> fields, String sep, String fieldPrefix) {
-    	return joinAndGetValueForSelect(fields, sep, fieldPrefix);
+    private static String join(EntityMeta meta, List<Field> fields, String sep, String fieldPrefix) {
+    	return joinAndGetValueForSelect(meta, fields, sep, fieldPrefix);
     }
 	
+	/**
+	 * 拼凑按count个对象的key匹配的where子句，包含WHERE关键字。
+	 * 单个key时为key IN (?,?,...)，多个key时为(k1=? AND k2=?) OR (k1=? AND k2=?)...
+	 * @param meta
+	 * @param keyFields
+	 * @param count
+	 * @return
+	 */
+	private static String joinKeysInWhere(EntityMeta meta, List<Field> keyFields, int count) {
+		StringBuilder where = new StringBuilder("WHERE ");
+		if(keyFields.size() == 1) {
+			where.append(meta.getColumnName(keyFields.get(0))).append(" IN (")
+			     .append(join("?", count, ",")).append(")");
+		} else {
+			String keyCondition = joinWhere(meta, keyFields, "AND");
+			for(int i = 0; i < count; i++) {
+				where.append(i == 0 ? "(" : " OR (").append(keyCondition).append(")");
+			}
+		}
+		return where.toString();
+	}
+	
 	/**
 	 * 拼凑where子句，并把需要的参数写入到values中。返回sql【不】包含where关键字
 	 * 
+	 * @param meta
 	 * @param fields
 	 * @param logicOperate 操作符，例如AND
 	 * @param values
 	 * @param obj
 	 * @return
 	 */
-	private static String joinWhereAndGetValue(List<Field> fields,
+	private static String joinWhereAndGetValue(EntityMeta meta, List<Field> fields,
 			String logicOperate, List<Object> values, Object obj) {
 		StringBuilder sb = new StringBuilder();
 		int fieldSize = fields.size();
 		for(int i = 0; i < fieldSize; i++) {
-			Column column = fields.get(i).getAnnotation(Column.class);
-			sb.append(getColumnName(column)).append("=?");
+			sb.append(meta.getColumnName(fields.get(i))).append("=?");
 			if(i < fieldSize - 1) {
 				sb.append(" ").append(logicOperate).append(" ");
 			}
@@ -677,16 +1258,16 @@ public class SQLUtils {
 	
 	/**
 	 * 拼凑where子句。返回sql【不】包含where关键字
+	 * @param meta
 	 * @param fields
 	 * @param logicOperate 操作符，例如AND
 	 * @return
 	 */
-	private static String joinWhere(List<Field> fields, String logicOperate) {
+	private static String joinWhere(EntityMeta meta, List<Field> fields, String logicOperate) {
 		StringBuilder sb = new StringBuilder();
 		int fieldSize = fields.size();
 		for(int i = 0; i < fieldSize; i++) {
-			Column column = fields.get(i).getAnnotation(Column.class);
-			sb.append(getColumnName(column)).append("=?");
+			sb.append(meta.getColumnName(fields.get(i))).append("=?");
 			if(i < fieldSize - 1) {
 				sb.append(" ").append(logicOperate).append(" ");
 			}
@@ -696,6 +1277,7 @@ public class SQLUtils {
 
     /**
      * 拼凑字段逗号,分隔子句（用于insert），并把参数obj的值放到values中
+     * @param meta
      * @param fields
      * @param sep
      * @param values
@@ -703,24 +1285,26 @@ public class SQLUtils {
      * @param isWithNullValue 是否把null值放到values中
      * @return
      */
-    private static String joinAndGetValue(List<Field> fields, String sep,
+    private static String joinAndGetValue(EntityMeta meta, List<Field> fields, String sep,
                 List<Object> values, Object obj, boolean isWithNullValue) {
-	    return joinAndGetValueForInsert(fields, sep, null, values, obj, isWithNullValue);
+	    return joinAndGetValueForInsert(meta, fields, sep, null, values, obj, isWithNullValue);
     }
     
     /**
      * 拼凑字段逗号,分隔子句（用于select）。会处理computed的@Column字段
+     * @param meta
      * @param fields
      * @param sep
      * @param fieldPrefix
      * @return
      */
-	private static String joinAndGetValueForSelect(List<Field> fields, String sep, String fieldPrefix) {
+	private static String joinAndGetValueForSelect(EntityMeta meta, List<Field> fields,
+			String sep, String fieldPrefix) {
         fieldPrefix = fieldPrefix == null ? "" : fieldPrefix.trim();
 
     	StringBuilder sb = new StringBuilder();
     	for(Field field : fields) {
-    		Column column = field.getAnnotation(Column.class);
+    		Column column = meta.getColumn(field);
     		
     		String computed = column.computed().trim();
     		if(!computed.isEmpty()) {
@@ -728,7 +1312,7 @@ public class SQLUtils {
     		} else {
     			sb.append(fieldPrefix); // 计算列不支持默认前缀，当join时，请自行区分计算字段的命名
     		}
-        	sb.append(getColumnName(column)).append(sep);
+        	sb.append(meta.getColumnName(field)).append(sep);
     	}
     	int len = sb.length();
     	return len == 0 ? "" : sb.toString().substring(0, len - 1);
@@ -737,6 +1321,7 @@ public class SQLUtils {
     /**
      * 拼凑字段逗号,分隔子句（用于insert），并把参数obj的值放到values中。会排除掉computed的@Column字段
      * 
+     * @param meta
      * @param fields
      * @param sep
      * @param fieldPrefix
@@ -745,8 +1330,8 @@ public class SQLUtils {
      * @param isWithNullValue 是否把null值放到values中
      * @return
      */
-	private static String joinAndGetValueForInsert(List<Field> fields, String sep, String fieldPrefix,
-			List<Object> values, Object obj, boolean isWithNullValue) {
+	private static String joinAndGetValueForInsert(EntityMeta meta, List<Field> fields, String sep,
+			String fieldPrefix, List<Object> values, Object obj, boolean isWithNullValue) {
 		if(values == null || obj == null) {
 			throw new InvalidParameterException("joinAndGetValueForInsert require values and obj");
 		}
@@ -755,7 +1340,7 @@ public class SQLUtils {
 
     	StringBuilder sb = new StringBuilder();
     	for(Field field : fields) {
-    		Column column = field.getAnnotation(Column.class);
+    		Column column = meta.getColumn(field);
     		if(!(column.computed().trim().isEmpty())) {
     			continue; // insert不加入computed字段
     		}
@@ -771,7 +1356,7 @@ public class SQLUtils {
 				}
 			}
     		
-        	sb.append(fieldPrefix).append(getColumnName(column)).append(sep);
+        	sb.append(fieldPrefix).append(meta.getColumnName(field)).append(sep);
     	}
     	int len = sb.length();
     	return len == 0 ? "" : sb.toString().substring(0, len - 1);
@@ -793,33 +1378,47 @@ public class SQLUtils {
     
 	/**
 	 * 拼凑set子句
+	 * @param meta
 	 * @param fields
 	 * @param values
 	 * @param obj
 	 * @param withNull 当为true时，如果field的值为null，也加入
 	 * @return
 	 */
-	private static String joinSetAndGetValue(List<Field> fields,
+	private static String joinSetAndGetValue(EntityMeta meta, List<Field> fields,
 			List<Object> values, Object obj, boolean withNull) {
 		StringBuilder sb = new StringBuilder();
 		int fieldSize = fields.size();
 		for(int i = 0; i < fieldSize; i++) {
-			Column column = fields.get(i).getAnnotation(Column.class);
 			Object value = DOInfoReader.getValue(fields.get(i), obj);
 			if(withNull || value != null) {
-				sb.append(getColumnName(column)).append("=?,");
+				sb.append(meta.getColumnName(fields.get(i))).append("=?,");
 				values.add(value);
 			}
 		}
 		return sb.length() == 0 ? "" : sb.substring(0, sb.length() - 1);
 	}
-    
-	private static String getTableName(Table table) {
-		return "`" + table.value() + "`";
+	
+	/**
+	 * 拼凑@Column setTimeWhenUpdate的字段到set子句，前面带逗号
+	 * @param sql
+	 * @param meta
+	 */
+	private static void appendSetTimeWhenUpdate(StringBuilder sql, EntityMeta meta) {
+		for(Field field : meta.getSetTimeWhenUpdateColumns()) {
+			sql.append(",").append(meta.getColumnName(field))
+			   .append("=").append(getDateString(new Date()));
+		}
 	}
-
-	private static String getColumnName(Column column) {
-		return "`" + column.value() + "`";
+    
+	/**
+	 * 获得带`的表名
+	 * @param clazz
+	 * @throws NoTableAnnotationException 当clazz没有@Table注解时抛出
+	 */
+	private static String getTableName(Class<?> clazz) {
+		DOInfoReader.getTable(clazz);
+		return DOInfoReader.getEntityMeta(clazz).getTableName();
 	}
 	
 	/**
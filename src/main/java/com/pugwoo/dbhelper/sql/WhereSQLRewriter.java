@@ -0,0 +1,224 @@
+package com.pugwoo.dbhelper.sql;
+
+/**
+ * 不构造语法树的where子句改写：扫描where子句，找到where条件和GROUP BY/HAVING/ORDER BY/LIMIT等后续子句的边界，
+ * 把原条件用()包起来再AND上新条件。<br>
+ * 扫描时会跳过字符串和`标识符，只识别括号外的关键字，子查询在括号内不影响边界。<br>
+ * 遇到注释、分号、UNION等无法确定的写法时返回null，由调用方退回到jsqlparser解析。
+ */
+public class WhereSQLRewriter {
+
+	/**出现在括号外时，表示where条件结束*/
+	private static final String[] TAIL_KEYWORDS = {"GROUP", "HAVING", "ORDER", "LIMIT", "FOR"};
+
+	/**出现在括号外时，无法处理*/
+	private static final String[] UNSUPPORTED_KEYWORDS = {"WHERE", "UNION", "INTO", "PROCEDURE", "WINDOW"};
+
+	/**
+	 * 例如：whereSql为 WHERE a!=3 or a!=2 limit 1
+	 *      condExpress为 deleted=0
+	 * 那么返回：WHERE deleted=0 AND (a!=3 or a!=2) limit 1
+	 *
+	 * @param whereSql 以"WHERE "开头(不区分大小写)的where子句，前后不能有空白
+	 * @param condExpression 例如a=?  不带where或and关键字，不能为空
+	 * @return 无法处理时返回null
+	 */
+	public static String insertWhereAndExpression(String whereSql, String condExpression) {
+		if(whereSql == null || whereSql.length() < 6
+				|| !whereSql.substring(0, 6).equalsIgnoreCase("WHERE ")) {
+			return null;
+		}
+
+		int tailStart = scan(whereSql, 6);
+		if(tailStart == -1) {
+			return null;
+		}
+		String where = whereSql.substring(6, tailStart).trim();
+		if(where.isEmpty()) {
+			return null;
+		}
+
+		int condScan = scan(condExpression, 0);
+		if(condScan != condExpression.length()) { // 条件里有后续子句等，不处理
+			return null;
+		}
+		String cond = condExpression.trim();
+		if(hasTopLevelOr(cond)) {
+			cond = "(" + cond + ")";
+		}
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("WHERE ").append(cond).append(" AND (").append(where).append(")");
+		if(tailStart < whereSql.length()) {
+			sb.append(" ").append(whereSql.substring(tailStart).trim());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * 判断where子句是否有括号外的GROUP BY/HAVING/ORDER BY/LIMIT/FOR UPDATE等后续子句
+	 * @param whereSql 以"WHERE "开头(不区分大小写)的where子句，或者只有后续子句，可以为空
+	 * @return 无法确定时(注释、分号、UNION等)返回null
+	 */
+	public static Boolean hasTailClause(String whereSql) {
+		if(whereSql == null) {
+			return false;
+		}
+		String sql = whereSql.trim();
+		int start = sql.length() >= 6 && sql.substring(0, 6).equalsIgnoreCase("WHERE ") ? 6 : 0;
+		int tailStart = scan(sql, start);
+		if(tailStart == -1) {
+			return null;
+		}
+		return tailStart < sql.length();
+	}
+
+	/**
+	 * 从start开始扫描sql，检查字符串、括号是否完整，并找到第一个括号外的后续子句关键字。
+	 * @return 后续子句开始的下标，没有后续子句返回sql的长度，无法处理返回-1
+	 */
+	private static int scan(String sql, int start) {
+		int len = sql.length();
+		int depth = 0;
+		int tailStart = len;
+		int i = start;
+		while(i < len) {
+			char c = sql.charAt(i);
+			char next = i + 1 < len ? sql.charAt(i + 1) : 0;
+			if(c == '\'' || c == '"' || c == '`') {
+				i = skipQuoted(sql, i);
+				if(i < 0) {
+					return -1;
+				}
+				continue;
+			}
+			if(c == '#' || c == ';' || (c == '-' && next == '-') || (c == '/' && next == '*')) {
+				return -1; // 注释和多语句不处理
+			}
+			if(c == '(') {
+				depth++;
+			} else if(c == ')') {
+				if(--depth < 0) {
+					return -1;
+				}
+			} else if(isWordStart(sql, i)) {
+				int end = i;
+				while(end < len && isWordChar(sql.charAt(end))) {
+					end++;
+				}
+				if(depth == 0) {
+					String word = sql.substring(i, end);
+					if(contains(UNSUPPORTED_KEYWORDS, word)) {
+						return -1;
+					}
+					if(tailStart == len && (contains(TAIL_KEYWORDS, word) || isLockInShareMode(sql, i))) {
+						tailStart = i;
+					}
+				}
+				i = end;
+				continue;
+			}
+			i++;
+		}
+		return depth == 0 ? tailStart : -1;
+	}
+
+	/**
+	 * 表达式是否有括号外的OR/XOR/||，有则和AND组合时要加括号
+	 */
+	private static boolean hasTopLevelOr(String expression) {
+		int len = expression.length();
+		int depth = 0;
+		int i = 0;
+		while(i < len) {
+			char c = expression.charAt(i);
+			if(c == '\'' || c == '"' || c == '`') {
+				i = skipQuoted(expression, i);
+				if(i < 0) {
+					return true;
+				}
+				continue;
+			}
+			if(c == '(') {
+				depth++;
+			} else if(c == ')') {
+				depth--;
+			} else if(depth == 0 && c == '|' && i + 1 < len && expression.charAt(i + 1) == '|') {
+				return true;
+			} else if(isWordStart(expression, i)) {
+				int end = i;
+				while(end < len && isWordChar(expression.charAt(end))) {
+					end++;
+				}
+				String word = expression.substring(i, end);
+				if(depth == 0 && (word.equalsIgnoreCase("OR") || word.equalsIgnoreCase("XOR"))) {
+					return true;
+				}
+				i = end;
+				continue;
+			}
+			i++;
+		}
+		return false;
+	}
+
+	/**
+	 * 跳过从start开始的字符串或`标识符，支持\转义和两个引号连写的转义
+	 * @return 结束引号之后的下标，没有结束引号返回-1
+	 */
+	private static int skipQuoted(String sql, int start) {
+		char quote = sql.charAt(start);
+		int len = sql.length();
+		int i = start + 1;
+		while(i < len) {
+			char c = sql.charAt(i);
+			if(c == '\\' && quote != '`') {
+				i += 2;
+				continue;
+			}
+			if(c == quote) {
+				if(i + 1 < len && sql.charAt(i + 1) == quote) {
+					i += 2;
+					continue;
+				}
+				return i + 1;
+			}
+			i++;
+		}
+		return -1;
+	}
+
+	private static boolean isLockInShareMode(String sql, int i) {
+		return sql.regionMatches(true, i, "LOCK", 0, 4)
+				&& sql.substring(i).toUpperCase().matches("LOCK\\s+IN\\s+SHARE\\s+MODE\\b[\\s\\S]*");
+	}
+
+	/**
+	 * 单词开始：字母或下划线，且前面不是标识符字符、.或@(即不是t.order、@limit这种)
+	 */
+	private static boolean isWordStart(String sql, int i) {
+		char c = sql.charAt(i);
+		if(!(Character.isLetter(c) || c == '_')) {
+			return false;
+		}
+		if(i == 0) {
+			return true;
+		}
+		char prev = sql.charAt(i - 1);
+		return !isWordChar(prev) && prev != '.' && prev != '@';
+	}
+
+	private static boolean isWordChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+	}
+
+	private static boolean contains(String[] keywords, String word) {
+		for(String keyword : keywords) {
+			if(keyword.equalsIgnoreCase(word)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -10,9 +10,6 @@ import org.slf4j.LoggerFactory;
 import org.springframework.jdbc.core.RowMapper;
 
 import com.pugwoo.dbhelper.annotation.Column;
-import com.pugwoo.dbhelper.annotation.JoinLeftTable;
-import com.pugwoo.dbhelper.annotation.JoinRightTable;
-import com.pugwoo.dbhelper.annotation.JoinTable;
 
 /**
  * 2015年1月13日 17:48:30<br>
@@ -31,6 +28,19 @@ public class AnnotationSupportRowMapper<T> implements RowMapper<T> {
 	private boolean isJoinVO = false;
 	private Field leftJoinField;
 	private Field rightJoinField;
+	
+	/**普通DO时是clazz的列，join时是左表的列*/
+	private Field[] fieldsT1;
+	/**列对应的ResultSet label，join时带上表别名*/
+	private String[] labelsT1;
+	/**join时右表的列*/
+	private Field[] fieldsT2;
+	private String[] labelsT2;
+	
+	/**已经解析过列下标的ResultSet，同一个ResultSet只解析一次*/
+	private ResultSet indexedResultSet;
+	private int[] indexesT1;
+	private int[] indexesT2;
 
 	public AnnotationSupportRowMapper(Class<T> clazz) {
 		handleClazz(clazz);
@@ -44,66 +54,78 @@ public class AnnotationSupportRowMapper<T> implements RowMapper<T> {
 	
 	private void handleClazz(Class<T> clazz) {
 		this.clazz = clazz;
-		JoinTable joinTable = DOInfoReader.getJoinTable(clazz);
-		if(joinTable != null) {
+		EntityMeta meta = DOInfoReader.getEntityMeta(clazz);
+		if(meta.isJoinVO()) {
 			isJoinVO = true;
 			leftJoinField = DOInfoReader.getJoinLeftTable(clazz);
 			rightJoinField = DOInfoReader.getJoinRightTable(clazz);
+			
+			List<Field> columnsT1 = DOInfoReader.getColumns(leftJoinField.getType());
+			fieldsT1 = columnsT1.toArray(new Field[0]);
+			labelsT1 = getLabels(DOInfoReader.getEntityMeta(leftJoinField.getType()),
+					columnsT1, meta.getJoinLeftTable().alias() + ".");
+			
+			List<Field> columnsT2 = DOInfoReader.getColumns(rightJoinField.getType());
+			fieldsT2 = columnsT2.toArray(new Field[0]);
+			labelsT2 = getLabels(DOInfoReader.getEntityMeta(rightJoinField.getType()),
+					columnsT2, meta.getJoinRightTable().alias() + ".");
+		} else {
+			List<Field> columns = DOInfoReader.getColumns(clazz);
+			fieldsT1 = columns.toArray(new Field[0]);
+			labelsT1 = getLabels(meta, columns, "");
+		}
+	}
+	
+	private static String[] getLabels(EntityMeta meta, List<Field> fields, String prefix) {
+		String[] labels = new String[fields.size()];
+		for(int i = 0; i < labels.length; i++) {
+			Column column = meta.getColumn(fields.get(i));
+			labels[i] = prefix + column.value();
+		}
+		return labels;
+	}
+	
+	/**
+	 * 把列label解析成ResultSet的列下标，每个ResultSet只解析一次
+	 */
+	private void resolveIndexes(ResultSet rs) throws SQLException {
+		if(rs == indexedResultSet) {
+			return;
+		}
+		indexesT1 = findColumns(rs, labelsT1);
+		if(isJoinVO) {
+			indexesT2 = findColumns(rs, labelsT2);
 		}
+		indexedResultSet = rs;
+	}
+	
+	private static int[] findColumns(ResultSet rs, String[] labels) throws SQLException {
+		int[] indexes = new int[labels.length];
+		for(int i = 0; i < labels.length; i++) {
+			indexes[i] = rs.findColumn(labels[i]);
+		}
+		return indexes;
 	}
 
 	@Override
 	public T mapRow(ResultSet rs, int index) throws SQLException {
 		try {
+			resolveIndexes(rs);
 			T obj = isUseGivenObj ? t : clazz.newInstance();
 			
 			if(isJoinVO) {
 				Object t1 = leftJoinField.getType().newInstance();
 				Object t2 = rightJoinField.getType().newInstance();
 				
-				JoinLeftTable joinLeftTable = leftJoinField.getAnnotation(JoinLeftTable.class);
-				JoinRightTable joinRightTable = rightJoinField.getAnnotation(JoinRightTable.class);
-				
 				// 如果关联对象的所有字段都是null值，那么该对象设置为null值
-				
-				boolean isT1AllNull = true;
-				List<Field> fieldsT1 = DOInfoReader.getColumns(leftJoinField.getType());
-				for (Field field : fieldsT1) {
-					Column column = field.getAnnotation(Column.class);
-					Object value = TypeAutoCast.cast(
-						TypeAutoCast.cast(rs, joinLeftTable.alias() + "." + column.value(), field.getType()), 
-						field.getType());
-					if(value != null) {
-						isT1AllNull = false;
-					}
-					DOInfoReader.setValue(field, t1, value);
-				}
-				
-				boolean isT2AllNull = true;
-				List<Field> fieldsT2 = DOInfoReader.getColumns(rightJoinField.getType());
-				for (Field field : fieldsT2) {
-					Column column = field.getAnnotation(Column.class);
-					Object value = TypeAutoCast.cast(
-						TypeAutoCast.cast(rs, joinRightTable.alias() + "." + column.value(), field.getType()), 
-						field.getType());
-					if(value != null) {
-						isT2AllNull = false;
-					}
-					DOInfoReader.setValue(field, t2, value);
-				}
+				boolean isT1AllNull = setValues(rs, t1, fieldsT1, indexesT1);
+				boolean isT2AllNull = setValues(rs, t2, fieldsT2, indexesT2);
 				
 				DOInfoReader.setValue(leftJoinField, obj, isT1AllNull ? null : t1);
 				DOInfoReader.setValue(rightJoinField, obj, isT2AllNull ? null : t2);
 				
 			} else {
-				List<Field> fields = DOInfoReader.getColumns(clazz);
-				for (Field field : fields) {
-					Column column = field.getAnnotation(Column.class);
-					Object value = TypeAutoCast.cast(
-							TypeAutoCast.cast(rs, column.value(), field.getType()), 
-							field.getType());
-					DOInfoReader.setValue(field, obj, value);
-				}
+				setValues(rs, obj, fieldsT1, indexesT1);
 			}
 			
 			return obj;
@@ -112,4 +134,22 @@ public class AnnotationSupportRowMapper<T> implements RowMapper<T> {
 			return null;
 		}
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * 按列下标读取当前行的值设置到obj中，每个单元格只读一次
+	 * @return 是否所有值都是null
+	 */
+	private static boolean setValues(ResultSet rs, Object obj, Field[] fields, int[] indexes)
+			throws SQLException {
+		boolean isAllNull = true;
+		for(int i = 0; i < fields.length; i++) {
+			Class<?> type = fields[i].getType();
+			Object value = TypeAutoCast.cast(TypeAutoCast.cast(rs, indexes[i], type), type);
+			if(value != null) {
+				isAllNull = false;
+			}
+			DOInfoReader.setValue(fields[i], obj, value);
+		}
+		return isAllNull;
+	}
+}
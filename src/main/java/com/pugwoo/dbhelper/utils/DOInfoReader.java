@@ -1,8 +1,6 @@
 package com.pugwoo.dbhelper.utils;
 
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.util.ArrayList;
 import java.util.List;
@@ -12,11 +10,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.pugwoo.dbhelper.annotation.Column;
-import com.pugwoo.dbhelper.annotation.JoinLeftTable;
-import com.pugwoo.dbhelper.annotation.JoinRightTable;
 import com.pugwoo.dbhelper.annotation.JoinTable;
-import com.pugwoo.dbhelper.annotation.RelatedColumn;
 import com.pugwoo.dbhelper.annotation.Table;
 import com.pugwoo.dbhelper.exception.NoColumnAnnotationException;
 import com.pugwoo.dbhelper.exception.NoJoinTableMemberException;
@@ -28,18 +22,65 @@ import com.pugwoo.dbhelper.exception.NotOnlyOneKeyColumnException;
  * 2015年1月12日 16:42:26 读取DO的注解信息:
  * 
  * 1. 继承的类的信息读取，父类先读取，请保证@Column注解没有重复的字段。
+ * 2. 注解信息每个类只解析一次，缓存在EntityMeta中。
+ * 3. 如果编译时使用了EntityMetaProcessor，优先使用生成的GeneratedEntityMeta，不再扫描注解。
  */
 public class DOInfoReader {
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger(DOInfoReader.class);
 	
-	/**缓存Column数据*/
-	private static Map<Class<?>, List<Field>> class2Column = 
-			new ConcurrentHashMap<Class<?>, List<Field>>();
+	/**缓存字段读写器，key是对象的实际类型*/
+	private static Map<Class<?>, Map<Field, FieldAccessor>> class2Accessors =
+			new ConcurrentHashMap<Class<?>, Map<Field, FieldAccessor>>();
 	
-	/**缓存RelatedColumn数据*/
-	private static Map<Class<?>, List<Field>> class2RelatedColumn =
-			new ConcurrentHashMap<Class<?>, List<Field>>();
+	/**缓存类的注解信息*/
+	private static Map<Class<?>, EntityMeta> class2Meta =
+			new ConcurrentHashMap<Class<?>, EntityMeta>();
+	
+	/**
+	 * 获得类预先解析好的注解信息，每个类只解析一次
+	 * @param clazz 不能为null
+	 * @return 不会返回null
+	 */
+	public static EntityMeta getEntityMeta(Class<?> clazz) {
+		EntityMeta meta = class2Meta.get(clazz);
+		if(meta == null) {
+			meta = new EntityMeta(clazz, getGeneratedEntityMeta(clazz)); // 并发时可能重复解析，但结果是一样的
+			class2Meta.put(clazz, meta);
+		}
+		return meta;
+	}
+	
+	/**
+	 * 获得编译期生成的注解信息
+	 * @param clazz
+	 * @return 没有生成或加载失败时返回null
+	 */
+	private static GeneratedEntityMeta getGeneratedEntityMeta(Class<?> clazz) {
+		if(clazz.getClassLoader() == null) { // jdk的类
+			return null;
+		}
+		String className = clazz.getName();
+		int index = className.lastIndexOf('.');
+		String generatedClassName = className.substring(0, index + 1)
+				+ className.substring(index + 1).replace('$', '_')
+				+ GeneratedEntityMeta.CLASS_SUFFIX;
+		try {
+			Class<?> generated = Class.forName(generatedClassName, true, clazz.getClassLoader());
+			if(!GeneratedEntityMeta.class.isAssignableFrom(generated)) {
+				return null;
+			}
+			return (GeneratedEntityMeta) generated.newInstance();
+		} catch (ClassNotFoundException e) {
+			return null;
+		} catch (Exception e) {
+			LOGGER.error("load generated meta {} fail", generatedClassName, e);
+			return null;
+		} catch (LinkageError e) {
+			LOGGER.error("load generated meta {} fail", generatedClassName, e);
+			return null;
+		}
+	}
 	
 	/**
 	 * 获取DO的@Table信息，如果子类没有，会往父类查找
@@ -50,17 +91,12 @@ public class DOInfoReader {
 	 */
 	public static Table getTable(Class<?> clazz)
 			throws NoTableAnnotationException {
-		Class<?> curClass = clazz;
-		while (curClass != null) {
-			Table table = curClass.getAnnotation(Table.class);
-			if(table != null) {
-				return table;
-			}
-			curClass = curClass.getSuperclass();
-		}
-		
-		throw new NoTableAnnotationException("class " + clazz.getName()
+		Table table = getEntityMeta(clazz).getTable();
+		if(table == null) {
+			throw new NoTableAnnotationException("class " + clazz.getName()
 					+ " does not have @Table annotation.");
+		}
+		return table;
 	}
 	
 	/**
@@ -69,20 +105,9 @@ public class DOInfoReader {
 	 * @return 如果没有则返回null
 	 */
 	public static JoinTable getJoinTable(Class<?> clazz) {
-		Class<?> curClass = clazz;
-		while (curClass != null) {
-			JoinTable joinTable = curClass.getAnnotation(JoinTable.class);
-			if(joinTable != null) {
-				return joinTable;
-			}
-			curClass = curClass.getSuperclass();
-		}
-		
-		return null;
+		return getEntityMeta(clazz).getJoinTable();
 	}
 	
-	
-	
 	/**
 	 * 从db字段名拿字段对象
 	 * @param clazz
@@ -90,14 +115,8 @@ public class DOInfoReader {
 	 * @return 如果不存在返回null
 	 */
 	public static Field getFieldByDBField(Class<?> clazz, String dbFieldName) {
-		List<Field> fields = getColumns(clazz);
-		for(Field field : fields) {
-			Column column = field.getAnnotation(Column.class);
-			if(column.value().equals(dbFieldName)) {
-				return field;
-			}
-		}
-		return null;
+		getColumns(clazz); // 保持没有@Column时抛异常
+		return getEntityMeta(clazz).getFieldByDBField(dbFieldName);
 	}
 	
 	/**
@@ -116,7 +135,7 @@ public class DOInfoReader {
 	 * 
 	 * @param clazz
 	 * @throws NoColumnAnnotationException 当没有一个@Column注解时抛出
-	 * @return 不会返回null
+	 * @return 不会返回null，返回的列表不可修改
 	 */
 	public static List<Field> getColumns(Class<?> clazz)
 			throws NoColumnAnnotationException {
@@ -125,18 +144,11 @@ public class DOInfoReader {
 			throw new NoColumnAnnotationException("class is null");
 		}
 		
-		List<Field> cached = class2Column.get(clazz);
-		if(cached != null) {
-			return cached;
-		}
-		
-		List<Field> result = _getAnnotationColumns(clazz, Column.class);
+		List<Field> result = getEntityMeta(clazz).getColumns();
 		if (result.isEmpty()) {
 			throw new NoColumnAnnotationException("class " + clazz.getName()
 					+ " does not have any @Column fields");
 		}
-		
-		class2Column.put(clazz, result);
 		return result;
 	}
 	
@@ -149,12 +161,12 @@ public class DOInfoReader {
 		if(clazz == null) {
 			throw new NoJoinTableMemberException("clazz is null");
 		}
-		List<Field> result = _getAnnotationColumns(clazz, JoinLeftTable.class);
-		if(result == null || result.isEmpty()) {
+		Field field = getEntityMeta(clazz).getJoinLeftField();
+		if(field == null) {
 			throw new NoJoinTableMemberException("class " + clazz.getName()
 			    + " does not have @JoinLeftTable field");
 		}
-		return result.get(0);
+		return field;
 	}
 	
 	/**
@@ -166,30 +178,24 @@ public class DOInfoReader {
 		if(clazz == null) {
 			throw new NoJoinTableMemberException("clazz is null");
 		}
-		List<Field> result = _getAnnotationColumns(clazz, JoinRightTable.class);
-		if(result == null || result.isEmpty()) {
+		Field field = getEntityMeta(clazz).getJoinRightField();
+		if(field == null) {
 			throw new NoJoinTableMemberException("class " + clazz.getName()
 			    + " does not have @JoinRightTable field");
 		}
-		return result.get(0);
+		return field;
 	}
 	
 	/**
 	 * 获得字段里面的key字段
 	 * @param clazz
-	 * @return
+	 * @return 返回的列表不可修改
 	 * @throws NoKeyColumnAnnotationException 如果没有key Column，抛出该异常。
 	 */
 	public static List<Field> getKeyColumns(Class<?> clazz) 
 	    throws NoKeyColumnAnnotationException {
-		List<Field> fields = getColumns(clazz);
-		List<Field> keyFields = new ArrayList<Field>();
-		for(Field field : fields) {
-			Column column = field.getAnnotation(Column.class);
-			if(column.isKey()) {
-				keyFields.add(field);
-			}
-		}
+		getColumns(clazz); // 保持没有@Column时抛异常
+		List<Field> keyFields = getEntityMeta(clazz).getKeyColumns();
 		if(keyFields.isEmpty()) {
 			throw new NoKeyColumnAnnotationException();
 		}
@@ -209,16 +215,8 @@ public class DOInfoReader {
 	}
 	
 	public static Field getAutoIncrementField(Class<?> clazz) {
-		
-		List<Field> fields = getColumns(clazz);
-		
-		for(Field field : fields) {
-			Column column = field.getAnnotation(Column.class);
-			if(column.isAutoIncrement()) {
-				return field;
-			}
-		}
-		return null;
+		getColumns(clazz); // 保持没有@Column时抛异常
+		return getEntityMeta(clazz).getAutoIncrementField();
 	}
 	
 	/**
@@ -227,35 +225,18 @@ public class DOInfoReader {
 	 * @return 如果没有则返回null
 	 */
 	public static Field getSoftDeleteColumn(Class<?> clazz) {
-		List<Field> fields = getColumns(clazz);
-		
-		for(Field field : fields) {
-			Column column = field.getAnnotation(Column.class);
-			if(column.softDelete() != null && column.softDelete().length == 2
-					&& !column.softDelete()[0].trim().isEmpty()
-					&& !column.softDelete()[1].trim().isEmpty()) {
-				return field;
-			}
-		}
-		return null;
+		getColumns(clazz); // 保持没有@Column时抛异常
+		return getEntityMeta(clazz).getSoftDeleteField();
 	}
 	
 	/**
 	 * 获得字段里面的非key字段
 	 * @param clazz
-	 * @return
+	 * @return 返回的列表不可修改
 	 */
 	public static List<Field> getNotKeyColumns(Class<?> clazz) {
-		List<Field> fields = getColumns(clazz);
-		
-		List<Field> keyFields = new ArrayList<Field>();
-		for(Field field : fields) {
-			Column column = field.getAnnotation(Column.class);
-			if(!column.isKey()) {
-				keyFields.add(field);
-			}
-		}
-		return keyFields;
+		getColumns(clazz); // 保持没有@Column时抛异常
+		return getEntityMeta(clazz).getNotKeyColumns();
 	}
 	
 	/**
@@ -268,31 +249,27 @@ public class DOInfoReader {
 		if(clazz == null) {
 			return new ArrayList<Field>();
 		}
-		
-		List<Field> cached = class2RelatedColumn.get(clazz);
-		if(cached != null) {
-			return cached;
-		}
-		
-		List<Class<?>> classLink = new ArrayList<Class<?>>();
-		Class<?> curClass = clazz;
-		while (curClass != null) {
-			classLink.add(curClass);
-			curClass = curClass.getSuperclass();
+		return getEntityMeta(clazz).getRelatedColumns();
+	}
+
+	/**
+	 * 获得字段读写器，按(对象实际类型,字段)缓存，getter/setter只查找一次
+	 * @param clazz 对象的实际类型
+	 * @param field
+	 * @return
+	 */
+	public static FieldAccessor getAccessor(Class<?> clazz, Field field) {
+		Map<Field, FieldAccessor> accessors = class2Accessors.get(clazz);
+		if(accessors == null) {
+			accessors = new ConcurrentHashMap<Field, FieldAccessor>();
+			class2Accessors.put(clazz, accessors);
 		}
-		// 父类优先
-		List<Field> result = new ArrayList<Field>();
-		for (int i = classLink.size() - 1; i >= 0; i--) {
-			Field[] fields = classLink.get(i).getDeclaredFields();
-			for (Field field : fields) {
-				if (field.getAnnotation(RelatedColumn.class) != null) {
-					result.add(field);
-				}
-			}
+		FieldAccessor accessor = accessors.get(field);
+		if(accessor == null) {
+			accessor = new FieldAccessor(clazz, field);
+			accessors.put(field, accessor);
 		}
-
-		class2RelatedColumn.put(clazz, result);
-		return result;
+		return accessor;
 	}
 
 	/**
@@ -303,25 +280,8 @@ public class DOInfoReader {
 	 * @return
 	 */
 	public static Object getValue(Field field, Object object) {
-		String fieldName = field.getName();
-		String setMethodName = "get" + firstLetterUpperCase(fieldName);
-		Method method = null;
-		try {
-			method = object.getClass().getMethod(setMethodName);
-		} catch (Exception e) {
-		}
-		
-		if(method != null) {
-			try {
-				return method.invoke(object);
-			} catch (Exception e) {
-				LOGGER.error("method invoke", e);
-			}
-		}
-		
-		field.setAccessible(true);
 		try {
-			return field.get(object);
+			return getAccessor(object.getClass(), field).get(object);
 		} catch (Exception e) {
 			LOGGER.error("method invoke", e);
 			return null;
@@ -329,7 +289,7 @@ public class DOInfoReader {
 	}
 	
 	/**
-	 * 先按照setter的约定寻找setter方法(必须严格匹配参数类型或自动转换)<br>
+	 * 先按照setter的约定寻找setter方法(参数类型为字段类型)<br>
 	 * 如果有则按setter方法，如果没有则直接写入
 	 * 
 	 * @param field
@@ -337,74 +297,14 @@ public class DOInfoReader {
 	 * @param value
 	 */
 	public static boolean setValue(Field field, Object object, Object value) {
-		String fieldName = field.getName();
-		String setMethodName = "set" + firstLetterUpperCase(fieldName);
 		value = TypeAutoCast.cast(value, field.getType());
-		
-		Method method = null;
 		try {
-			method = object.getClass().getMethod(setMethodName, value.getClass());
+			getAccessor(object.getClass(), field).set(object, value);
 		} catch (Exception e) {
+			LOGGER.error("method invoke", e);
+			return false;
 		}
-		
-		if(method != null) {
-			try {
-				method.invoke(object, value);
-			} catch (Exception e) {
-				LOGGER.error("method invoke", e);
-				return false;
-			}
-		} else {
-			field.setAccessible(true);
-			try {
-				field.set(object, value);
-			} catch (Exception e) {
-				LOGGER.error("method invoke", e);
-				return false;
-			}
-		}
-		
 		return true;
 	}
 	
-	/**
-	 * 获得clazz类的有annotationClazz注解的字段field（包括clazz类及其父类，父类优先，不处理重名）。
-	 * @param clazz
-	 * @param annoClazz
-	 * @return
-	 */
-	private static List<Field> _getAnnotationColumns(Class<?> clazz, 
-			Class<? extends Annotation> annoClazz) {
-		if(clazz == null) {
-			return new ArrayList<Field>();
-		}
-		
-		List<Class<?>> classLink = new ArrayList<Class<?>>();
-		Class<?> curClass = clazz;
-		while (curClass != null) {
-			classLink.add(curClass);
-			curClass = curClass.getSuperclass();
-		}
-		
-		// 父类先拿，不处理重名情况
-		List<Field> result = new ArrayList<Field>();
-		for (int i = classLink.size() - 1; i >= 0; i--) {
-			Field[] fields = classLink.get(i).getDeclaredFields();
-			for (Field field : fields) {
-				if (field.getAnnotation(annoClazz) != null) {
-					result.add(field);
-				}
-			}
-		}
-		
-		return result;
-	}
-	
-	private static String firstLetterUpperCase(String str) {
-		if (str == null || str.length() < 2) {
-			return str;
-		}
-		String firstLetter = str.substring(0, 1).toUpperCase();
-		return firstLetter + str.substring(1, str.length());
-	}
 }
@@ -0,0 +1,458 @@
+package com.pugwoo.dbhelper.utils;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.pugwoo.dbhelper.annotation.Column;
+import com.pugwoo.dbhelper.annotation.JoinLeftTable;
+import com.pugwoo.dbhelper.annotation.JoinRightTable;
+import com.pugwoo.dbhelper.annotation.JoinTable;
+import com.pugwoo.dbhelper.annotation.RelatedColumn;
+import com.pugwoo.dbhelper.annotation.Table;
+
+/**
+ * 一个DO/VO类预先解析好的注解信息，每个类只解析一次，之后只读。<br>
+ * 通过DOInfoReader.getEntityMeta获得，不要自行构造。<br>
+ *
+ * 和DOInfoReader的区别：这里不抛异常，没有的信息返回null或空列表，由DOInfoReader决定是否抛异常。
+ */
+public class EntityMeta {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(EntityMeta.class);
+
+	private final Class<?> clazz;
+
+	/**没有@Table注解时为null*/
+	private final Table table;
+	/**带`的表名，没有@Table注解时为null*/
+	private final String tableName;
+
+	/**没有@JoinTable注解时为null*/
+	private final JoinTable joinTable;
+	private final Field joinLeftField;
+	private final JoinLeftTable joinLeftTable;
+	private final Field joinRightField;
+	private final JoinRightTable joinRightTable;
+
+	/**所有@Column字段，父类优先*/
+	private final List<Field> columns;
+	private final List<Field> keyColumns;
+	private final List<Field> notKeyColumns;
+	/**非计算列，用于insert*/
+	private final List<Field> insertColumns;
+
+	private final List<Field> setTimeWhenInsertColumns;
+	private final List<Field> setTimeWhenUpdateColumns;
+	private final List<Field> insertDefaultColumns;
+	private final List<Field> randomStringColumns;
+
+	private final Field softDeleteField;
+	private final Column softDeleteColumn;
+
+	private final Field autoIncrementField;
+
+	private final List<Field> relatedColumns;
+
+	private final Map<Field, Column> field2Column;
+	/**字段到带`列名的映射*/
+	private final Map<Field, String> field2ColumnName;
+	/**db列名(不带`)到字段的映射*/
+	private final Map<String, Field> dbField2Field;
+
+	/**编译期生成的select语句(SELECT之后部分)，没有时为null*/
+	private final String selectSQL;
+
+	EntityMeta(Class<?> clazz) {
+		this(clazz, null);
+	}
+
+	/**
+	 * @param clazz
+	 * @param generated 编译期生成的注解信息，为null或者和类不一致(生成的类已过期)时反射扫描注解。<br>
+	 *        过期的检查：生成的字段必须存在且带有对应注解，生成的select语句必须和字段当前的@Column/@Table注解一致。
+	 *        新增的@Column字段要重新编译生成才会生效。
+	 */
+	EntityMeta(Class<?> clazz, GeneratedEntityMeta generated) {
+		this.clazz = clazz;
+		
+		List<Field> lefts = null, rights = null, columns = null, relatedColumns = null;
+		if(generated != null) {
+			lefts = resolveFields(clazz, JoinLeftTable.class, generated.getJoinLeftField());
+			rights = resolveFields(clazz, JoinRightTable.class, generated.getJoinRightField());
+			columns = resolveFields(clazz, Column.class, generated.getColumnFields());
+			relatedColumns = resolveFields(clazz, RelatedColumn.class, generated.getRelatedColumnFields());
+			if(columns != null && !isSame(generated.getSelectSQL(), getSelectSQL(clazz, columns))) {
+				LOGGER.warn("generated meta of class {} is stale, scan annotations instead", clazz.getName());
+				columns = null;
+			}
+		}
+		if(lefts == null || rights == null || columns == null || relatedColumns == null) {
+			generated = null;
+			lefts = getAnnotationColumns(clazz, JoinLeftTable.class);
+			rights = getAnnotationColumns(clazz, JoinRightTable.class);
+			columns = getAnnotationColumns(clazz, Column.class);
+			relatedColumns = getAnnotationColumns(clazz, RelatedColumn.class);
+		}
+		this.selectSQL = generated == null ? null : generated.getSelectSQL();
+
+		this.table = getClassAnnotation(clazz, Table.class);
+		this.tableName = table == null ? null : "`" + table.value() + "`";
+
+		this.joinTable = getClassAnnotation(clazz, JoinTable.class);
+		this.joinLeftField = lefts.isEmpty() ? null : lefts.get(0);
+		this.joinLeftTable = joinLeftField == null ? null
+				: joinLeftField.getAnnotation(JoinLeftTable.class);
+		this.joinRightField = rights.isEmpty() ? null : rights.get(0);
+		this.joinRightTable = joinRightField == null ? null
+				: joinRightField.getAnnotation(JoinRightTable.class);
+
+		List<Field> keyColumns = new ArrayList<Field>();
+		List<Field> notKeyColumns = new ArrayList<Field>();
+		List<Field> insertColumns = new ArrayList<Field>();
+		List<Field> setTimeWhenInsertColumns = new ArrayList<Field>();
+		List<Field> setTimeWhenUpdateColumns = new ArrayList<Field>();
+		List<Field> insertDefaultColumns = new ArrayList<Field>();
+		List<Field> randomStringColumns = new ArrayList<Field>();
+		Field softDeleteField = null;
+		Column softDeleteColumn = null;
+		Field autoIncrementField = null;
+		Map<Field, Column> field2Column = new HashMap<Field, Column>();
+		Map<Field, String> field2ColumnName = new HashMap<Field, String>();
+		Map<String, Field> dbField2Field = new HashMap<String, Field>();
+
+		for(Field field : columns) {
+			Column column = field.getAnnotation(Column.class);
+			field2Column.put(field, column);
+			field2ColumnName.put(field, "`" + column.value() + "`");
+			if(!dbField2Field.containsKey(column.value())) { // 同名时以第一个为准
+				dbField2Field.put(column.value(), field);
+			}
+
+			if(column.isKey()) {
+				keyColumns.add(field);
+			} else {
+				notKeyColumns.add(field);
+			}
+			if(column.computed().trim().isEmpty()) {
+				insertColumns.add(field);
+			}
+			if(autoIncrementField == null && column.isAutoIncrement()) {
+				autoIncrementField = field;
+			}
+			if(softDeleteField == null && isSoftDelete(column)) {
+				softDeleteField = field;
+				softDeleteColumn = column;
+			}
+			boolean isDate = Date.class.isAssignableFrom(field.getType());
+			if(column.setTimeWhenInsert() && isDate) {
+				setTimeWhenInsertColumns.add(field);
+			}
+			if(column.setTimeWhenUpdate() && isDate) {
+				setTimeWhenUpdateColumns.add(field);
+			}
+			if(column.insertDefault() != null && !column.insertDefault().isEmpty()) {
+				insertDefaultColumns.add(field);
+			}
+			if(column.setRandomStringWhenInsert()) {
+				randomStringColumns.add(field);
+			}
+		}
+
+		this.columns = Collections.unmodifiableList(columns);
+		this.keyColumns = Collections.unmodifiableList(keyColumns);
+		this.notKeyColumns = Collections.unmodifiableList(notKeyColumns);
+		this.insertColumns = Collections.unmodifiableList(insertColumns);
+		this.setTimeWhenInsertColumns = Collections.unmodifiableList(setTimeWhenInsertColumns);
+		this.setTimeWhenUpdateColumns = Collections.unmodifiableList(setTimeWhenUpdateColumns);
+		this.insertDefaultColumns = Collections.unmodifiableList(insertDefaultColumns);
+		this.randomStringColumns = Collections.unmodifiableList(randomStringColumns);
+		this.softDeleteField = softDeleteField;
+		this.softDeleteColumn = softDeleteColumn;
+		this.autoIncrementField = autoIncrementField;
+		this.field2Column = field2Column;
+		this.field2ColumnName = field2ColumnName;
+		this.dbField2Field = dbField2Field;
+
+		this.relatedColumns = Collections.unmodifiableList(relatedColumns);
+	}
+
+	public Class<?> getClazz() {
+		return clazz;
+	}
+
+	/**
+	 * @return 没有@Table注解时返回null
+	 */
+	public Table getTable() {
+		return table;
+	}
+
+	/**
+	 * @return 带`的表名，没有@Table注解时返回null
+	 */
+	public String getTableName() {
+		return tableName;
+	}
+
+	/**
+	 * @return 没有@JoinTable注解时返回null
+	 */
+	public JoinTable getJoinTable() {
+		return joinTable;
+	}
+
+	public boolean isJoinVO() {
+		return joinTable != null;
+	}
+
+	public Field getJoinLeftField() {
+		return joinLeftField;
+	}
+
+	public JoinLeftTable getJoinLeftTable() {
+		return joinLeftTable;
+	}
+
+	public Field getJoinRightField() {
+		return joinRightField;
+	}
+
+	public JoinRightTable getJoinRightTable() {
+		return joinRightTable;
+	}
+
+	public List<Field> getColumns() {
+		return columns;
+	}
+
+	public List<Field> getKeyColumns() {
+		return keyColumns;
+	}
+
+	public List<Field> getNotKeyColumns() {
+		return notKeyColumns;
+	}
+
+	/**
+	 * @return 非计算列
+	 */
+	public List<Field> getInsertColumns() {
+		return insertColumns;
+	}
+
+	public List<Field> getSetTimeWhenInsertColumns() {
+		return setTimeWhenInsertColumns;
+	}
+
+	public List<Field> getSetTimeWhenUpdateColumns() {
+		return setTimeWhenUpdateColumns;
+	}
+
+	public List<Field> getInsertDefaultColumns() {
+		return insertDefaultColumns;
+	}
+
+	public List<Field> getRandomStringColumns() {
+		return randomStringColumns;
+	}
+
+	/**
+	 * @return 没有软删除字段时返回null
+	 */
+	public Field getSoftDeleteField() {
+		return softDeleteField;
+	}
+
+	/**
+	 * @return 没有软删除字段时返回null
+	 */
+	public Column getSoftDeleteColumn() {
+		return softDeleteColumn;
+	}
+
+	/**
+	 * @return 软删除字段的未删除值，没有软删除字段时返回null
+	 */
+	public String getSoftDeleteNormalValue() {
+		return softDeleteColumn == null ? null : softDeleteColumn.softDelete()[0];
+	}
+
+	/**
+	 * @return 软删除字段的已删除值，没有软删除字段时返回null
+	 */
+	public String getSoftDeleteDeletedValue() {
+		return softDeleteColumn == null ? null : softDeleteColumn.softDelete()[1];
+	}
+
+	/**
+	 * @return 没有自增字段时返回null
+	 */
+	public Field getAutoIncrementField() {
+		return autoIncrementField;
+	}
+
+	public List<Field> getRelatedColumns() {
+		return relatedColumns;
+	}
+
+	/**
+	 * 获得字段的@Column注解
+	 * @param field
+	 * @return 不是本类的@Column字段时返回null
+	 */
+	public Column getColumn(Field field) {
+		return field2Column.get(field);
+	}
+
+	/**
+	 * 获得字段带`的列名
+	 * @param field
+	 * @return 不是本类的@Column字段时返回null
+	 */
+	public String getColumnName(Field field) {
+		return field2ColumnName.get(field);
+	}
+
+	/**
+	 * 从db字段名拿字段对象
+	 * @param dbFieldName 不带`的列名
+	 * @return 如果不存在返回null
+	 */
+	public Field getFieldByDBField(String dbFieldName) {
+		return dbField2Field.get(dbFieldName);
+	}
+
+	/**
+	 * @return 编译期生成的select语句中SELECT之后的部分，没有时返回null
+	 */
+	public String getSelectSQL() {
+		return selectSQL;
+	}
+
+	/**
+	 * 按生成的"类名#字段名"找回字段，字段必须带有annoClazz注解
+	 * @return 找不到字段(例如生成的类已过期)时返回null
+	 */
+	private static List<Field> resolveFields(Class<?> clazz,
+			Class<? extends Annotation> annoClazz, String... fieldNames) {
+		List<Field> result = new ArrayList<Field>();
+		if(fieldNames == null) {
+			return result;
+		}
+		for(String fieldName : fieldNames) {
+			if(fieldName == null) {
+				continue;
+			}
+			int index = fieldName.indexOf('#');
+			if(index < 0) {
+				return null;
+			}
+			String className = fieldName.substring(0, index);
+			Class<?> curClass = clazz;
+			while(curClass != null && !curClass.getName().equals(className)) {
+				curClass = curClass.getSuperclass();
+			}
+			if(curClass == null) {
+				return null;
+			}
+			Field field;
+			try {
+				field = curClass.getDeclaredField(fieldName.substring(index + 1));
+			} catch (NoSuchFieldException e) {
+				return null;
+			}
+			if(field.getAnnotation(annoClazz) == null) {
+				return null;
+			}
+			result.add(field);
+		}
+		return result;
+	}
+
+	/**
+	 * 按字段当前的注解拼凑select语句(SELECT之后部分)，和SQLUtils、EntityMetaProcessor的拼凑方式一致
+	 * @return join的VO或者没有@Table/@Column时返回null，和EntityMetaProcessor一致
+	 */
+	private static String getSelectSQL(Class<?> clazz, List<Field> columns) {
+		Table table = getClassAnnotation(clazz, Table.class);
+		if(getClassAnnotation(clazz, JoinTable.class) != null || table == null || columns.isEmpty()) {
+			return null;
+		}
+		StringBuilder sb = new StringBuilder();
+		for(Field field : columns) {
+			Column column = field.getAnnotation(Column.class);
+			String computed = column.computed().trim();
+			if(!computed.isEmpty()) {
+				sb.append("(").append(computed).append(") AS ");
+			}
+			sb.append("`").append(column.value()).append("`,");
+		}
+		sb.setLength(sb.length() - 1);
+		return sb.append(" FROM `").append(table.value()).append("` ").append(table.alias()).toString();
+	}
+	
+	private static boolean isSame(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	private static boolean isSoftDelete(Column column) {
+		return column.softDelete() != null && column.softDelete().length == 2
+				&& !column.softDelete()[0].trim().isEmpty()
+				&& !column.softDelete()[1].trim().isEmpty();
+	}
+
+	/**
+	 * 获得类上的注解，如果子类没有，会往父类查找
+	 */
+	private static <A extends Annotation> A getClassAnnotation(Class<?> clazz,
+			Class<A> annoClazz) {
+		Class<?> curClass = clazz;
+		while (curClass != null) {
+			A anno = curClass.getAnnotation(annoClazz);
+			if(anno != null) {
+				return anno;
+			}
+			curClass = curClass.getSuperclass();
+		}
+		return null;
+	}
+
+	/**
+	 * 获得clazz类的有annotationClazz注解的字段field（包括clazz类及其父类，父类优先，不处理重名）。
+	 * @param clazz
+	 * @param annoClazz
+	 * @return
+	 */
+	private static List<Field> getAnnotationColumns(Class<?> clazz,
+			Class<? extends Annotation> annoClazz) {
+		List<Class<?>> classLink = new ArrayList<Class<?>>();
+		Class<?> curClass = clazz;
+		while (curClass != null) {
+			classLink.add(curClass);
+			curClass = curClass.getSuperclass();
+		}
+
+		// 父类先拿，不处理重名情况
+		List<Field> result = new ArrayList<Field>();
+		for (int i = classLink.size() - 1; i >= 0; i--) {
+			Field[] fields = classLink.get(i).getDeclaredFields();
+			for (Field field : fields) {
+				if (field.getAnnotation(annoClazz) != null) {
+					result.add(field);
+				}
+			}
+		}
+
+		return result;
+	}
+
+}
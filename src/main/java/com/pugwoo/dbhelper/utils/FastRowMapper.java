@@ -0,0 +1,388 @@
+package com.pugwoo.dbhelper.utils;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.RowMapper;
+
+/**
+ * 预编译的rowMapper：每个@Table/@JoinTable类只解析一次，生成每列的类型化读取器(Binding)，
+ * 读取时直接按列下标调用rs.getXxx并通过FieldAccessor写入，循环中不再经过TypeAutoCast和DOInfoReader。<br>
+ * <br>
+ * 支持的字段类型：基础类型及其包装类型、String、BigDecimal、byte[]、java.util.Date、
+ * java.sql.Date、java.sql.Timestamp。<br>
+ * 不支持的类（如有其它类型字段、没有默认构造方法）由create方法自动退回AnnotationSupportRowMapper。<br>
+ *
+ * 通过SpringJdbcDBHelper的fastRowMapper属性开启。
+ *
+ * @param <T>
+ */
+public class FastRowMapper<T> implements RowMapper<T> {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(FastRowMapper.class);
+
+	/**缓存每个类的解析结果，不支持的类缓存为UNSUPPORTED*/
+	private static Map<Class<?>, Plan> class2Plan = new ConcurrentHashMap<Class<?>, Plan>();
+
+	private static final Plan UNSUPPORTED = new Plan();
+
+	private final Plan plan;
+	private boolean isUseGivenObj = false;
+	private T t;
+
+	/**已经解析过列下标的ResultSet，同一个ResultSet只解析一次*/
+	private ResultSet indexedResultSet;
+	private int[] indexesT1;
+	private int[] indexesT2;
+
+	private FastRowMapper(Plan plan) {
+		this.plan = plan;
+	}
+
+	/**
+	 * 获得clazz的rowMapper，如果clazz不支持预编译，返回AnnotationSupportRowMapper
+	 */
+	public static <T> RowMapper<T> create(Class<T> clazz) {
+		Plan plan = getPlan(clazz);
+		if(plan == UNSUPPORTED) {
+			return new AnnotationSupportRowMapper<T>(clazz);
+		}
+		return new FastRowMapper<T>(plan);
+	}
+
+	/**
+	 * 获得clazz的rowMapper，查询结果写入到t中。如果clazz不支持预编译，返回AnnotationSupportRowMapper
+	 */
+	public static <T> RowMapper<T> create(Class<T> clazz, T t) {
+		Plan plan = getPlan(clazz);
+		if(plan == UNSUPPORTED) {
+			return new AnnotationSupportRowMapper<T>(clazz, t);
+		}
+		FastRowMapper<T> mapper = new FastRowMapper<T>(plan);
+		mapper.t = t;
+		mapper.isUseGivenObj = true;
+		return mapper;
+	}
+
+	/**
+	 * 类是否支持预编译的rowMapper
+	 */
+	public static boolean isSupported(Class<?> clazz) {
+		return getPlan(clazz) != UNSUPPORTED;
+	}
+
+	private static Plan getPlan(Class<?> clazz) {
+		Plan plan = class2Plan.get(clazz);
+		if(plan == null) {
+			plan = Plan.build(clazz);
+			class2Plan.put(clazz, plan);
+		}
+		return plan;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T mapRow(ResultSet rs, int index) throws SQLException {
+		try {
+			if(rs != indexedResultSet) {
+				indexesT1 = findColumns(rs, plan.labelsT1);
+				if(plan.isJoinVO) {
+					indexesT2 = findColumns(rs, plan.labelsT2);
+				}
+				indexedResultSet = rs;
+			}
+
+			T obj = isUseGivenObj ? t : (T) plan.constructor.newInstance();
+
+			if(plan.isJoinVO) {
+				Object t1 = plan.leftConstructor.newInstance();
+				Object t2 = plan.rightConstructor.newInstance();
+
+				// 如果关联对象的所有字段都是null值，那么该对象设置为null值
+				boolean isT1AllNull = read(rs, t1, plan.bindingsT1, indexesT1);
+				boolean isT2AllNull = read(rs, t2, plan.bindingsT2, indexesT2);
+
+				plan.leftAccessor.set(obj, isT1AllNull ? null : t1);
+				plan.rightAccessor.set(obj, isT2AllNull ? null : t2);
+			} else {
+				read(rs, obj, plan.bindingsT1, indexesT1);
+			}
+
+			return obj;
+		} catch (Exception e) {
+			LOGGER.error("mapRow exception", e);
+			return null;
+		}
+	}
+
+	/**
+	 * @return 是否所有值都是null
+	 */
+	private static boolean read(ResultSet rs, Object obj, Binding[] bindings, int[] indexes)
+			throws Exception {
+		boolean isAllNull = true;
+		for(int i = 0; i < bindings.length; i++) {
+			if(bindings[i].read(rs, indexes[i], obj)) {
+				isAllNull = false;
+			}
+		}
+		return isAllNull;
+	}
+
+	private static int[] findColumns(ResultSet rs, String[] labels) throws SQLException {
+		int[] indexes = new int[labels.length];
+		for(int i = 0; i < labels.length; i++) {
+			indexes[i] = rs.findColumn(labels[i]);
+		}
+		return indexes;
+	}
+
+	/**
+	 * 一个类的预编译结果，只读，多个mapper共享
+	 */
+	private static class Plan {
+		private boolean isJoinVO;
+		private Constructor<?> constructor;
+
+		/**普通DO时是clazz的列，join时是左表的列*/
+		private Binding[] bindingsT1;
+		private String[] labelsT1;
+
+		private Constructor<?> leftConstructor;
+		private Constructor<?> rightConstructor;
+		private FieldAccessor leftAccessor;
+		private FieldAccessor rightAccessor;
+		private Binding[] bindingsT2;
+		private String[] labelsT2;
+
+		/**
+		 * @return 不支持时返回UNSUPPORTED
+		 */
+		private static Plan build(Class<?> clazz) {
+			try {
+				Plan plan = new Plan();
+				plan.constructor = getConstructor(clazz);
+
+				EntityMeta meta = DOInfoReader.getEntityMeta(clazz);
+				if(meta.isJoinVO()) {
+					plan.isJoinVO = true;
+					Field leftField = DOInfoReader.getJoinLeftTable(clazz);
+					Field rightField = DOInfoReader.getJoinRightTable(clazz);
+					plan.leftConstructor = getConstructor(leftField.getType());
+					plan.rightConstructor = getConstructor(rightField.getType());
+					plan.leftAccessor = DOInfoReader.getAccessor(clazz, leftField);
+					plan.rightAccessor = DOInfoReader.getAccessor(clazz, rightField);
+
+					String leftPrefix = meta.getJoinLeftTable().alias() + ".";
+					String rightPrefix = meta.getJoinRightTable().alias() + ".";
+					plan.labelsT1 = getLabels(leftField.getType(), leftPrefix);
+					plan.bindingsT1 = getBindings(leftField.getType());
+					plan.labelsT2 = getLabels(rightField.getType(), rightPrefix);
+					plan.bindingsT2 = getBindings(rightField.getType());
+				} else {
+					plan.labelsT1 = getLabels(clazz, "");
+					plan.bindingsT1 = getBindings(clazz);
+				}
+
+				if(plan.bindingsT1 == null || plan.isJoinVO && plan.bindingsT2 == null) {
+					LOGGER.info("class {} has unsupported column types, use AnnotationSupportRowMapper",
+							clazz.getName());
+					return UNSUPPORTED;
+				}
+				return plan;
+			} catch (Exception e) {
+				LOGGER.info("class {} is not supported by FastRowMapper, use AnnotationSupportRowMapper, reason:{}",
+						clazz.getName(), e.getMessage());
+				return UNSUPPORTED;
+			}
+		}
+
+		private static Constructor<?> getConstructor(Class<?> clazz) throws NoSuchMethodException {
+			Constructor<?> constructor = clazz.getDeclaredConstructor();
+			constructor.setAccessible(true);
+			return constructor;
+		}
+
+		private static String[] getLabels(Class<?> clazz, String prefix) {
+			List<Field> fields = DOInfoReader.getColumns(clazz);
+			EntityMeta meta = DOInfoReader.getEntityMeta(clazz);
+			String[] labels = new String[fields.size()];
+			for(int i = 0; i < labels.length; i++) {
+				labels[i] = prefix + meta.getColumn(fields.get(i)).value();
+			}
+			return labels;
+		}
+
+		/**
+		 * @return 有不支持的字段类型时返回null
+		 */
+		private static Binding[] getBindings(Class<?> clazz) {
+			List<Field> fields = DOInfoReader.getColumns(clazz);
+			Binding[] bindings = new Binding[fields.size()];
+			for(int i = 0; i < bindings.length; i++) {
+				Field field = fields.get(i);
+				bindings[i] = Binding.of(DOInfoReader.getAccessor(clazz, field), field.getType());
+				if(bindings[i] == null) {
+					return null;
+				}
+			}
+			return bindings;
+		}
+	}
+
+	/**
+	 * 一列的类型化读取器：读取rs的一个单元格并写入对象字段
+	 */
+	private static abstract class Binding {
+
+		protected final FieldAccessor accessor;
+
+		Binding(FieldAccessor accessor) {
+			this.accessor = accessor;
+		}
+
+		/**
+		 * @return 写入的值是否非null（基础类型字段总是非null）
+		 */
+		abstract boolean read(ResultSet rs, int index, Object obj) throws Exception;
+
+		/**
+		 * @return 不支持的类型返回null
+		 */
+		static Binding of(FieldAccessor accessor, Class<?> type) {
+			if(type == int.class || type == Integer.class) {
+				return new IntBinding(accessor, type.isPrimitive());
+			}
+			if(type == long.class || type == Long.class) {
+				return new LongBinding(accessor, type.isPrimitive());
+			}
+			int kind = ObjectBinding.getKind(type);
+			if(kind < 0) {
+				return null;
+			}
+			return new ObjectBinding(accessor, kind, type.isPrimitive());
+		}
+	}
+
+	private static class IntBinding extends Binding {
+		private final boolean isPrimitive;
+		IntBinding(FieldAccessor accessor, boolean isPrimitive) {
+			super(accessor);
+			this.isPrimitive = isPrimitive;
+		}
+		@Override
+		boolean read(ResultSet rs, int index, Object obj) throws Exception {
+			int value = rs.getInt(index);
+			if(rs.wasNull() && !isPrimitive) {
+				accessor.set(obj, null);
+				return false;
+			}
+			accessor.setInt(obj, value); // 数据库null对应基础类型时是0
+			return true;
+		}
+	}
+
+	private static class LongBinding extends Binding {
+		private final boolean isPrimitive;
+		LongBinding(FieldAccessor accessor, boolean isPrimitive) {
+			super(accessor);
+			this.isPrimitive = isPrimitive;
+		}
+		@Override
+		boolean read(ResultSet rs, int index, Object obj) throws Exception {
+			long value = rs.getLong(index);
+			if(rs.wasNull() && !isPrimitive) {
+				accessor.set(obj, null);
+				return false;
+			}
+			accessor.setLong(obj, value); // 数据库null对应基础类型时是0
+			return true;
+		}
+	}
+
+	private static class ObjectBinding extends Binding {
+
+		private static final int SHORT = 0;
+		private static final int BYTE = 1;
+		private static final int BOOLEAN = 2;
+		private static final int FLOAT = 3;
+		private static final int DOUBLE = 4;
+		private static final int STRING = 5;
+		private static final int BIG_DECIMAL = 6;
+		private static final int BYTES = 7;
+		private static final int SQL_DATE = 8;
+		private static final int TIMESTAMP = 9;
+		private static final int DATE = 10;
+
+		private final int kind;
+		/**基础类型字段在数据库null时的值*/
+		private final Object defaultValue;
+
+		ObjectBinding(FieldAccessor accessor, int kind, boolean isPrimitive) {
+			super(accessor);
+			this.kind = kind;
+			this.defaultValue = isPrimitive ? getDefaultValue(kind) : null;
+		}
+
+		@Override
+		boolean read(ResultSet rs, int index, Object obj) throws Exception {
+			Object value;
+			switch (kind) {
+			case SHORT: value = rs.getShort(index); break;
+			case BYTE: value = rs.getByte(index); break;
+			case BOOLEAN: value = rs.getBoolean(index); break;
+			case FLOAT: value = rs.getFloat(index); break;
+			case DOUBLE: value = rs.getDouble(index); break;
+			case STRING: value = rs.getString(index); break;
+			case BIG_DECIMAL: value = rs.getBigDecimal(index); break;
+			case BYTES: value = rs.getBytes(index); break;
+			case SQL_DATE: value = rs.getDate(index); break;
+			case TIMESTAMP: value = rs.getTimestamp(index); break;
+			default: value = rs.getObject(index); // java.util.Date，保持驱动返回的具体类型
+			}
+			if(rs.wasNull()) {
+				value = defaultValue;
+			}
+			accessor.set(obj, value);
+			return value != null;
+		}
+
+		/**
+		 * @return 不支持的类型返回-1
+		 */
+		static int getKind(Class<?> type) {
+			if(type == short.class || type == Short.class) return SHORT;
+			if(type == byte.class || type == Byte.class) return BYTE;
+			if(type == boolean.class || type == Boolean.class) return BOOLEAN;
+			if(type == float.class || type == Float.class) return FLOAT;
+			if(type == double.class || type == Double.class) return DOUBLE;
+			if(type == String.class) return STRING;
+			if(type == BigDecimal.class) return BIG_DECIMAL;
+			if(type == byte[].class) return BYTES;
+			if(type == java.sql.Date.class) return SQL_DATE;
+			if(type == java.sql.Timestamp.class) return TIMESTAMP;
+			if(type == java.util.Date.class) return DATE;
+			return -1;
+		}
+
+		private static Object getDefaultValue(int kind) {
+			switch (kind) {
+			case SHORT: return Short.valueOf((short) 0);
+			case BYTE: return Byte.valueOf((byte) 0);
+			case BOOLEAN: return Boolean.FALSE;
+			case FLOAT: return Float.valueOf(0f);
+			case DOUBLE: return Double.valueOf(0d);
+			default: return null;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,152 @@
+package com.pugwoo.dbhelper.utils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 字段读写器：getter/setter/字段在构造时解析一次，之后每次读写不再查找方法。<br>
+ * 优先使用getter/setter，没有时直接读写字段。<br>
+ * 注意：有getter/setter时通过Method.invoke调用，基础类型的值仍会装箱；只有直接读写基础类型字段时才不装箱。<br>
+ * 通过DOInfoReader.getAccessor获得，按(对象实际类型,字段)缓存。
+ */
+public class FieldAccessor {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(FieldAccessor.class);
+
+	private static final int TYPE_OBJECT = 0;
+	private static final int TYPE_INT = 1;
+	private static final int TYPE_LONG = 2;
+	private static final int TYPE_SHORT = 3;
+	private static final int TYPE_BYTE = 4;
+	private static final int TYPE_BOOLEAN = 5;
+	private static final int TYPE_FLOAT = 6;
+	private static final int TYPE_DOUBLE = 7;
+	private static final int TYPE_CHAR = 8;
+
+	private final Field field;
+	/**没有getter时为null*/
+	private final Method getter;
+	/**没有setter时为null*/
+	private final Method setter;
+	/**字段的基础类型，用于没有setter时直接写基础类型字段，避免再走一次装箱的field.set*/
+	private final int primitiveType;
+
+	FieldAccessor(Class<?> clazz, Field field) {
+		this.field = field;
+		try {
+			field.setAccessible(true);
+		} catch (SecurityException e) { // ignore
+		}
+
+		String name = firstLetterUpperCase(field.getName());
+		this.getter = findMethod(clazz, "get" + name);
+		this.setter = findMethod(clazz, "set" + name, field.getType());
+		this.primitiveType = getPrimitiveType(field.getType());
+	}
+
+	public Field getField() {
+		return field;
+	}
+
+	/**
+	 * 优先通过getter获得值，如果没有getter，则直接获取。
+	 * getter调用失败时，也会尝试直接读取字段。
+	 */
+	public Object get(Object object) throws IllegalAccessException {
+		if(getter != null) {
+			try {
+				return getter.invoke(object);
+			} catch (Exception e) {
+				LOGGER.error("method invoke", e);
+			}
+		}
+		return field.get(object);
+	}
+
+	/**
+	 * 优先通过setter设置值，如果没有setter，则直接写入。
+	 * @param value 必须已经是字段的类型(基础类型则是其包装类型)
+	 */
+	public void set(Object object, Object value) throws Exception {
+		if(setter != null) {
+			setter.invoke(object, value);
+			return;
+		}
+		if(value == null || primitiveType == TYPE_OBJECT) {
+			field.set(object, value);
+			return;
+		}
+		switch (primitiveType) {
+		case TYPE_INT: field.setInt(object, ((Integer) value).intValue()); break;
+		case TYPE_LONG: field.setLong(object, ((Long) value).longValue()); break;
+		case TYPE_SHORT: field.setShort(object, ((Short) value).shortValue()); break;
+		case TYPE_BYTE: field.setByte(object, ((Byte) value).byteValue()); break;
+		case TYPE_BOOLEAN: field.setBoolean(object, ((Boolean) value).booleanValue()); break;
+		case TYPE_FLOAT: field.setFloat(object, ((Float) value).floatValue()); break;
+		case TYPE_DOUBLE: field.setDouble(object, ((Double) value).doubleValue()); break;
+		case TYPE_CHAR: field.setChar(object, ((Character) value).charValue()); break;
+		default: field.set(object, value);
+		}
+	}
+
+	/**
+	 * 写入int值。只有int字段且没有setter时才不装箱，其它情况(包括有setter)装箱后走set
+	 */
+	public void setInt(Object object, int value) throws Exception {
+		if(setter == null && primitiveType == TYPE_INT) {
+			field.setInt(object, value);
+		} else {
+			set(object, Integer.valueOf(value));
+		}
+	}
+	
+	/**
+	 * 写入long值。只有long字段且没有setter时才不装箱，其它情况(包括有setter)装箱后走set
+	 */
+	public void setLong(Object object, long value) throws Exception {
+		if(setter == null && primitiveType == TYPE_LONG) {
+			field.setLong(object, value);
+		} else {
+			set(object, Long.valueOf(value));
+		}
+	}
+
+	private static Method findMethod(Class<?> clazz, String name, Class<?>... paramTypes) {
+		try {
+			Method method = clazz.getMethod(name, paramTypes);
+			try {
+				method.setAccessible(true); // 跳过每次调用的访问检查
+			} catch (SecurityException e) { // ignore
+			}
+			return method;
+		} catch (NoSuchMethodException e) {
+			return null;
+		} catch (SecurityException e) {
+			return null;
+		}
+	}
+
+	private static int getPrimitiveType(Class<?> type) {
+		if(type == int.class) return TYPE_INT;
+		if(type == long.class) return TYPE_LONG;
+		if(type == short.class) return TYPE_SHORT;
+		if(type == byte.class) return TYPE_BYTE;
+		if(type == boolean.class) return TYPE_BOOLEAN;
+		if(type == float.class) return TYPE_FLOAT;
+		if(type == double.class) return TYPE_DOUBLE;
+		if(type == char.class) return TYPE_CHAR;
+		return TYPE_OBJECT;
+	}
+
+	private static String firstLetterUpperCase(String str) {
+		if (str == null || str.length() < 2) {
+			return str;
+		}
+		String firstLetter = str.substring(0, 1).toUpperCase();
+		return firstLetter + str.substring(1, str.length());
+	}
+
+}
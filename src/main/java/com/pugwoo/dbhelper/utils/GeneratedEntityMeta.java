@@ -0,0 +1,40 @@
+package com.pugwoo.dbhelper.utils;
+
+/**
+ * 编译期由EntityMetaProcessor生成的DO/VO注解信息。<br>
+ * 生成类和DO/VO在同一个包，类名为DO/VO的类名(内部类的$换成_)加上后缀_DBHelperMeta，
+ * DOInfoReader.getEntityMeta会优先使用它，找不到时才反射扫描注解。<br>
+ *
+ * 字段的格式为"声明字段的类的全名#字段名"。
+ */
+public interface GeneratedEntityMeta {
+
+	/**生成类的类名后缀*/
+	String CLASS_SUFFIX = "_DBHelperMeta";
+
+	/**
+	 * @return 所有@Column字段，父类优先
+	 */
+	String[] getColumnFields();
+
+	/**
+	 * @return 所有@RelatedColumn字段，父类优先
+	 */
+	String[] getRelatedColumnFields();
+
+	/**
+	 * @return @JoinLeftTable字段，没有时返回null
+	 */
+	String getJoinLeftField();
+
+	/**
+	 * @return @JoinRightTable字段，没有时返回null
+	 */
+	String getJoinRightField();
+
+	/**
+	 * @return SELECT关键字之后的列和FROM子句，join的VO或编译期无法确定时返回null
+	 */
+	String getSelectSQL();
+
+}
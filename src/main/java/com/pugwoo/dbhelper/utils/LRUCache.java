@@ -0,0 +1,158 @@
+package com.pugwoo.dbhelper.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 有容量上限的线程安全LRU缓存，超过容量时淘汰最久未访问的项，并记录命中、未命中、淘汰次数。<br>
+ * 基于ConcurrentHashMap，读不加锁；淘汰是近似LRU：每项记录最近访问时的逻辑时钟(每次put加1)，
+ * 超过容量时由一个线程按访问时间淘汰最旧的1/8，其它线程不等待，因此并发写入时容量可能短暂超出。
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class LRUCache<K, V> {
+
+	private final int capacity;
+	/**淘汰后剩下的项数，淘汰一次后可以再put约capacity/8次才需要再淘汰*/
+	private final int evictTo;
+	private final ConcurrentHashMap<K, Node<V>> map;
+	private final AtomicInteger size = new AtomicInteger();
+	private final AtomicLong clock = new AtomicLong();
+	private final ReentrantLock evictLock = new ReentrantLock();
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	private static class Node<V> {
+		private final V value;
+		private volatile long accessTime;
+
+		Node(V value, long accessTime) {
+			this.value = value;
+			this.accessTime = accessTime;
+		}
+	}
+
+	/**
+	 * @param capacity 最多缓存的项数，必须大于0
+	 */
+	public LRUCache(int capacity) {
+		if(capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive:" + capacity);
+		}
+		this.capacity = capacity;
+		this.evictTo = capacity - capacity / 8;
+		this.map = new ConcurrentHashMap<K, Node<V>>(Math.min(capacity, 1024));
+	}
+
+	/**
+	 * @return 不存在时返回null
+	 */
+	public V get(K key) {
+		Node<V> node = map.get(key);
+		if(node == null) {
+			missCount.incrementAndGet();
+			return null;
+		}
+		long now = clock.get();
+		if(node.accessTime != now) { // 热点项不重复写
+			node.accessTime = now;
+		}
+		hitCount.incrementAndGet();
+		return node.value;
+	}
+
+	/**
+	 * @param value 不能为null
+	 */
+	public void put(K key, V value) {
+		if(map.put(key, new Node<V>(value, clock.incrementAndGet())) == null) {
+			if(size.incrementAndGet() > capacity) {
+				evict();
+			}
+		}
+	}
+
+	/**
+	 * 按访问时间淘汰最旧的项直到剩下evictTo项，已有线程在淘汰时直接返回
+	 */
+	private void evict() {
+		if(!evictLock.tryLock()) {
+			return;
+		}
+		try {
+			if(size.get() <= capacity) {
+				return;
+			}
+			// 访问时间在排序期间可能被修改，先取快照
+			List<Object[]> snapshot = new ArrayList<Object[]>(size.get());
+			for(Map.Entry<K, Node<V>> entry : map.entrySet()) {
+				Node<V> node = entry.getValue();
+				snapshot.add(new Object[] {entry.getKey(), node, node.accessTime});
+			}
+			Collections.sort(snapshot, new Comparator<Object[]>() {
+				@Override
+				public int compare(Object[] a, Object[] b) {
+					long x = (Long) a[2];
+					long y = (Long) b[2];
+					return x < y ? -1 : (x == y ? 0 : 1);
+				}
+			});
+			for(Object[] item : snapshot) {
+				if(size.get() <= evictTo) {
+					break;
+				}
+				if(map.remove(item[0], item[1])) {
+					size.decrementAndGet();
+					evictionCount.incrementAndGet();
+				}
+			}
+		} finally {
+			evictLock.unlock();
+		}
+	}
+
+	public void clear() {
+		for(K key : map.keySet()) {
+			if(map.remove(key) != null) {
+				size.decrementAndGet();
+			}
+		}
+	}
+
+	public int size() {
+		return map.size();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	@Override
+	public String toString() {
+		return "size:" + size() + ",capacity:" + capacity + ",hit:" + hitCount.get()
+				+ ",miss:" + missCount.get() + ",eviction:" + evictionCount.get();
+	}
+
+}
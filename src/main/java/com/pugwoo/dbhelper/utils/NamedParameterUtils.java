@@ -1,6 +1,8 @@
 package com.pugwoo.dbhelper.utils;
 
+import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -14,6 +16,38 @@ import java.util.Set;
  */
 public class NamedParameterUtils {
 	
+	/**缓存trans的结果，key是原sql*/
+	private static final LRUCache<String, String> transCache = new LRUCache<String, String>(1024);
+	
+	/**缓存expandInList展开后的sql，key是原sql和每个参数展开后的个数*/
+	private static final LRUCache<String, String> expandCache = new LRUCache<String, String>(1024);
+	
+	/**缓存sql中每个?是否是in (?)的形式，key是原sql*/
+	private static final LRUCache<String, boolean[]> inListCache = new LRUCache<String, boolean[]>(1024);
+	
+	/**in (?)分桶的最大大小，超过时按它的倍数分桶*/
+	private static final int MAX_BUCKET_SIZE = 1024;
+	
+	/**
+	 * 参数中是否有需要展开的集合或数组(byte[]除外)，没有时可以直接用jdbcTemplate的?参数，不需要转换成:paramN
+	 * @param params
+	 * @return
+	 */
+	public static boolean isNeedNamedParam(Object... params) {
+		if(params == null) {
+			return false;
+		}
+		for(Object param : params) {
+			if(param instanceof Collection<?>) {
+				return true;
+			}
+			if(param != null && param.getClass().isArray() && !(param instanceof byte[])) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
 	public static Map<String, Object> transParam(Object... params) {
 		Map<String, Object> map = new HashMap<String, Object>();
 		if(params != null) {
@@ -87,6 +121,199 @@ public class NamedParameterUtils {
 		if(sql == null || sql.isEmpty()) {
 			return "";
 		}
+		String result = transCache.get(sql);
+		if(result == null) {
+			result = _trans(sql);
+			transCache.put(sql, result);
+		}
+		return result;
+	}
+	
+	/**
+	 * 获得trans的结果缓存，可用于查看命中、未命中、淘汰次数
+	 * @return
+	 */
+	public static LRUCache<String, String> getTransCache() {
+		return transCache;
+	}
+	
+	private static String _trans(String sql) {
+		return replaceQuestionMark(sql, null);
+	}
+	
+	/**
+	 * 把集合或数组参数展开成?,?,?，得到可以直接用jdbcTemplate执行的sql和平铺后的参数。<br>
+	 * 只有in (?)和not in (?)的集合会用最后一个值补齐到分桶大小(1,2,4,...,1024，超过1024按1024的倍数)，
+	 * 这样同一分桶的sql是一样的，可以复用数据库和驱动的PreparedStatement缓存，重复的值不影响in的结果。
+	 * 其它位置的集合(例如values (?))按原长度展开，不补齐。展开后的sql按展开的个数缓存。<br>
+	 * 空集合和transParam一样当作一个null值。
+	 * 
+	 * @param sql 使用?作为参数的sql
+	 * @param params
+	 * @return ?的个数和参数个数不一致时返回null
+	 */
+	public static ExpandedSQL expandInList(String sql, Object... params) {
+		if(sql == null || params == null) {
+			return null;
+		}
+		boolean[] inLists = getInListParams(sql);
+		if(inLists.length != params.length) {
+			return null;
+		}
+		int[] sizes = new int[params.length];
+		List<Object> args = new ArrayList<Object>();
+		StringBuilder key = new StringBuilder(sql.length() + params.length * 3);
+		key.append(sql);
+		for(int i = 0; i < params.length; i++) {
+			List<Object> values = toList(params[i]);
+			if(values == null) {
+				sizes[i] = 1;
+				args.add(params[i]);
+			} else if(values.isEmpty()) {
+				sizes[i] = 1;
+				args.add(null);
+			} else {
+				sizes[i] = inLists[i] ? getBucketSize(values.size()) : values.size();
+				args.addAll(values);
+				Object last = values.get(values.size() - 1);
+				for(int j = values.size(); j < sizes[i]; j++) {
+					args.add(last);
+				}
+			}
+			key.append('\0').append(sizes[i]);
+		}
+		
+		String cacheKey = key.toString();
+		String expandedSql = expandCache.get(cacheKey);
+		if(expandedSql == null) {
+			expandedSql = replaceQuestionMark(sql, sizes);
+			if(expandedSql == null) {
+				return null;
+			}
+			expandCache.put(cacheKey, expandedSql);
+		}
+		return new ExpandedSQL(expandedSql, args.toArray());
+	}
+	
+	/**
+	 * 获得expandInList的结果缓存，可用于查看命中、未命中、淘汰次数
+	 * @return
+	 */
+	public static LRUCache<String, String> getExpandCache() {
+		return expandCache;
+	}
+	
+	/**
+	 * 获得in (?)集合展开后的分桶大小
+	 * @param size 集合的长度
+	 * @return
+	 */
+	public static int getBucketSize(int size) {
+		if(size <= 1) {
+			return 1;
+		}
+		if(size > MAX_BUCKET_SIZE) {
+			return (size + MAX_BUCKET_SIZE - 1) / MAX_BUCKET_SIZE * MAX_BUCKET_SIZE;
+		}
+		int bucket = 1;
+		while(bucket < size) {
+			bucket <<= 1;
+		}
+		return bucket;
+	}
+	
+	/**
+	 * 集合或数组(byte[]除外)转换成List
+	 * @return 不是集合或数组时返回null
+	 */
+	private static List<Object> toList(Object param) {
+		if(param instanceof Collection<?>) {
+			return new ArrayList<Object>((Collection<?>) param);
+		}
+		if(param == null || !param.getClass().isArray() || param instanceof byte[]) {
+			return null;
+		}
+		int length = Array.getLength(param);
+		List<Object> list = new ArrayList<Object>(length);
+		for(int i = 0; i < length; i++) {
+			list.add(Array.get(param, i));
+		}
+		return list;
+	}
+	
+	/**
+	 * sql中每个?(不包括"?"和'?'中的?)是否是in (?)的形式，忽略大小写和空白
+	 */
+	private static boolean[] getInListParams(String sql) {
+		boolean[] result = inListCache.get(sql);
+		if(result != null) {
+			return result;
+		}
+		List<Boolean> inLists = new ArrayList<Boolean>();
+		boolean isInStr = false;
+		boolean isPreSlash = false;
+		char strQuota = 0;
+		for(int i = 0; i < sql.length(); i++) {
+			char ch = sql.charAt(i);
+			if(ch == '?' && !isInStr) {
+				inLists.add(isInList(sql, i));
+				continue;
+			}
+			if(ch == '\'' || ch == '"') {
+				if(!isInStr) {
+					isInStr = true;
+					strQuota = ch;
+				} else if(strQuota == ch && !isPreSlash) {
+					isInStr = false;
+					strQuota = 0;
+				}
+			}
+			isPreSlash = ch == '\\';
+		}
+		result = new boolean[inLists.size()];
+		for(int i = 0; i < result.length; i++) {
+			result[i] = inLists.get(i);
+		}
+		inListCache.put(sql, result);
+		return result;
+	}
+	
+	/**
+	 * 位于index的?前面是in (，后面是)
+	 */
+	private static boolean isInList(String sql, int index) {
+		int after = skipWhitespace(sql, index + 1, 1);
+		if(after >= sql.length() || sql.charAt(after) != ')') {
+			return false;
+		}
+		int before = skipWhitespace(sql, index - 1, -1);
+		if(before < 0 || sql.charAt(before) != '(') {
+			return false;
+		}
+		before = skipWhitespace(sql, before - 1, -1);
+		if(before < 1 || !sql.regionMatches(true, before - 1, "in", 0, 2)) {
+			return false;
+		}
+		return before < 2 || !isIdentifierChar(sql.charAt(before - 2));
+	}
+	
+	private static int skipWhitespace(String sql, int index, int step) {
+		while(index >= 0 && index < sql.length() && Character.isWhitespace(sql.charAt(index))) {
+			index += step;
+		}
+		return index;
+	}
+	
+	private static boolean isIdentifierChar(char ch) {
+		return Character.isLetterOrDigit(ch) || ch == '_' || ch == '`' || ch == '$';
+	}
+	
+	/**
+	 * 替换sql中的?，不包括"?"和'?'中的?
+	 * @param sizes 为null时替换成:paramN，N从1开始；否则第i个?替换成sizes[i]个逗号分隔的?
+	 * @return sizes不为null且和?的个数不一致时返回null
+	 */
+	private static String replaceQuestionMark(String sql, int[] sizes) {
 		StringBuilder sb = new StringBuilder();
 		boolean isInStr = false;
 		boolean isPreSlash = false;
@@ -96,7 +323,17 @@ public class NamedParameterUtils {
 			char ch = sql.charAt(i);
 			
 			if(ch == '?' && !isInStr) {
-				sb.append(":param").append(currParamIndex++);
+				if(sizes == null) {
+					sb.append(":param").append(currParamIndex++);
+				} else {
+					if(currParamIndex > sizes.length) {
+						return null;
+					}
+					int size = sizes[currParamIndex++ - 1];
+					for(int j = 0; j < size; j++) {
+						sb.append(j == 0 ? "?" : ",?");
+					}
+				}
 				continue;
 			} else {
 				sb.append(ch);
@@ -116,7 +353,31 @@ public class NamedParameterUtils {
 			
 			isPreSlash = ch == '\\';
 		}
+		if(sizes != null && currParamIndex - 1 != sizes.length) {
+			return null;
+		}
 		return sb.toString();
 	}
 	
+	/**
+	 * 展开in (?)后的sql和参数，可以直接用jdbcTemplate执行
+	 */
+	public static class ExpandedSQL {
+		private final String sql;
+		private final Object[] args;
+		
+		public ExpandedSQL(String sql, Object[] args) {
+			this.sql = sql;
+			this.args = args;
+		}
+		
+		public String getSql() {
+			return sql;
+		}
+		
+		public Object[] getArgs() {
+			return args;
+		}
+	}
+	
 }
@@ -2,11 +2,8 @@ package com.pugwoo.dbhelper.utils;
 
 import java.lang.reflect.Field;
 import java.util.Date;
-import java.util.List;
 import java.util.UUID;
 
-import com.pugwoo.dbhelper.annotation.Column;
-
 /**
  * 预处理对象
  * 
@@ -22,56 +19,70 @@ public class PreHandleObject {
 		if(t == null) {
 			return;
 		}
-		List<Field> fields = DOInfoReader.getColumns(t.getClass());
-		if(fields.isEmpty()) {
-			return;
-		}
+		DOInfoReader.getColumns(t.getClass()); // 没有@Column时抛异常
+		EntityMeta meta = DOInfoReader.getEntityMeta(t.getClass());
 		
-		for(Field field : fields) {
-			Column column = field.getAnnotation(Column.class);
-			
-			if(column.softDelete() != null && column.softDelete().length == 2
-					&& !column.softDelete()[0].trim().isEmpty()
-					&& !column.softDelete()[1].trim().isEmpty()) {
-				Object delete = DOInfoReader.getValue(field, t);
-				if(delete == null) {
-					DOInfoReader.setValue(field, t, column.softDelete()[0]);
-				}
+		Field softDelete = meta.getSoftDeleteField();
+		if(softDelete != null) {
+			Object delete = DOInfoReader.getValue(softDelete, t);
+			if(delete == null) {
+				DOInfoReader.setValue(softDelete, t, meta.getSoftDeleteNormalValue());
 			}
-			
-			if(column.setTimeWhenInsert() && Date.class.isAssignableFrom(field.getType())) {
-				if(DOInfoReader.getValue(field, t) == null) {
-					DOInfoReader.setValue(field, t, new Date());
-				}
+		}
+		
+		for(Field field : meta.getSetTimeWhenInsertColumns()) {
+			if(DOInfoReader.getValue(field, t) == null) {
+				DOInfoReader.setValue(field, t, new Date());
 			}
-			
-			if(column.insertDefault() != null && !column.insertDefault().isEmpty()) {
-				if(DOInfoReader.getValue(field, t) == null) {
-					DOInfoReader.setValue(field, t, column.insertDefault());
-				}
+		}
+		
+		for(Field field : meta.getInsertDefaultColumns()) {
+			if(DOInfoReader.getValue(field, t) == null) {
+				DOInfoReader.setValue(field, t, meta.getColumn(field).insertDefault());
 			}
-			
-			if(column.setRandomStringWhenInsert()) {
-				if(DOInfoReader.getValue(field, t) == null) {
-					DOInfoReader.setValue(field, t, 
-							UUID.randomUUID().toString().replace("-", "").substring(0, 32));
-				}
+		}
+		
+		for(Field field : meta.getRandomStringColumns()) {
+			if(DOInfoReader.getValue(field, t) == null) {
+				DOInfoReader.setValue(field, t, 
+						UUID.randomUUID().toString().replace("-", "").substring(0, 32));
 			}
 		}
 	}
 	
+	/**
+	 * 获得insert前预处理会给null字段填充的值，规则和preHandleInsert一致，但不修改对象
+	 * @param meta
+	 * @param field
+	 * @return 字段没有需要自动填充的注解时返回null
+	 */
+	public static Object getInsertFillValue(EntityMeta meta, Field field) {
+		Object value = null;
+		if(field.equals(meta.getSoftDeleteField())) {
+			value = meta.getSoftDeleteNormalValue();
+		} else if(meta.getSetTimeWhenInsertColumns().contains(field)) {
+			value = new Date();
+		} else if(meta.getInsertDefaultColumns().contains(field)) {
+			value = meta.getColumn(field).insertDefault();
+		} else if(meta.getRandomStringColumns().contains(field)) {
+			value = UUID.randomUUID().toString().replace("-", "").substring(0, 32);
+		}
+		return value == null ? null : TypeAutoCast.cast(value, field.getType());
+	}
+	
 	public static <T> void preHandleUpdate(T t) {
 		if(t == null) {
 			return;
 		}
 		
-		List<Field> notKeyFields = DOInfoReader.getNotKeyColumns(t.getClass());
+		DOInfoReader.getColumns(t.getClass()); // 没有@Column时抛异常
+		EntityMeta meta = DOInfoReader.getEntityMeta(t.getClass());
 		
-		for(Field field : notKeyFields) {
-			Column column = field.getAnnotation(Column.class);
-			if(column.setTimeWhenUpdate() && Date.class.isAssignableFrom(field.getType())) {
-				DOInfoReader.setValue(field, t, new Date());
+		for(Field field : meta.getSetTimeWhenUpdateColumns()) {
+			if(meta.getColumn(field).isKey()) {
+				continue; // key字段不更新
 			}
+			DOInfoReader.setValue(field, t, new Date());
 		}
 	}
 	
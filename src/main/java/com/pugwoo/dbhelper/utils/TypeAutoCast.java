@@ -57,7 +57,7 @@ public class TypeAutoCast {
 			return rs.getDate(columnName);
 		}
 		if (clazz == java.sql.Time.class) {
-			return rs.getDate(columnName);
+			return rs.getTime(columnName);
 		}
 		if (clazz == java.sql.Timestamp.class) {
 			return rs.getTimestamp(columnName);
@@ -66,6 +66,49 @@ public class TypeAutoCast {
 		return rs.getObject(columnName);
 	}
 	
+	/**
+	 * 自动转换类型。按列下标读取，每个单元格只读一次，null值通过wasNull判断。
+	 * 同样优先由rs来转换，即 fix数据库tinyint(1)到Java Integer类型的转换问题
+	 * @param rs
+	 * @param columnIndex 从1开始
+	 * @param clazz
+	 * @return
+	 */
+	public static Object cast(ResultSet rs, int columnIndex, Class<?> clazz) throws SQLException {
+		Object value;
+		if(clazz == Integer.class || clazz == int.class) {
+			value = rs.getInt(columnIndex);
+		} else if(clazz == Long.class || clazz == long.class) {
+			value = rs.getLong(columnIndex);
+		} else if(clazz == Byte.class || clazz == byte.class) {
+			value = rs.getByte(columnIndex);
+		} else if(clazz == byte[].class) {
+			value = rs.getBytes(columnIndex);
+		} else if(clazz == Short.class || clazz == short.class) {
+			value = rs.getShort(columnIndex);
+		} else if(clazz == Boolean.class || clazz == boolean.class) {
+			value = rs.getBoolean(columnIndex);
+		} else if(clazz == Float.class || clazz == float.class) {
+			value = rs.getFloat(columnIndex);
+		} else if(clazz == Double.class || clazz == double.class) {
+			value = rs.getDouble(columnIndex);
+		} else if(clazz == String.class) {
+			value = rs.getString(columnIndex);
+		} else if(clazz == BigDecimal.class) {
+			value = rs.getBigDecimal(columnIndex);
+		} else if (clazz == java.sql.Date.class) {
+			value = rs.getDate(columnIndex);
+		} else if (clazz == java.sql.Time.class) {
+			value = rs.getTime(columnIndex);
+		} else if (clazz == java.sql.Timestamp.class) {
+			value = rs.getTimestamp(columnIndex);
+		} else {
+			value = rs.getObject(columnIndex);
+		}
+		
+		return rs.wasNull() ? null : value; // 保证null会返回null值
+	}
+	
 	/**
 	 * 自动转换类型
 	 * @param obj 要转换的对象
@@ -1,28 +1,50 @@
 package com.pugwoo.dbhelper.test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.test.annotation.Rollback;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.pugwoo.dbhelper.DBHelper;
+import com.pugwoo.dbhelper.enums.CountStrategyEnum;
+import com.pugwoo.dbhelper.exception.InvalidParameterException;
+import com.pugwoo.dbhelper.impl.SpringJdbcDBHelper;
+import com.pugwoo.dbhelper.model.CloseableIterator;
 import com.pugwoo.dbhelper.model.PageData;
+import com.pugwoo.dbhelper.model.RowCallback;
+import com.pugwoo.dbhelper.model.SeekPageData;
+import com.pugwoo.dbhelper.model.UpsertResult;
 import com.pugwoo.dbhelper.test.entity.CourseDO;
 import com.pugwoo.dbhelper.test.entity.SchoolDO;
 import com.pugwoo.dbhelper.test.entity.StudentDO;
+import com.pugwoo.dbhelper.test.entity.StudentNumberDO;
+import com.pugwoo.dbhelper.test.entity.StudentPrimitiveDO;
 import com.pugwoo.dbhelper.test.entity.StudentTrueDeleteDO;
 import com.pugwoo.dbhelper.test.vo.StudentSchoolJoinVO;
 import com.pugwoo.dbhelper.test.vo.StudentVO;
+import com.pugwoo.dbhelper.utils.FastRowMapper;
 
 /**
  * 2015年1月13日 11:11:23
@@ -34,6 +56,23 @@ public class TestDBHelper {
 		
 	@Autowired
 	private DBHelper dbHelper;
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+	@Autowired
+	private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+	@Autowired
+	private ApplicationContext applicationContext;
+	
+	/**
+	 * 新建一个DBHelper，用于测试需要修改配置的场景，不影响其它测试使用的dbHelper
+	 */
+	private SpringJdbcDBHelper newDBHelper() {
+		SpringJdbcDBHelper helper = new SpringJdbcDBHelper();
+		helper.setJdbcTemplate(jdbcTemplate);
+		helper.setNamedParameterJdbcTemplate(namedParameterJdbcTemplate);
+		helper.setApplicationContext(applicationContext);
+		return helper;
+	}
 	
 	private String getRandomName(String prefix) {
 		return prefix + UUID.randomUUID().toString().replace("-", "").substring(0, 16);
@@ -47,6 +86,10 @@ public class TestDBHelper {
 		return studentDO;
 	}
 	
+	private StudentDO getStudent(Long id) {
+		return dbHelper.getByKey(StudentDO.class, id);
+	}
+	
 	private List<StudentDO> insertBatch(int num) {
 		List<StudentDO> list = new ArrayList<StudentDO>();
 		for(int i = 0; i < num; i++) {
@@ -138,6 +181,74 @@ public class TestDBHelper {
 		Assert.assertTrue("nick4".equals(db.getName()));
 	}
 	
+	@Test
+	public void testUpdateBatch() {
+		List<StudentDO> list = insertBatch(3);
+		StudentDO notExist = new StudentDO();
+		notExist.setId(list.get(2).getId() + 100000);
+		notExist.setName("notExist");
+		
+		List<StudentDO> updates = new ArrayList<StudentDO>();
+		updates.add(list.get(0));
+		updates.add(notExist);
+		updates.add(null);
+		updates.add(list.get(1));
+		updates.add(list.get(2));
+		list.get(0).setName("batch0");
+		list.get(1).setSchoolId(9L);
+		list.get(2).setName("batch2");
+		
+		// 每个对象各自的修改条数，不存在的为0
+		int[] counts = dbHelper.updateBatch(updates);
+		Assert.assertArrayEquals(new int[] {1, 0, 0, 1, 1}, counts);
+		Assert.assertEquals("batch0", getStudent(list.get(0).getId()).getName());
+		Assert.assertEquals(Long.valueOf(9), getStudent(list.get(1).getId()).getSchoolId());
+		Assert.assertEquals("batch2", getStudent(list.get(2).getId()).getName());
+		
+		list.get(0).setSchoolId(null);
+		counts = dbHelper.updateWithNullBatch(Arrays.asList(list.get(0)));
+		Assert.assertArrayEquals(new int[] {1}, counts);
+		Assert.assertNull(getStudent(list.get(0).getId()).getSchoolId());
+		
+		SpringJdbcDBHelper batchDBHelper = newDBHelper();
+		batchDBHelper.setUpdateBatchSize(2);
+		list.get(2).setName("batch3");
+		Assert.assertEquals(3, batchDBHelper.update(updates));
+		Assert.assertEquals("batch3", getStudent(list.get(2).getId()).getName());
+	}
+	
+	@Test
+	public void testUpdateBulkDuplicateKey() {
+		List<StudentDO> list = insertBatch(2);
+		
+		StudentDO a1 = new StudentDO();
+		a1.setId(list.get(0).getId());
+		a1.setName("bulk1");
+		a1.setSchoolId(5L);
+		StudentDO b = new StudentDO();
+		b.setId(list.get(1).getId());
+		b.setName("bulkB");
+		StudentDO a2 = new StudentDO();
+		a2.setId(list.get(0).getId());
+		a2.setName("bulk2");
+		
+		// 和逐个update的结果一致：每一列以最后一个非null的值为准，同一条记录只计一次
+		int rows = dbHelper.updateBulk(Arrays.asList(a1, b, a2));
+		Assert.assertEquals(2, rows);
+		StudentDO db = getStudent(a1.getId());
+		Assert.assertEquals("bulk2", db.getName());
+		Assert.assertEquals(Long.valueOf(5), db.getSchoolId());
+		Assert.assertEquals("bulkB", getStudent(b.getId()).getName());
+		
+		// 分到不同的sql中也一样
+		SpringJdbcDBHelper bulkDBHelper = newDBHelper();
+		bulkDBHelper.setUpdateBatchSize(1);
+		a1.setName("bulk3");
+		a2.setName("bulk4");
+		bulkDBHelper.updateBulk(Arrays.asList(a1, b, a2));
+		Assert.assertEquals("bulk4", getStudent(a1.getId()).getName());
+	}
+	
 	@Test
 	@Rollback(false)
 	public void testUpdateCustom() {
@@ -202,6 +313,103 @@ public class TestDBHelper {
 		dbHelper.insertOrUpdateFullWithNull(old, newlist);
 	}
 	
+	@Test
+	public void testUpsert() {
+		List<StudentDO> old = insertBatch(2);
+		Date createTime = getStudent(old.get(0).getId()).getCreateTime();
+		Long maxId = jdbcTemplate.queryForObject("select max(id) from t_student", Long.class);
+		
+		StudentDO update = new StudentDO();
+		update.setId(old.get(0).getId());
+		update.setName(getRandomName("upsert"));
+		StudentDO insertWithKey = new StudentDO();
+		insertWithKey.setId(maxId + 10000);
+		insertWithKey.setName(getRandomName("upsert"));
+		StudentDO insertNoKey = new StudentDO();
+		insertNoKey.setName(getRandomName("upsert"));
+		
+		UpsertResult result = dbHelper.upsert(Arrays.asList(update, insertWithKey, null, insertNoKey));
+		Assert.assertEquals(2, result.getInserted());
+		Assert.assertEquals(1, result.getUpdated());
+		Assert.assertEquals(4, result.getAffectedRows()); // 插入计1，更新计2
+		
+		StudentDO db = getStudent(update.getId());
+		Assert.assertEquals(update.getName(), db.getName());
+		Assert.assertEquals(createTime, db.getCreateTime()); // 插入时才填充的列不更新
+		db = getStudent(insertWithKey.getId());
+		Assert.assertEquals(insertWithKey.getName(), db.getName());
+		Assert.assertNotNull(db.getCreateTime());
+		Assert.assertEquals(Integer.valueOf(0), db.getAge());
+		Assert.assertNotNull(insertNoKey.getId());
+		Assert.assertEquals(insertNoKey.getName(), getStudent(insertNoKey.getId()).getName());
+		
+		// 有主键的对象不回写insert时自动填充的值
+		Assert.assertNull(update.getCreateTime());
+		Assert.assertNull(update.getAge());
+		Assert.assertNull(update.getDeleted());
+		Assert.assertNull(insertWithKey.getCreateTime());
+		Assert.assertNull(insertWithKey.getAge());
+		
+		// null值不更新，upsertWithNull更新
+		update.setName(null);
+		update.setSchoolId(3L);
+		dbHelper.upsert(Arrays.asList(update));
+		db = getStudent(update.getId());
+		Assert.assertNotNull(db.getName());
+		Assert.assertEquals(Long.valueOf(3), db.getSchoolId());
+		
+		update.setName("upsertWithNull");
+		update.setSchoolId(null);
+		dbHelper.upsertWithNull(Arrays.asList(update));
+		db = getStudent(update.getId());
+		Assert.assertEquals("upsertWithNull", db.getName());
+		Assert.assertNull(db.getSchoolId());
+		Assert.assertEquals(createTime, db.getCreateTime());
+	}
+	
+	@Test
+	public void testUpsertSoftDeleted() {
+		StudentDO studentDO = insertOne();
+		String name = studentDO.getName();
+		dbHelper.deleteByKey(studentDO);
+		
+		// 已软删除的记录冲突时不更新，也不恢复
+		StudentDO update = new StudentDO();
+		update.setId(studentDO.getId());
+		update.setName(getRandomName("deleted"));
+		dbHelper.upsert(Arrays.asList(update));
+		
+		Assert.assertNull(getStudent(studentDO.getId()));
+		Long count = jdbcTemplate.queryForObject(
+				"select count(*) from t_student where id=? and name=? and deleted=1",
+				Long.class, studentDO.getId(), name);
+		Assert.assertEquals(Long.valueOf(1), count);
+	}
+	
+	@Test
+	public void testInsertOrUpdateList() {
+		// 设置了upsertBatchSize也不影响insertOrUpdate(List)：有主键的对象只update，不存在的不会插入
+		SpringJdbcDBHelper upsertDBHelper = newDBHelper();
+		upsertDBHelper.setUpsertBatchSize(100);
+		
+		StudentDO studentDO = insertOne();
+		Long maxId = jdbcTemplate.queryForObject("select max(id) from t_student", Long.class);
+		StudentDO update = new StudentDO();
+		update.setId(studentDO.getId());
+		update.setName(getRandomName("insertOrUpdate"));
+		StudentDO notExist = new StudentDO();
+		notExist.setId(maxId + 10000);
+		notExist.setName("notExist");
+		StudentDO insert = new StudentDO();
+		insert.setName(getRandomName("insertOrUpdate"));
+		
+		int rows = upsertDBHelper.insertOrUpdate(Arrays.asList(update, notExist, insert));
+		Assert.assertEquals(2, rows);
+		Assert.assertEquals(update.getName(), getStudent(update.getId()).getName());
+		Assert.assertNull(getStudent(notExist.getId()));
+		Assert.assertNotNull(insert.getId());
+	}
+	
 	// ============ INSERT_UPDATE TEST END ===============
 	
 	// ============ DELETE TEST START ====================
@@ -219,6 +427,24 @@ public class TestDBHelper {
 		Assert.assertTrue(dbHelper.getByKey(StudentDO.class, studentDO.getId()) == null);
 	}
 	
+	@Test
+	public void testDeleteByKeyList() {
+		List<Long> ids = new ArrayList<Long>();
+		for(int i = 0; i < 3; i++) {
+			ids.add(insertOne().getId());
+		}
+		int rows = dbHelper.deleteByKeyList(StudentDO.class, ids);
+		Assert.assertTrue(rows == 3);
+		Assert.assertTrue(dbHelper.getByKeyList(StudentDO.class, ids).isEmpty());
+
+		List<StudentDO> list = new ArrayList<StudentDO>();
+		list.add(insertOne());
+		list.add(insertOne());
+		rows = dbHelper.deleteByKey(list);
+		Assert.assertTrue(rows == 2);
+		Assert.assertTrue(dbHelper.getByKey(StudentDO.class, list.get(0).getId()) == null);
+	}
+
 	// 测试写where条件的自定义删除
 	@Test
 	public void testDeleteWhere() {
@@ -241,6 +467,153 @@ public class TestDBHelper {
 		System.out.println(map);
 	}
 	
+	@Test
+	public void testGetPageAfter() {
+		insertBatch(5);
+		List<StudentDO> all = dbHelper.getAll(StudentDO.class, "order by id");
+		
+		List<StudentDO> seekAll = new ArrayList<StudentDO>();
+		Object lastKey = null;
+		while(true) {
+			SeekPageData<StudentDO> page = dbHelper.getPageAfter(StudentDO.class, lastKey, 2);
+			seekAll.addAll(page.getData());
+			if(!page.isHasMore()) {
+				break;
+			}
+			lastKey = page.getLastKey();
+		}
+		Assert.assertTrue(seekAll.size() == all.size());
+		Assert.assertTrue(seekAll.get(seekAll.size() - 1).getId().equals(all.get(all.size() - 1).getId()));
+		
+		SeekPageData<StudentDO> page = dbHelper.getPageAfter(StudentDO.class, all.get(0).getId(), 1,
+				"where name like ?", "nick%");
+		Assert.assertTrue(page.getData().size() == 1);
+		Assert.assertTrue(page.getData().get(0).getId() > all.get(0).getId());
+	}
+	
+	@Test
+	public void testGetEstimatedCount() {
+		insertBatch(5);
+		Assert.assertTrue(dbHelper.getEstimatedCount(StudentDO.class) >= 0);
+		Assert.assertTrue(dbHelper.getEstimatedCount(StudentDO.class, "where name like ?", "nick%") >= 0);
+		
+		int total = dbHelper.getCount(StudentDO.class);
+		PageData<StudentDO> page = dbHelper.getPageWithEstimatedCount(StudentDO.class, 1, total + 10);
+		Assert.assertTrue(page.getTotal() == total); // 最后一页总数是精确的
+		Assert.assertFalse(page.isEstimated());
+		
+		page = dbHelper.getPageWithEstimatedCount(StudentDO.class, 1, 1, "where name like ?", "nick%");
+		Assert.assertTrue(page.getData().size() == 1);
+		Assert.assertTrue(page.getTotal() >= 1);
+	}
+	
+	@Test
+	public void testForEach() {
+		insertOne();
+		final List<StudentDO> all = dbHelper.getAll(StudentDO.class);
+		final int[] count = new int[1];
+		int rows = dbHelper.forEach(StudentDO.class, new RowCallback<StudentDO>() {
+			@Override
+			public void handle(StudentDO t) {
+				count[0]++;
+			}
+		}, null);
+		Assert.assertTrue(rows == all.size());
+		Assert.assertTrue(count[0] == all.size());
+		
+		CloseableIterator<StudentDO> it = dbHelper.getAllIterator(StudentDO.class, "where id=?",
+				all.get(0).getId());
+		try {
+			Assert.assertTrue(it.hasNext());
+			Assert.assertTrue(it.next().getId().equals(all.get(0).getId()));
+			Assert.assertFalse(it.hasNext());
+		} finally {
+			it.close();
+		}
+	}
+	
+	@Test
+	public void testForEachRelatedColumnInTransaction() {
+		SchoolDO schoolDO = new SchoolDO();
+		schoolDO.setName(getRandomName("school"));
+		dbHelper.insert(schoolDO);
+		StudentDO studentDO = insertOne();
+		studentDO.setSchoolId(schoolDO.getId());
+		dbHelper.update(studentDO);
+		
+		RowCallback<StudentVO> callback = new RowCallback<StudentVO>() {
+			@Override
+			public void handle(StudentVO t) {
+			}
+		};
+		// 事务中逐行读取时，关联查询不能使用同一个连接
+		try {
+			dbHelper.forEach(StudentVO.class, callback, "where id=?", studentDO.getId());
+			Assert.fail();
+		} catch (InvalidParameterException e) {
+			// expected
+		}
+		try {
+			dbHelper.getAllIterator(StudentVO.class, null);
+			Assert.fail();
+		} catch (InvalidParameterException e) {
+			// expected
+		}
+		// join的两边都没有@RelatedColumn，可以逐行读取
+		Assert.assertEquals(1, dbHelper.forEach(StudentSchoolJoinVO.class, new RowCallback<StudentSchoolJoinVO>() {
+			@Override
+			public void handle(StudentSchoolJoinVO t) {
+			}
+		}, "where t1.id=?", studentDO.getId()));
+		
+		// fetchSize为正数时不是逐行读取，事务中也可以处理@RelatedColumn
+		SpringJdbcDBHelper fetchDBHelper = newDBHelper();
+		fetchDBHelper.setStreamFetchSize(1000);
+		CloseableIterator<StudentVO> it = fetchDBHelper.getAllIterator(StudentVO.class, "where id=?",
+				studentDO.getId());
+		try {
+			Assert.assertTrue(it.hasNext());
+			Assert.assertEquals(schoolDO.getName(), it.next().getSchoolDO().getName());
+			Assert.assertFalse(it.hasNext());
+		} finally {
+			it.close();
+		}
+	}
+	
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED) // 不在事务中时，关联查询用另外的连接
+	public void testForEachRelatedColumn() {
+		SchoolDO schoolDO = new SchoolDO();
+		schoolDO.setName(getRandomName("school"));
+		dbHelper.insert(schoolDO);
+		List<StudentDO> students = new ArrayList<StudentDO>();
+		for(int i = 0; i < 3; i++) {
+			StudentDO studentDO = new StudentDO();
+			studentDO.setName(getRandomName("stream"));
+			studentDO.setSchoolId(i == 1 ? null : schoolDO.getId());
+			students.add(studentDO);
+		}
+		dbHelper.insert(students);
+		
+		try {
+			final List<StudentVO> result = new ArrayList<StudentVO>();
+			int rows = dbHelper.forEach(StudentVO.class, new RowCallback<StudentVO>() {
+				@Override
+				public void handle(StudentVO t) {
+					result.add(t);
+				}
+			}, "where id in (?) order by id", Arrays.asList(students.get(0).getId(),
+					students.get(1).getId(), students.get(2).getId()));
+			Assert.assertEquals(3, rows);
+			Assert.assertEquals(schoolDO.getName(), result.get(0).getSchoolDO().getName());
+			Assert.assertNull(result.get(1).getSchoolDO());
+			Assert.assertEquals(schoolDO.getName(), result.get(2).getSchoolDO().getName());
+		} finally {
+			dbHelper.deleteByKey(students);
+			dbHelper.deleteByKey(schoolDO);
+		}
+	}
+	
 	@Test
 	public void testGetByArray() {
 		// 但是这种写法不稳定的，推荐传入List参数值
@@ -282,6 +655,57 @@ public class TestDBHelper {
 		Assert.assertTrue(total > 0);
 	}
 		
+	@Test
+	public void testFastRowMapper() {
+		SpringJdbcDBHelper fastDBHelper = newDBHelper();
+		fastDBHelper.setFastRowMapper(true);
+		
+		// 普通DO，和AnnotationSupportRowMapper的结果一致
+		StudentDO studentDO = insertOne();
+		StudentDO fast = fastDBHelper.getByKey(StudentDO.class, studentDO.getId());
+		StudentDO normal = dbHelper.getByKey(StudentDO.class, studentDO.getId());
+		Assert.assertTrue(FastRowMapper.isSupported(StudentDO.class));
+		Assert.assertEquals(normal.getId(), fast.getId());
+		Assert.assertEquals(normal.getName(), fast.getName());
+		Assert.assertEquals(normal.getAge(), fast.getAge());
+		Assert.assertEquals(normal.getDeleted(), fast.getDeleted());
+		Assert.assertEquals(normal.getCreateTime(), fast.getCreateTime());
+		Assert.assertNull(fast.getSchoolId());
+		Assert.assertTrue(Arrays.equals(normal.getIntro(), fast.getIntro()));
+		
+		// join VO，右表没有关联数据时整个对象是null
+		List<StudentSchoolJoinVO> vos = fastDBHelper.getAll(StudentSchoolJoinVO.class,
+				"where t1.id=?", studentDO.getId());
+		Assert.assertTrue(vos.size() == 1);
+		Assert.assertEquals(studentDO.getId(), vos.get(0).getStudentDO().getId());
+		Assert.assertNull(vos.get(0).getSchoolDO());
+		
+		SchoolDO schoolDO = new SchoolDO();
+		schoolDO.setName("sysu");
+		dbHelper.insert(schoolDO);
+		studentDO.setSchoolId(schoolDO.getId());
+		dbHelper.update(studentDO);
+		vos = fastDBHelper.getAll(StudentSchoolJoinVO.class, "where t1.id=?", studentDO.getId());
+		Assert.assertTrue(vos.size() == 1);
+		Assert.assertEquals(schoolDO.getId(), vos.get(0).getSchoolDO().getId());
+		Assert.assertEquals("sysu", vos.get(0).getSchoolDO().getName());
+		
+		// 基础类型字段，数据库null时是0
+		StudentDO studentDO2 = insertOne();
+		StudentPrimitiveDO primitiveDO = fastDBHelper.getByKey(StudentPrimitiveDO.class, studentDO2.getId());
+		Assert.assertTrue(FastRowMapper.isSupported(StudentPrimitiveDO.class));
+		Assert.assertEquals(studentDO2.getName(), primitiveDO.getName());
+		Assert.assertTrue(primitiveDO.getSchoolId() == 0);
+		primitiveDO = fastDBHelper.getByKey(StudentPrimitiveDO.class, studentDO.getId());
+		Assert.assertTrue(primitiveDO.getSchoolId() == schoolDO.getId());
+		
+		// 不支持的字段类型，退回AnnotationSupportRowMapper
+		Assert.assertFalse(FastRowMapper.isSupported(StudentNumberDO.class));
+		StudentNumberDO numberDO = fastDBHelper.getByKey(StudentNumberDO.class, studentDO.getId());
+		Assert.assertEquals(studentDO.getName(), numberDO.getName());
+		Assert.assertTrue(numberDO.getSchoolId().longValue() == schoolDO.getId());
+	}
+	
 	@Test
 	public void testGetList() {
 		// 测试获取全部
@@ -336,6 +760,175 @@ public class TestDBHelper {
 		Assert.assertTrue(total >= 100);
 	}
 	
+	@Test
+	public void testCountStrategy() {
+		List<StudentDO> list = insertBatch(5);
+		String prefix = getRandomName("count");
+		for(StudentDO studentDO : list) {
+			studentDO.setName(prefix + studentDO.getName());
+		}
+		dbHelper.update(list);
+		
+		SpringJdbcDBHelper countDBHelper = newDBHelper();
+		for(CountStrategyEnum countStrategy : CountStrategyEnum.values()) {
+			countDBHelper.setCountStrategy(countStrategy);
+			String name = countStrategy.getCode();
+			
+			PageData<StudentDO> page = countDBHelper.getPage(StudentDO.class, 1, 2,
+					"where name like ?", prefix + "%");
+			Assert.assertEquals(name, 5, page.getTotal());
+			Assert.assertEquals(name, 2, page.getData().size());
+			Assert.assertEquals(name, 5, countDBHelper.getCount(StudentDO.class, "where name like ?", prefix + "%"));
+			
+			// 超出最后一页时仍有总数
+			page = countDBHelper.getPage(StudentDO.class, 4, 2, "where name like ?", prefix + "%");
+			Assert.assertEquals(name, 5, page.getTotal());
+			Assert.assertTrue(name, page.getData().isEmpty());
+			
+			// order by中有参数
+			page = countDBHelper.getPage(StudentDO.class, 1, 2, "where name like ? order by field(id,?) desc",
+					prefix + "%", list.get(3).getId());
+			Assert.assertEquals(name, 5, page.getTotal());
+			Assert.assertEquals(name, list.get(3).getId(), page.getData().get(0).getId());
+			Assert.assertEquals(name, 5, countDBHelper.getCount(StudentDO.class,
+					"where name like ? order by field(id,?)", prefix + "%", list.get(3).getId()));
+			
+			// group by/having，COUNT_OVER改用count查询
+			page = countDBHelper.getPage(StudentDO.class, 1, 2, "where name like ? group by id having id<>?",
+					prefix + "%", list.get(0).getId());
+			Assert.assertEquals(name, 4, page.getTotal());
+			Assert.assertEquals(name, 2, page.getData().size());
+		}
+	}
+	
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED) // 事务中不会并行执行count查询
+	public void testCountExecutor() {
+		ThreadPoolExecutor countExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>());
+		try {
+			SpringJdbcDBHelper countDBHelper = newDBHelper();
+			countDBHelper.setCountExecutor(countExecutor);
+			
+			int total = jdbcTemplate.queryForObject(
+					"select count(*) from t_student where deleted=0 and name like ?", Integer.class, "nick%");
+			PageData<StudentDO> page = countDBHelper.getPage(StudentDO.class, 1, 10, "where name like ?", "nick%");
+			Assert.assertEquals(total, page.getTotal());
+			Assert.assertEquals(Math.min(total, 10), page.getData().size());
+			Assert.assertEquals(1, countExecutor.getTaskCount());
+			
+			// 不计算总数时不提交count查询
+			countDBHelper.getPageWithoutCount(StudentDO.class, 1, 10, "where name like ?", "nick%");
+			Assert.assertEquals(1, countExecutor.getTaskCount());
+		} finally {
+			countExecutor.shutdown();
+		}
+	}
+	
+	@Test
+	public void testCountExecutorInTransaction() {
+		insertBatch(3);
+		ThreadPoolExecutor countExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>());
+		try {
+			SpringJdbcDBHelper countDBHelper = newDBHelper();
+			countDBHelper.setCountExecutor(countExecutor);
+			
+			// 事务中未提交的数据要算进总数，所以不用另外的连接
+			int total = dbHelper.getCount(StudentDO.class, "where name like ?", "nick%");
+			PageData<StudentDO> page = countDBHelper.getPage(StudentDO.class, 1, 1, "where name like ?", "nick%");
+			Assert.assertEquals(total, page.getTotal());
+			Assert.assertEquals(0, countExecutor.getTaskCount());
+		} finally {
+			countExecutor.shutdown();
+		}
+	}
+	
+	/**
+	 * 不经过DBHelper直接插入一条记录，DBHelper缓存的总数不会失效
+	 */
+	private void rawInsertStudent(String name) {
+		jdbcTemplate.update("insert into t_student(deleted,name) values(0,?)", name);
+	}
+	
+	@Test
+	public void testCountCache() {
+		SpringJdbcDBHelper cacheDBHelper = newDBHelper();
+		cacheDBHelper.setCountCacheTtl(60000);
+		String prefix = getRandomName("cache");
+		String where = "where name like ?";
+		String arg = prefix + "%";
+		
+		StudentDO student = new StudentDO();
+		student.setName(prefix);
+		cacheDBHelper.insert(student);
+		Assert.assertEquals(1, cacheDBHelper.getCount(StudentDO.class, where, arg));
+		
+		// 有效期内命中缓存，getPage和getCount共用
+		rawInsertStudent(prefix + "1");
+		Assert.assertEquals(1, cacheDBHelper.getCount(StudentDO.class, where, arg));
+		Assert.assertEquals(1, cacheDBHelper.getPage(StudentDO.class, 1, 10, where, arg).getTotal());
+		Assert.assertEquals(2, dbHelper.getCount(StudentDO.class, where, arg)); // 其它DBHelper没有缓存
+		
+		// 写入其它表不失效
+		SchoolDO schoolDO = new SchoolDO();
+		schoolDO.setName(prefix);
+		cacheDBHelper.insert(schoolDO);
+		Assert.assertEquals(1, cacheDBHelper.getCount(StudentDO.class, where, arg));
+		
+		// 插入、更新、删除同一个表后失效，写入的记录other不在查询条件中
+		StudentDO other = new StudentDO();
+		other.setName(getRandomName("other"));
+		cacheDBHelper.insert(other);
+		Assert.assertEquals(2, cacheDBHelper.getCount(StudentDO.class, where, arg));
+		
+		rawInsertStudent(prefix + "2");
+		other.setAge(1);
+		cacheDBHelper.update(other);
+		Assert.assertEquals(3, cacheDBHelper.getCount(StudentDO.class, where, arg));
+		
+		rawInsertStudent(prefix + "3");
+		other.setAge(2);
+		cacheDBHelper.updateBulk(Arrays.asList(other));
+		Assert.assertEquals(4, cacheDBHelper.getPage(StudentDO.class, 1, 10, where, arg).getTotal());
+		
+		rawInsertStudent(prefix + "4");
+		other.setAge(3);
+		cacheDBHelper.upsert(Arrays.asList(other));
+		Assert.assertEquals(5, cacheDBHelper.getCount(StudentDO.class, where, arg));
+		
+		// 通过映射同一个表的其它类写入也失效
+		rawInsertStudent(prefix + "5");
+		cacheDBHelper.updateAll(StudentTrueDeleteDO.class, "name=name", "where id=?", other.getId());
+		Assert.assertEquals(6, cacheDBHelper.getCount(StudentDO.class, where, arg));
+		
+		rawInsertStudent(prefix + "6");
+		cacheDBHelper.deleteByKey(other);
+		Assert.assertEquals(7, cacheDBHelper.getCount(StudentDO.class, where, arg));
+		
+		// join的两个表任意一个写入都失效
+		Assert.assertEquals(7, cacheDBHelper.getCount(StudentSchoolJoinVO.class, "where t1.name like ?", arg));
+		rawInsertStudent(prefix + "7");
+		Assert.assertEquals(7, cacheDBHelper.getCount(StudentSchoolJoinVO.class, "where t1.name like ?", arg));
+		cacheDBHelper.deleteByKey(schoolDO);
+		Assert.assertEquals(8, cacheDBHelper.getCount(StudentSchoolJoinVO.class, "where t1.name like ?", arg));
+	}
+	
+	@Test
+	public void testCountCacheExpire() throws Exception {
+		SpringJdbcDBHelper cacheDBHelper = newDBHelper();
+		cacheDBHelper.setCountCacheTtl(50);
+		String prefix = getRandomName("expire");
+		
+		rawInsertStudent(prefix);
+		Assert.assertEquals(1, cacheDBHelper.getCount(StudentDO.class, "where name like ?", prefix + "%"));
+		rawInsertStudent(prefix + "1");
+		Assert.assertEquals(1, cacheDBHelper.getCount(StudentDO.class, "where name like ?", prefix + "%"));
+		
+		Thread.sleep(100);
+		Assert.assertEquals(2, cacheDBHelper.getCount(StudentDO.class, "where name like ?", prefix + "%"));
+	}
+	
 	@Test
 	public void testRelatedColumn() {
 		
@@ -441,6 +1034,13 @@ public class TestDBHelper {
 		for(int i = 0; i < 3; i++) {
 			Assert.assertTrue(map.get(ids.get(i)).getId().equals(ids.get(i)));
 		}
+		
+		// 重复和null的key
+		ids.add(ids.get(0));
+		ids.add(null);
+		map = dbHelper.getByKeyList(StudentDO.class, ids);
+		Assert.assertTrue(map.size() == 3);
+		Assert.assertTrue(map.keySet().iterator().next().equals(ids.get(0)));
 	}
 	
 	@Test
@@ -453,6 +1053,16 @@ public class TestDBHelper {
 		
 		Assert.assertFalse(dbHelper.isExistAtLeast(2, StudentDO.class,
 				"where id=?", studentDO.getId()));
+		
+		StudentDO studentDO2 = insertOne();
+		Assert.assertTrue(dbHelper.isExistAtLeast(2, StudentDO.class,
+				"where id in (?)", Arrays.asList(studentDO.getId(), studentDO2.getId())));
+		
+		dbHelper.deleteByKey(studentDO2);
+		Set<Long> keys = dbHelper.existsByKeys(StudentDO.class,
+				Arrays.asList(studentDO.getId(), studentDO2.getId(), -1L));
+		Assert.assertTrue(keys.size() == 1);
+		Assert.assertTrue(keys.contains(studentDO.getId()));
 	}
 	
 	@Test
@@ -479,6 +1089,159 @@ public class TestDBHelper {
 		System.out.println("affected rows:" + row);
 	}
 	
+	@Test
+	public void testInsertBatch() {
+		SpringJdbcDBHelper batchDBHelper = newDBHelper();
+		batchDBHelper.setInsertBatchSize(2);
+		
+		Long maxId = jdbcTemplate.queryForObject("select max(id) from t_student", Long.class);
+		long presetId = (maxId == null ? 0 : maxId) + 10000;
+		
+		// 自增id、指定id、有schoolId和没有schoolId的对象交错，sql变化时和每2条都分批
+		List<StudentDO> list = new ArrayList<StudentDO>();
+		for(int i = 0; i < 7; i++) {
+			StudentDO studentDO = new StudentDO();
+			studentDO.setName(getRandomName("batch"));
+			if(i % 3 == 1) {
+				studentDO.setId(presetId + i);
+			}
+			if(i % 2 == 0) {
+				studentDO.setSchoolId((long) i);
+			}
+			list.add(studentDO);
+		}
+		
+		int rows = batchDBHelper.insert(list);
+		Assert.assertEquals(7, rows);
+		
+		Set<Long> ids = new HashSet<Long>();
+		for(int i = 0; i < list.size(); i++) {
+			StudentDO studentDO = list.get(i);
+			Assert.assertNotNull(studentDO.getId());
+			if(i % 3 == 1) {
+				Assert.assertEquals(Long.valueOf(presetId + i), studentDO.getId());
+			}
+			Assert.assertTrue(ids.add(studentDO.getId()));
+			
+			StudentDO db = dbHelper.getByKey(StudentDO.class, studentDO.getId());
+			Assert.assertEquals(studentDO.getName(), db.getName());
+			Assert.assertEquals(i % 2 == 0 ? Long.valueOf(i) : null, db.getSchoolId());
+		}
+		
+		// 按list的顺序插入，自增id也按list的顺序递增
+		Long lastId = null;
+		for(int i = 0; i < list.size(); i++) {
+			if(i % 3 != 1) {
+				Long id = list.get(i).getId();
+				Assert.assertTrue(lastId == null || id > lastId);
+				lastId = id;
+			}
+		}
+	}
+	
+	@Test
+	public void testInsertIdBackfill() {
+		// 多行insert生成的id按顺序回设到对应的对象
+		List<StudentDO> list = new ArrayList<StudentDO>();
+		for(int i = 0; i < 5; i++) {
+			StudentDO studentDO = new StudentDO();
+			studentDO.setName(getRandomName("inOneSQL"));
+			list.add(studentDO);
+		}
+		int rows = dbHelper.insertWithNullInOneSQL(list);
+		Assert.assertEquals(5, rows);
+		assertIdBackfilled(list);
+		for(int i = 1; i < list.size(); i++) {
+			Assert.assertTrue(list.get(i).getId() > list.get(i - 1).getId());
+		}
+		
+		// insertWhereNotExist插入时回设id，没有插入时id不变
+		StudentDO studentDO = new StudentDO();
+		studentDO.setName(getRandomName("notExist"));
+		rows = dbHelper.insertWhereNotExist(studentDO, "name=?", studentDO.getName());
+		Assert.assertEquals(1, rows);
+		assertIdBackfilled(Arrays.asList(studentDO));
+		
+		StudentDO another = new StudentDO();
+		another.setName(studentDO.getName());
+		rows = dbHelper.insertWhereNotExist(another, "name=?", another.getName());
+		Assert.assertEquals(0, rows);
+		Assert.assertNull(another.getId());
+	}
+	
+	@Test
+	public void testInsertWithNullInOneSQLChunks() {
+		// 按估算大小拆成多条sql
+		SpringJdbcDBHelper chunkDBHelper = newDBHelper();
+		chunkDBHelper.setInsertOneSQLMaxBytes(500);
+		List<StudentDO> list = new ArrayList<StudentDO>();
+		for(int i = 0; i < 7; i++) {
+			StudentDO studentDO = new StudentDO();
+			studentDO.setName(getRandomName("chunk"));
+			list.add(studentDO);
+		}
+		Assert.assertEquals(7, chunkDBHelper.insertWithNullInOneSQL(list));
+		assertIdBackfilled(list);
+		
+		// 按占位符个数拆成多条sql：每条sql最多65535/列数行
+		chunkDBHelper.setInsertOneSQLMaxBytes(Long.MAX_VALUE);
+		int maxRows = 65535 / 8; // StudentDO有8个插入列
+		list = new ArrayList<StudentDO>();
+		for(int i = 0; i < maxRows + 2; i++) {
+			StudentDO studentDO = new StudentDO();
+			studentDO.setName(getRandomName("chunk"));
+			list.add(studentDO);
+		}
+		Assert.assertEquals(maxRows + 2, chunkDBHelper.insertWithNullInOneSQL(list));
+		assertIdBackfilled(Arrays.asList(list.get(0), list.get(maxRows - 1),
+				list.get(maxRows), list.get(maxRows + 1)));
+		for(int i = 1; i < list.size(); i++) {
+			Assert.assertTrue(list.get(i).getId() > list.get(i - 1).getId());
+		}
+	}
+	
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED) // 不在事务中时，拆成的多条sql自己开启事务
+	public void testInsertWithNullInOneSQLAtomic() {
+		SpringJdbcDBHelper chunkDBHelper = newDBHelper();
+		chunkDBHelper.setInsertOneSQLMaxBytes(500);
+		Long maxId = jdbcTemplate.queryForObject("select max(id) from t_student", Long.class);
+		long presetId = (maxId == null ? 0 : maxId) + 10000;
+		
+		// 最后两条主键重复，前面的sql已执行，最后一条sql失败
+		String prefix = getRandomName("atomic");
+		List<StudentDO> list = new ArrayList<StudentDO>();
+		for(int i = 0; i < 8; i++) {
+			StudentDO studentDO = new StudentDO();
+			studentDO.setName(prefix + i);
+			if(i >= 6) {
+				studentDO.setId(presetId);
+			}
+			list.add(studentDO);
+		}
+		try {
+			chunkDBHelper.insertWithNullInOneSQL(list);
+			Assert.fail();
+		} catch (DataAccessException e) {
+			// expected
+		}
+		Assert.assertEquals(Integer.valueOf(0), jdbcTemplate.queryForObject(
+				"select count(*) from t_student where name like ?", Integer.class, prefix + "%"));
+	}
+	
+	/**
+	 * 每个对象都有不重复的id，且按id查出的是同一条记录
+	 */
+	private void assertIdBackfilled(List<StudentDO> list) {
+		Set<Long> ids = new HashSet<Long>();
+		for(StudentDO studentDO : list) {
+			Assert.assertNotNull(studentDO.getId());
+			Assert.assertTrue(ids.add(studentDO.getId()));
+			StudentDO db = dbHelper.getByKey(StudentDO.class, studentDO.getId());
+			Assert.assertEquals(studentDO.getName(), db.getName());
+		}
+	}
+	
 	@Test
 	@Rollback(false)
 	public void testInsertWhereNotExists() {
@@ -0,0 +1,193 @@
+package com.pugwoo.dbhelper.test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.jdbc.core.RowMapper;
+
+import com.pugwoo.dbhelper.test.entity.StudentDO;
+import com.pugwoo.dbhelper.test.entity.StudentNumberDO;
+import com.pugwoo.dbhelper.test.entity.StudentPrimitiveDO;
+import com.pugwoo.dbhelper.test.vo.StudentSchoolJoinVO;
+import com.pugwoo.dbhelper.utils.AnnotationSupportRowMapper;
+import com.pugwoo.dbhelper.utils.DOInfoReader;
+import com.pugwoo.dbhelper.utils.FastRowMapper;
+
+/**
+ * FastRowMapper和AnnotationSupportRowMapper映射结果的对比测试，使用模拟的ResultSet，不需要数据库。
+ */
+public class TestFastRowMapper {
+
+	private static final Timestamp NOW = new Timestamp(System.currentTimeMillis());
+
+	@Test
+	public void testDO() throws Exception {
+		ResultSet rs = mockResultSet(
+				new String[] {"id", "deleted", "create_time", "update_time", "name", "age", "intro", "school_id"},
+				new Object[] {3, 0, NOW, null, "nick", 18, "hi".getBytes(), null});
+		StudentDO fast = assertSameAsAnnotation(StudentDO.class, rs);
+		Assert.assertEquals(Long.valueOf(3), fast.getId());
+		Assert.assertEquals(Boolean.FALSE, fast.getDeleted());
+		Assert.assertEquals(NOW, fast.getCreateTime());
+		Assert.assertNull(fast.getUpdateTime());
+		Assert.assertEquals(Integer.valueOf(18), fast.getAge());
+		Assert.assertTrue(Arrays.equals("hi".getBytes(), fast.getIntro()));
+		Assert.assertNull(fast.getSchoolId());
+	}
+
+	@Test
+	public void testJoinVOWithNullSide() throws Exception {
+		ResultSet rs = mockResultSet(
+				new String[] {"t1.id", "t1.deleted", "t1.create_time", "t1.update_time", "t1.name",
+						"t1.age", "t1.intro", "t1.school_id",
+						"t2.id", "t2.deleted", "t2.create_time", "t2.update_time", "t2.name"},
+				new Object[] {3, 0, NOW, NOW, "nick", 18, null, null,
+						null, null, null, null, null});
+		StudentSchoolJoinVO fast = assertSameAsAnnotation(StudentSchoolJoinVO.class, rs);
+		Assert.assertEquals("nick", fast.getStudentDO().getName());
+		Assert.assertNull(fast.getSchoolDO());
+
+		rs = mockResultSet(
+				new String[] {"t1.id", "t1.deleted", "t1.create_time", "t1.update_time", "t1.name",
+						"t1.age", "t1.intro", "t1.school_id",
+						"t2.id", "t2.deleted", "t2.create_time", "t2.update_time", "t2.name"},
+				new Object[] {3, 0, NOW, NOW, "nick", 18, null, 5,
+						5, 0, NOW, NOW, "sysu"});
+		fast = assertSameAsAnnotation(StudentSchoolJoinVO.class, rs);
+		Assert.assertEquals("sysu", fast.getSchoolDO().getName());
+	}
+
+	@Test
+	public void testPrimitiveNull() throws Exception {
+		ResultSet rs = mockResultSet(new String[] {"id", "name", "age", "school_id"},
+				new Object[] {3, null, null, null});
+		StudentPrimitiveDO fast = assertSameAsAnnotation(StudentPrimitiveDO.class, rs);
+		Assert.assertEquals(0, fast.getAge());
+		Assert.assertEquals(0L, fast.getSchoolId());
+
+		rs = mockResultSet(new String[] {"id", "name", "age", "school_id"},
+				new Object[] {3, "nick", 18, 5L});
+		fast = assertSameAsAnnotation(StudentPrimitiveDO.class, rs);
+		Assert.assertEquals(18, fast.getAge());
+		Assert.assertEquals(5L, fast.getSchoolId());
+	}
+
+	@Test
+	public void testFallback() throws Exception {
+		Assert.assertFalse(FastRowMapper.isSupported(StudentNumberDO.class));
+		Assert.assertTrue(FastRowMapper.create(StudentNumberDO.class) instanceof AnnotationSupportRowMapper);
+
+		ResultSet rs = mockResultSet(new String[] {"id", "name", "school_id"},
+				new Object[] {3, "nick", 5});
+		StudentNumberDO fast = assertSameAsAnnotation(StudentNumberDO.class, rs);
+		Assert.assertEquals(5, fast.getSchoolId().intValue());
+	}
+
+	/**
+	 * 分别用FastRowMapper和AnnotationSupportRowMapper映射rs的第一行，断言所有字段相同
+	 * @return FastRowMapper映射的结果
+	 */
+	private static <T> T assertSameAsAnnotation(Class<T> clazz, ResultSet rs) throws Exception {
+		RowMapper<T> fastRowMapper = FastRowMapper.create(clazz);
+		T fast = fastRowMapper.mapRow(rs, 0);
+		T normal = new AnnotationSupportRowMapper<T>(clazz).mapRow(rs, 0);
+		Assert.assertNotNull(fast);
+		Assert.assertNotNull(normal);
+
+		if(DOInfoReader.getEntityMeta(clazz).isJoinVO()) {
+			Field left = DOInfoReader.getJoinLeftTable(clazz);
+			Field right = DOInfoReader.getJoinRightTable(clazz);
+			assertSameColumns(DOInfoReader.getValue(left, normal), DOInfoReader.getValue(left, fast));
+			assertSameColumns(DOInfoReader.getValue(right, normal), DOInfoReader.getValue(right, fast));
+		} else {
+			assertSameColumns(normal, fast);
+		}
+		return fast;
+	}
+
+	private static void assertSameColumns(Object expected, Object actual) {
+		if(expected == null || actual == null) {
+			Assert.assertTrue(expected == null && actual == null);
+			return;
+		}
+		for(Field field : DOInfoReader.getColumns(expected.getClass())) {
+			Object e = DOInfoReader.getValue(field, expected);
+			Object a = DOInfoReader.getValue(field, actual);
+			if(e instanceof byte[] && a instanceof byte[]) {
+				Assert.assertTrue(field.getName(), Arrays.equals((byte[]) e, (byte[]) a));
+			} else {
+				Assert.assertEquals(field.getName(), e, a);
+			}
+		}
+	}
+
+	/**
+	 * 只有一行数据的ResultSet，按jdbc的约定做数字类型转换，null读成基础类型时返回0并设置wasNull
+	 */
+	private static ResultSet mockResultSet(final String[] labels, final Object[] row) {
+		final List<String> labelList = new ArrayList<String>(Arrays.asList(labels));
+		final boolean[] wasNull = new boolean[1];
+		return (ResultSet) Proxy.newProxyInstance(TestFastRowMapper.class.getClassLoader(),
+				new Class<?>[] {ResultSet.class}, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if(name.equals("findColumn")) {
+					int index = labelList.indexOf(args[0]);
+					if(index < 0) {
+						throw new SQLException("column not found:" + args[0]);
+					}
+					return index + 1;
+				}
+				if(name.equals("wasNull")) {
+					return wasNull[0];
+				}
+				if(name.equals("hashCode")) {
+					return System.identityHashCode(proxy);
+				}
+				if(name.equals("equals")) {
+					return proxy == args[0];
+				}
+				if(!name.startsWith("get") || args == null || args.length != 1) {
+					throw new UnsupportedOperationException(name);
+				}
+				Object value = args[0] instanceof String ? row[labelList.indexOf(args[0])]
+						: row[(Integer) args[0] - 1];
+				wasNull[0] = value == null;
+				Class<?> type = method.getReturnType();
+				if(value == null) {
+					if(type == boolean.class) return false;
+					if(type.isPrimitive()) return convert(0, type);
+					return null;
+				}
+				return convert(value, type);
+			}
+		});
+	}
+
+	private static Object convert(Object value, Class<?> type) {
+		if(value instanceof Number) {
+			Number n = (Number) value;
+			if(type == int.class) return n.intValue();
+			if(type == long.class) return n.longValue();
+			if(type == short.class) return n.shortValue();
+			if(type == byte.class) return n.byteValue();
+			if(type == float.class) return n.floatValue();
+			if(type == double.class) return n.doubleValue();
+			if(type == boolean.class) return n.intValue() != 0;
+			if(type == String.class) return n.toString();
+		}
+		return value;
+	}
+
+}
@@ -0,0 +1,91 @@
+package com.pugwoo.dbhelper.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.pugwoo.dbhelper.utils.NamedParameterUtils;
+import com.pugwoo.dbhelper.utils.NamedParameterUtils.ExpandedSQL;
+
+/**
+ * NamedParameterUtils.expandInList的测试，不需要数据库。
+ */
+public class TestNamedParameterUtils {
+
+	@Test
+	public void testInListPadding() {
+		ExpandedSQL expanded = NamedParameterUtils.expandInList(
+				"select * from t where id in (?) and name not in( ? ) and a=?",
+				Arrays.asList(1, 2, 3), new String[] {"x"}, 5);
+		Assert.assertEquals("select * from t where id in (?,?,?,?) and name not in( ? ) and a=?",
+				expanded.getSql());
+		Assert.assertEquals(Arrays.<Object>asList(1, 2, 3, 3, "x", 5), Arrays.asList(expanded.getArgs()));
+
+		expanded = NamedParameterUtils.expandInList("select * from t where id IN\n(?)",
+				new ArrayList<Integer>());
+		Assert.assertEquals("select * from t where id IN\n(?)", expanded.getSql());
+		Assert.assertEquals(Arrays.<Object>asList((Object) null), Arrays.asList(expanded.getArgs()));
+	}
+
+	@Test
+	public void testNotInListNoPadding() {
+		// 不是in (?)的集合按原长度展开，不能补齐
+		ExpandedSQL expanded = NamedParameterUtils.expandInList(
+				"insert into t(a,b,c) values(?)", Arrays.asList(1, 2, 3));
+		Assert.assertEquals("insert into t(a,b,c) values(?,?,?)", expanded.getSql());
+		Assert.assertEquals(Arrays.<Object>asList(1, 2, 3), Arrays.asList(expanded.getArgs()));
+
+		expanded = NamedParameterUtils.expandInList(
+				"select * from t where a = ? or b = min(?) or c = join_in(?)",
+				Arrays.asList(1, 2, 3), Arrays.asList(1, 2, 3), Arrays.asList(1, 2, 3));
+		Assert.assertEquals("select * from t where a = ?,?,? or b = min(?,?,?) or c = join_in(?,?,?)",
+				expanded.getSql());
+		Assert.assertEquals(9, expanded.getArgs().length);
+
+		// 字符串中的in (?)不算
+		expanded = NamedParameterUtils.expandInList(
+				"select * from t where name = 'in (?)' and id in (?)", Arrays.asList(1, 2, 3));
+		Assert.assertEquals("select * from t where name = 'in (?)' and id in (?,?,?,?)", expanded.getSql());
+	}
+
+	@Test
+	public void testParamCountMismatch() {
+		Assert.assertNull(NamedParameterUtils.expandInList("select * from t where id in (?)", 1, 2));
+		Assert.assertNull(NamedParameterUtils.expandInList("select * from t where a=? and b=?", 1));
+	}
+
+	@Test
+	public void testCacheKey() {
+		String sql = "select * from t where id in (?) and a=? and b in (?)";
+		List<Integer> three = Arrays.asList(1, 2, 3);
+		List<Integer> four = Arrays.asList(1, 2, 3, 4);
+		List<Integer> five = Arrays.asList(1, 2, 3, 4, 5);
+
+		String sql1 = NamedParameterUtils.expandInList(sql, three, 1, three).getSql();
+		long hit = NamedParameterUtils.getExpandCache().getHitCount();
+		// 同一分桶的sql一样，而且命中缓存
+		String sql2 = NamedParameterUtils.expandInList(sql, four, 2, three).getSql();
+		Assert.assertSame(sql1, sql2);
+		Assert.assertEquals(hit + 1, NamedParameterUtils.getExpandCache().getHitCount());
+
+		// 任意一个参数换了分桶，sql不一样
+		String sql3 = NamedParameterUtils.expandInList(sql, five, 2, three).getSql();
+		String sql4 = NamedParameterUtils.expandInList(sql, four, 2, five).getSql();
+		Assert.assertEquals("select * from t where id in (?,?,?,?,?,?,?,?) and a=? and b in (?,?,?,?)", sql3);
+		Assert.assertEquals("select * from t where id in (?,?,?,?) and a=? and b in (?,?,?,?,?,?,?,?)", sql4);
+
+		// 不是in (?)的集合按长度区分缓存
+		String valuesSql = "insert into t(a,b,c) values(?)";
+		Assert.assertEquals("insert into t(a,b,c) values(?,?)",
+				NamedParameterUtils.expandInList(valuesSql, Arrays.asList(1, 2)).getSql());
+		Assert.assertEquals("insert into t(a,b,c) values(?,?,?)",
+				NamedParameterUtils.expandInList(valuesSql, three).getSql());
+
+		Assert.assertEquals(1024, NamedParameterUtils.getBucketSize(1000));
+		Assert.assertEquals(2048, NamedParameterUtils.getBucketSize(1025));
+	}
+
+}
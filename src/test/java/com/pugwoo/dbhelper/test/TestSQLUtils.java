@@ -1,12 +1,175 @@
 package com.pugwoo.dbhelper.test;
 
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.pugwoo.dbhelper.exception.InvalidParameterException;
+import com.pugwoo.dbhelper.exception.NullKeyValueException;
 import com.pugwoo.dbhelper.sql.SQLUtils;
 import com.pugwoo.dbhelper.test.entity.StudentDO;
+import com.pugwoo.dbhelper.test.entity.StudentTrueDeleteDO;
+import com.pugwoo.dbhelper.utils.DOInfoReader;
+import com.pugwoo.dbhelper.utils.LRUCache;
 
 public class TestSQLUtils {
 
 	public static void main(String[] args) {
 		System.out.println(SQLUtils.getSelectSQL(StudentDO.class, true));
 	}
-	
+
+	@Test
+	public void testGetKeysWhereSQL() {
+		StudentDO studentDO = new StudentDO();
+		studentDO.setId(3L);
+
+		List<Object> keyValues = new ArrayList<Object>();
+		String where = SQLUtils.getKeysWhereSQL(studentDO, keyValues);
+		Assert.assertEquals(SQLUtils.getKeysWhereSQL(StudentDO.class), where);
+		Assert.assertEquals(Arrays.<Object>asList(3L), keyValues);
+
+		// keyValues可以为null
+		Assert.assertEquals(where, SQLUtils.getKeysWhereSQL(studentDO, null));
+	}
+
+	@Test
+	public void testGetKeysWhereSQLNullKey() {
+		StudentDO studentDO = new StudentDO();
+		List<Object> keyValues = new ArrayList<Object>();
+		try {
+			SQLUtils.getKeysWhereSQL(studentDO, keyValues);
+			Assert.fail();
+		} catch (NullKeyValueException e) {
+			Assert.assertTrue(keyValues.isEmpty());
+		}
+		try {
+			SQLUtils.getKeysWhereSQL(studentDO, null);
+			Assert.fail();
+		} catch (NullKeyValueException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testGetUpdateBulkSQLDuplicateKey() {
+		StudentDO a1 = new StudentDO();
+		a1.setId(1L);
+		a1.setName("a1");
+		a1.setAge(10);
+		StudentDO b = new StudentDO();
+		b.setId(2L);
+		b.setName("b");
+		StudentDO a2 = new StudentDO();
+		a2.setId(1L);
+		a2.setName("a2");
+		
+		// 和逐个update一样：name取最后的a2，age取最后一个非null的10，where中主键不重复
+		List<Object> values = new ArrayList<Object>();
+		String sql = SQLUtils.getUpdateBulkSQL(Arrays.asList(a1, b, a2), values);
+		Assert.assertEquals("UPDATE `t_student` SET `name`=CASE WHEN `id`=? THEN ? WHEN `id`=? THEN ? ELSE `name` END,"
+				+ "`age`=CASE WHEN `id`=? THEN ? ELSE `age` END WHERE `deleted`=0 AND (`id` IN (?,?))", sql);
+		Assert.assertEquals(Arrays.<Object>asList(2L, "b", 1L, "a2", 1L, 10, 1L, 2L), values);
+	}
+
+	@Test
+	public void testGetInsertOnDuplicateKeyUpdateSQL() {
+		List<Field> insertFields = DOInfoReader.getEntityMeta(StudentDO.class).getKeyColumns();
+		List<Field> updateFields = new ArrayList<Field>();
+		for(Field field : DOInfoReader.getNotKeyColumns(StudentDO.class)) {
+			if(field.getName().equals("name")) {
+				updateFields.add(field);
+			}
+		}
+		List<Object[]> rows = Arrays.asList(new Object[] {1L}, new Object[] {2L});
+		
+		// 有软删除字段时，已软删除的记录不更新
+		List<Object> values = new ArrayList<Object>();
+		String sql = SQLUtils.getInsertOnDuplicateKeyUpdateSQL(StudentDO.class, rows, insertFields,
+				updateFields, values);
+		Assert.assertEquals("INSERT INTO `t_student` (`id`) VALUES (?),(?) ON DUPLICATE KEY UPDATE "
+				+ "`name`=IF(`deleted`=0,VALUES(`name`),`name`)", sql);
+		Assert.assertEquals(Arrays.<Object>asList(1L, 2L), values);
+		
+		values = new ArrayList<Object>();
+		sql = SQLUtils.getInsertOnDuplicateKeyUpdateSQL(StudentDO.class, rows, insertFields,
+				new ArrayList<Field>(), values);
+		Assert.assertEquals("INSERT INTO `t_student` (`id`) VALUES (?),(?) ON DUPLICATE KEY UPDATE `id`=`id`", sql);
+	}
+
+	@Test
+	public void testGetCountSQLOrderByParam() {
+		// order by没有参数时去掉
+		String sql = SQLUtils.getCountSQL(StudentDO.class, "where name like ? order by name");
+		Assert.assertFalse(sql.toLowerCase().contains("order by"));
+		
+		// order by有?参数时保留，否则调用者传入的参数对不上
+		sql = SQLUtils.getCountSQL(StudentDO.class, "where name like ? order by field(id,?)");
+		Assert.assertTrue(sql.toLowerCase().contains("order by field(id, ?)"));
+		Assert.assertEquals(2, sql.length() - sql.replace("?", "").length());
+		
+		sql = SQLUtils.getExistSQL(StudentDO.class, "where name like ? order by field(id,?)", 1);
+		Assert.assertEquals(2, sql.length() - sql.replace("?", "").length());
+	}
+
+	@Test
+	public void testIsCountOverSupported() {
+		Assert.assertTrue(SQLUtils.isCountOverSupported(StudentDO.class, null));
+		Assert.assertTrue(SQLUtils.isCountOverSupported(StudentDO.class, "where name like ? order by id"));
+		Assert.assertFalse(SQLUtils.isCountOverSupported(StudentDO.class, "where name like ? group by school_id"));
+		Assert.assertFalse(SQLUtils.isCountOverSupported(StudentDO.class,
+				"group by school_id having count(*) > ?"));
+		// 无法解析的也不支持(软删除的类无法解析时直接抛异常，这里用没有软删除的类)
+		Assert.assertFalse(SQLUtils.isCountOverSupported(StudentTrueDeleteDO.class, "where not a valid sql ((("));
+	}
+
+	@Test
+	public void testSoftDeletedCache() {
+		String where = "where name=? and age>" + System.nanoTime();
+		LRUCache<?, String> cache = SQLUtils.getSoftDeletedCache();
+		long hit = cache.getHitCount();
+		long miss = cache.getMissCount();
+		
+		String sql = SQLUtils.autoSetSoftDeleted(where, StudentDO.class);
+		Assert.assertEquals(miss + 1, cache.getMissCount());
+		Assert.assertEquals(hit, cache.getHitCount());
+		
+		Assert.assertSame(sql, SQLUtils.autoSetSoftDeleted(where, StudentDO.class));
+		Assert.assertEquals(miss + 1, cache.getMissCount());
+		Assert.assertEquals(hit + 1, cache.getHitCount());
+		
+		// 没有软删除的类不需要解析，不使用缓存
+		SQLUtils.autoSetSoftDeleted(where, StudentTrueDeleteDO.class);
+		Assert.assertEquals(miss + 1, cache.getMissCount());
+		Assert.assertEquals(hit + 1, cache.getHitCount());
+	}
+
+	@Test
+	public void testGetSeekPostSQLTailClause() {
+		String[] invalids = {"where name=? order by name", "where name=? limit 10", "order by name",
+				"where name=? group by school_id", "group by school_id having count(*)>1",
+				"where name=? for update", "where name=? /* x */ order by name"};
+		for(String postSql : invalids) {
+			try {
+				SQLUtils.getSeekPostSQL(StudentDO.class, Arrays.<Object>asList(3L), postSql, new ArrayList<Object>());
+				Assert.fail(postSql);
+			} catch (InvalidParameterException e) {
+				// expected
+			}
+		}
+		
+		// 字符串和子查询中的关键字不算
+		String[] valids = {null, "", "where name='order by'",
+				"where school_id in (select id from t_school order by id limit 10)"};
+		for(String postSql : valids) {
+			List<Object> values = new ArrayList<Object>();
+			String sql = SQLUtils.getSeekPostSQL(StudentDO.class, Arrays.<Object>asList(3L), postSql, values);
+			Assert.assertTrue(sql, sql.endsWith(" ORDER BY `id`"));
+			Assert.assertEquals(Arrays.<Object>asList(3L), values);
+		}
+	}
+
 }
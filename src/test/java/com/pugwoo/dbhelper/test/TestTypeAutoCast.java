@@ -0,0 +1,182 @@
+package com.pugwoo.dbhelper.test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.pugwoo.dbhelper.test.entity.StudentPrimitiveDO;
+import com.pugwoo.dbhelper.test.vo.StudentSchoolJoinVO;
+import com.pugwoo.dbhelper.utils.AnnotationSupportRowMapper;
+import com.pugwoo.dbhelper.utils.TypeAutoCast;
+
+/**
+ * TypeAutoCast按列下标读取ResultSet的测试，使用模拟的ResultSet，不需要数据库。
+ */
+public class TestTypeAutoCast {
+
+	private static final long NOW = System.currentTimeMillis();
+
+	@Test
+	public void testCastByIndex() throws Exception {
+		Object[] row = {3, 4L, true, "nick", new BigDecimal("1.5"), new java.sql.Date(NOW),
+				new Time(NOW), new Timestamp(NOW), "hi".getBytes()};
+		Class<?>[] types = {Integer.class, long.class, Boolean.class, String.class, BigDecimal.class,
+				java.sql.Date.class, Time.class, Timestamp.class, byte[].class};
+		String[] getters = {"getInt", "getLong", "getBoolean", "getString", "getBigDecimal",
+				"getDate", "getTime", "getTimestamp", "getBytes"};
+		MockResultSet mock = new MockResultSet(null, row);
+		for(int i = 0; i < row.length; i++) {
+			mock.calls.clear();
+			Object value = TypeAutoCast.cast(mock.rs, i + 1, types[i]);
+			if(value instanceof byte[]) {
+				Assert.assertTrue(Arrays.equals((byte[]) row[i], (byte[]) value));
+			} else {
+				Assert.assertEquals(row[i], value);
+			}
+			// 每个单元格只读一次，用对应类型的getter
+			Assert.assertEquals(Arrays.asList(getters[i], "wasNull"), mock.calls);
+		}
+	}
+
+	@Test
+	public void testCastTime() throws Exception {
+		Time time = new Time(NOW);
+		MockResultSet mock = new MockResultSet(new String[] {"t"}, new Object[] {time});
+		Assert.assertEquals(time, TypeAutoCast.cast(mock.rs, 1, Time.class));
+		Assert.assertTrue(mock.calls.contains("getTime"));
+		Assert.assertFalse(mock.calls.contains("getDate"));
+
+		mock.calls.clear();
+		Assert.assertEquals(time, TypeAutoCast.cast(mock.rs, "t", Time.class));
+		Assert.assertTrue(mock.calls.contains("getTime"));
+		Assert.assertFalse(mock.calls.contains("getDate"));
+	}
+
+	@Test
+	public void testCastByIndexNull() throws Exception {
+		// 基础类型的getter对null返回0/false，要通过wasNull返回null
+		Class<?>[] types = {Integer.class, int.class, long.class, boolean.class, double.class,
+				String.class, Time.class, byte[].class, Object.class};
+		MockResultSet mock = new MockResultSet(null, new Object[types.length]);
+		for(int i = 0; i < types.length; i++) {
+			Assert.assertNull(types[i].getName(), TypeAutoCast.cast(mock.rs, i + 1, types[i]));
+		}
+	}
+
+	@Test
+	public void testRowMapperJoinLabels() throws Exception {
+		// 列的顺序和select的不一样，按t1./t2.别名找到列下标
+		String[] labels = {"t2.name", "t2.id", "t1.name", "t1.id", "t1.age", "t1.school_id",
+				"t1.deleted", "t1.create_time", "t1.update_time", "t1.intro",
+				"t2.deleted", "t2.create_time", "t2.update_time"};
+		MockResultSet mock = new MockResultSet(labels, new Object[] {"sysu", 5L, "nick", 3L, 18, 5L,
+				false, null, null, null, false, null, null});
+		StudentSchoolJoinVO vo = new AnnotationSupportRowMapper<StudentSchoolJoinVO>(
+				StudentSchoolJoinVO.class).mapRow(mock.rs, 0);
+		Assert.assertEquals("nick", vo.getStudentDO().getName());
+		Assert.assertEquals(Long.valueOf(3), vo.getStudentDO().getId());
+		Assert.assertEquals(Integer.valueOf(18), vo.getStudentDO().getAge());
+		Assert.assertEquals("sysu", vo.getSchoolDO().getName());
+		Assert.assertEquals(Long.valueOf(5), vo.getSchoolDO().getId());
+
+		// 右表全是null时对象为null
+		mock = new MockResultSet(labels, new Object[] {null, null, "nick", 3L, 18, null,
+				false, null, null, null, null, null, null});
+		vo = new AnnotationSupportRowMapper<StudentSchoolJoinVO>(StudentSchoolJoinVO.class).mapRow(mock.rs, 0);
+		Assert.assertEquals("nick", vo.getStudentDO().getName());
+		Assert.assertNull(vo.getStudentDO().getSchoolId());
+		Assert.assertNull(vo.getSchoolDO());
+	}
+
+	@Test
+	public void testRowMapperPrimitive() throws Exception {
+		MockResultSet mock = new MockResultSet(new String[] {"school_id", "age", "name", "id"},
+				new Object[] {null, null, null, 3L});
+		StudentPrimitiveDO studentDO = new AnnotationSupportRowMapper<StudentPrimitiveDO>(
+				StudentPrimitiveDO.class).mapRow(mock.rs, 0);
+		Assert.assertEquals(0, studentDO.getAge());
+		Assert.assertEquals(0L, studentDO.getSchoolId());
+		Assert.assertNull(studentDO.getName());
+
+		mock = new MockResultSet(new String[] {"school_id", "age", "name", "id"},
+				new Object[] {7L, 18, "nick", 3L});
+		studentDO = new AnnotationSupportRowMapper<StudentPrimitiveDO>(StudentPrimitiveDO.class).mapRow(mock.rs, 0);
+		Assert.assertEquals(18, studentDO.getAge());
+		Assert.assertEquals(7L, studentDO.getSchoolId());
+		Assert.assertEquals("nick", studentDO.getName());
+	}
+
+	/**
+	 * 只有一行数据的ResultSet，记录调用的方法，null读成基础类型时返回0并设置wasNull
+	 */
+	private static class MockResultSet {
+		private final List<String> calls = new ArrayList<String>();
+		private final ResultSet rs;
+
+		MockResultSet(String[] labels, final Object[] row) {
+			final List<String> labelList = labels == null ? new ArrayList<String>()
+					: Arrays.asList(labels);
+			final boolean[] wasNull = new boolean[1];
+			rs = (ResultSet) Proxy.newProxyInstance(TestTypeAutoCast.class.getClassLoader(),
+					new Class<?>[] {ResultSet.class}, new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+					String name = method.getName();
+					if(name.equals("hashCode")) {
+						return System.identityHashCode(proxy);
+					}
+					if(name.equals("equals")) {
+						return proxy == args[0];
+					}
+					calls.add(name);
+					if(name.equals("findColumn")) {
+						int index = labelList.indexOf(args[0]);
+						if(index < 0) {
+							throw new SQLException("column not found:" + args[0]);
+						}
+						return index + 1;
+					}
+					if(name.equals("wasNull")) {
+						return wasNull[0];
+					}
+					if(!name.startsWith("get") || args == null || args.length != 1) {
+						throw new UnsupportedOperationException(name);
+					}
+					Object value = args[0] instanceof String ? row[labelList.indexOf(args[0])]
+							: row[(Integer) args[0] - 1];
+					wasNull[0] = value == null;
+					Class<?> type = method.getReturnType();
+					if(value == null) {
+						if(type == boolean.class) return false;
+						if(type.isPrimitive()) return convert(0, type);
+						return null;
+					}
+					return convert(value, type);
+				}
+			});
+		}
+	}
+
+	private static Object convert(Object value, Class<?> type) {
+		if(value instanceof Number) {
+			Number n = (Number) value;
+			if(type == int.class) return n.intValue();
+			if(type == long.class) return n.longValue();
+			if(type == double.class) return n.doubleValue();
+			if(type == boolean.class) return n.intValue() != 0;
+		}
+		return value;
+	}
+
+}
@@ -0,0 +1,91 @@
+package com.pugwoo.dbhelper.test;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.pugwoo.dbhelper.impl.SpringJdbcDBHelper;
+import com.pugwoo.dbhelper.test.entity.StudentDO;
+
+/**
+ * updateBatch每行修改条数的测试，使用模拟的JdbcTemplate，不需要数据库。
+ */
+public class TestUpdateBatch {
+
+	/**
+	 * 模拟的batchUpdate：最后一个参数(主键)为负数的行修改0条，其它行返回result
+	 */
+	private static class MockJdbcTemplate extends JdbcTemplate {
+		private final int result;
+		private final List<String> sqls = new ArrayList<String>();
+
+		MockJdbcTemplate(int result) {
+			this.result = result;
+		}
+
+		@Override
+		public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+			sqls.add(sql);
+			int[] counts = new int[batchArgs.size()];
+			for(int i = 0; i < counts.length; i++) {
+				Object[] args = batchArgs.get(i);
+				counts[i] = ((Long) args[args.length - 1]) < 0 ? 0 : result;
+			}
+			return counts;
+		}
+	}
+
+	private static SpringJdbcDBHelper newDBHelper(MockJdbcTemplate jdbcTemplate, int updateBatchSize) {
+		SpringJdbcDBHelper dbHelper = new SpringJdbcDBHelper();
+		dbHelper.setJdbcTemplate(jdbcTemplate);
+		dbHelper.setUpdateBatchSize(updateBatchSize);
+		return dbHelper;
+	}
+
+	private static StudentDO newStudent(long id, String name, Long schoolId) {
+		StudentDO studentDO = new StudentDO();
+		studentDO.setId(id);
+		studentDO.setName(name);
+		studentDO.setSchoolId(schoolId);
+		return studentDO;
+	}
+
+	/**
+	 * 不同的列分成不同的组，也分成不同的批，结果仍要按list的顺序返回
+	 */
+	private static List<StudentDO> newList() {
+		return Arrays.asList(newStudent(1, "a", null), newStudent(-2, "b", 3L), null,
+				newStudent(4, "c", null), newStudent(-5, "d", null), newStudent(6, "e", 7L));
+	}
+
+	@Test
+	public void testPerRowCounts() {
+		MockJdbcTemplate jdbcTemplate = new MockJdbcTemplate(1);
+		int[] counts = newDBHelper(jdbcTemplate, 2).updateBatch(newList());
+		Assert.assertArrayEquals(new int[] {1, 0, 0, 1, 0, 1}, counts);
+		Assert.assertEquals(3, jdbcTemplate.sqls.size()); // 3条的组分2批，2条的组1批
+
+		// 没有设置updateBatchSize时也可以使用
+		counts = newDBHelper(new MockJdbcTemplate(1), 0).updateBatch(newList());
+		Assert.assertArrayEquals(new int[] {1, 0, 0, 1, 0, 1}, counts);
+	}
+
+	@Test
+	public void testSuccessNoInfo() {
+		// 驱动没有返回行数时原样返回，update(List)的总数不计入
+		SpringJdbcDBHelper dbHelper = newDBHelper(new MockJdbcTemplate(Statement.SUCCESS_NO_INFO), 2);
+		int[] counts = dbHelper.updateBatch(newList());
+		Assert.assertArrayEquals(new int[] {Statement.SUCCESS_NO_INFO, 0, 0,
+				Statement.SUCCESS_NO_INFO, 0, Statement.SUCCESS_NO_INFO}, counts);
+		Assert.assertEquals(0, dbHelper.update(newList()));
+
+		dbHelper = newDBHelper(new MockJdbcTemplate(1), 2);
+		Assert.assertEquals(3, dbHelper.update(newList()));
+	}
+
+}
@@ -0,0 +1,132 @@
+package com.pugwoo.dbhelper.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.pugwoo.dbhelper.sql.SQLUtils;
+import com.pugwoo.dbhelper.sql.WhereSQLRewriter;
+
+import net.sf.jsqlparser.JSQLParserException;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.Parenthesis;
+import net.sf.jsqlparser.expression.operators.conditional.AndExpression;
+import net.sf.jsqlparser.expression.operators.conditional.OrExpression;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.Select;
+
+/**
+ * WhereSQLRewriter和SQLUtils.insertWhereAndExpressionByParser改写结果的对比测试，不需要数据库。<br>
+ * 两者格式不同(扫描器总是给原条件加括号)，所以都用jsqlparser重新解析，去掉AND中多余的括号后比较。
+ */
+public class TestWhereSQLRewriter {
+
+	private static final String SELECT_SQL = "select * from dual ";
+
+	private static final String[] WHERE_SQLS = {
+		"WHERE a=1",
+		"where a=1 or b=2",
+		"where a=1 or b=2 order by id limit 3",
+		"where a = ? and b in (?) group by name having count(*) > 1",
+		"where (a=1 or b=2) and c=3 order by id desc, name asc limit 1,10",
+		"where name = 'order by x' or name like '%limit%'",
+		"where id in (select id from t_b where x=1 order by id limit 2) or y=1",
+		"where not exists (select 1 from t_b b where b.a=a.id group by b.c)",
+		"where a between 1 and 3 or b is not null limit 5",
+		"where case when a=1 then 1 else 0 end = 1 order by a",
+		"where a=1 for update",
+		"where lock_time > 3",
+	};
+
+	private static final String[] COND_EXPRESSIONS = {
+		"`deleted`=0",
+		"t1.`deleted`=0 AND (t2.`deleted`=0 or t2.`deleted` is null)",
+		"deleted=0 or deleted is null",
+	};
+
+	/**jsqlparser无法解析，但扫描器可以处理的，和期望值直接比较*/
+	private static final String[][] PARSER_UNSUPPORTED_WHERE_SQLS = {
+		{"where name = 'it''s' and intro = \"a\\\"b\"",
+			"WHERE deleted=0 AND (name = 'it''s' and intro = \"a\\\"b\")"},
+		{"where `order`=1 and t.limit=2", "WHERE deleted=0 AND (`order`=1 and t.limit=2)"},
+		{"where a=1 limit 1 lock in share mode", "WHERE deleted=0 AND (a=1) limit 1 lock in share mode"},
+	};
+
+	/**扫描器无法处理，需要退回jsqlparser的*/
+	private static final String[] UNSUPPORTED_WHERE_SQLS = {
+		"where a=1 -- comment",
+		"where a=1 /* comment */",
+		"where a=1 # comment",
+		"where a=1; delete from t",
+		"where a=1 union select * from t",
+		"where (a=1",
+		"where a=')",
+		"where order by id",
+	};
+
+	@Test
+	public void testSameAsParser() throws Exception {
+		for(String whereSql : WHERE_SQLS) {
+			for(String cond : COND_EXPRESSIONS) {
+				String rewrite = WhereSQLRewriter.insertWhereAndExpression(whereSql, cond);
+				Assert.assertNotNull(whereSql, rewrite);
+				String byParser = SQLUtils.insertWhereAndExpressionByParser(whereSql, cond);
+				Assert.assertEquals(whereSql + " | " + cond, normalize(byParser), normalize(rewrite));
+			}
+		}
+	}
+
+	@Test
+	public void testParserUnsupported() {
+		for(String[] whereSql : PARSER_UNSUPPORTED_WHERE_SQLS) {
+			Assert.assertEquals(whereSql[1],
+					WhereSQLRewriter.insertWhereAndExpression(whereSql[0], "deleted=0"));
+		}
+	}
+
+	@Test
+	public void testUnsupported() {
+		for(String whereSql : UNSUPPORTED_WHERE_SQLS) {
+			Assert.assertNull(whereSql, WhereSQLRewriter.insertWhereAndExpression(whereSql, "deleted=0"));
+		}
+	}
+
+	@Test
+	public void testFallbackToParser() throws Exception {
+		String whereSql = "where a=1 /* comment */ order by id";
+		Assert.assertEquals(SQLUtils.insertWhereAndExpressionByParser(whereSql, "deleted=0"),
+				SQLUtils.insertWhereAndExpression(whereSql, "deleted=0"));
+	}
+
+	/**
+	 * 重新解析，把where中AND连接的条件展开，去掉AND中不是OR的多余括号
+	 */
+	private static String normalize(String whereSql) throws JSQLParserException {
+		PlainSelect plainSelect = parse(whereSql);
+		List<String> conds = new ArrayList<String>();
+		flattenAnd(plainSelect.getWhere(), conds);
+		plainSelect.setWhere(null);
+		return conds + " | " + plainSelect;
+	}
+
+	private static void flattenAnd(Expression expression, List<String> conds) {
+		if(expression instanceof Parenthesis && !((Parenthesis) expression).isNot()
+				&& !(((Parenthesis) expression).getExpression() instanceof OrExpression)) {
+			flattenAnd(((Parenthesis) expression).getExpression(), conds);
+		} else if(expression instanceof AndExpression && !((AndExpression) expression).isNot()) {
+			flattenAnd(((AndExpression) expression).getLeftExpression(), conds);
+			flattenAnd(((AndExpression) expression).getRightExpression(), conds);
+		} else {
+			conds.add(expression.toString());
+		}
+	}
+
+	private static PlainSelect parse(String whereSql) throws JSQLParserException {
+		Select select = (Select) CCJSqlParserUtil.parse(SELECT_SQL + whereSql);
+		return (PlainSelect) select.getSelectBody();
+	}
+
+}
@@ -0,0 +1,45 @@
+package com.pugwoo.dbhelper.test.entity;
+
+import com.pugwoo.dbhelper.annotation.Column;
+import com.pugwoo.dbhelper.annotation.Table;
+
+/**
+ * 专门测试FastRowMapper不支持的字段类型(Number)，会退回AnnotationSupportRowMapper
+ */
+@Table("t_student")
+public class StudentNumberDO {
+
+	@Column(value = "id", isKey = true, isAutoIncrement = true)
+	private Long id;
+	
+	@Column("name")
+	private String name;
+	
+	@Column("school_id")
+	private Number schoolId;
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public Number getSchoolId() {
+		return schoolId;
+	}
+
+	public void setSchoolId(Number schoolId) {
+		this.schoolId = schoolId;
+	}
+	
+}
@@ -0,0 +1,56 @@
+package com.pugwoo.dbhelper.test.entity;
+
+import com.pugwoo.dbhelper.annotation.Column;
+import com.pugwoo.dbhelper.annotation.Table;
+
+/**
+ * 专门测试基础类型字段的DO，数据库null时基础类型字段是0
+ */
+@Table("t_student")
+public class StudentPrimitiveDO {
+
+	@Column(value = "id", isKey = true, isAutoIncrement = true)
+	private Long id;
+	
+	@Column("name")
+	private String name;
+	
+	@Column("age")
+	private int age;
+	
+	@Column("school_id")
+	private long schoolId;
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public int getAge() {
+		return age;
+	}
+
+	public void setAge(int age) {
+		this.age = age;
+	}
+
+	public long getSchoolId() {
+		return schoolId;
+	}
+
+	public void setSchoolId(long schoolId) {
+		this.schoolId = schoolId;
+	}
+	
+}
@@ -0,0 +1,159 @@
+package com.pugwoo.dbhelper.utils;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.pugwoo.dbhelper.annotation.Column;
+import com.pugwoo.dbhelper.test.entity.CourseDO;
+import com.pugwoo.dbhelper.test.entity.SchoolDO;
+import com.pugwoo.dbhelper.test.entity.StudentDO;
+import com.pugwoo.dbhelper.test.entity.StudentTrueDeleteDO;
+import com.pugwoo.dbhelper.test.vo.StudentSchoolJoinVO;
+import com.pugwoo.dbhelper.test.vo.StudentVO;
+
+/**
+ * 编译期生成的EntityMeta和反射扫描的对比测试，不需要数据库。<br>
+ * 需要测试编译时运行EntityMetaProcessor(pom中default-testCompile已配置)。
+ */
+public class TestEntityMeta {
+
+	private static final Class<?>[] CLASSES = {StudentDO.class, SchoolDO.class, CourseDO.class,
+			StudentTrueDeleteDO.class, StudentSchoolJoinVO.class};
+
+	@Test
+	public void testGeneratedLoaded() throws Exception {
+		for(Class<?> clazz : CLASSES) {
+			Assert.assertNotNull(clazz.getName(), loadGenerated(clazz));
+		}
+		// DOInfoReader实际使用的是生成的
+		Assert.assertNotNull(DOInfoReader.getEntityMeta(StudentDO.class).getSelectSQL());
+		// 类本身没有@Table/@JoinTable注解(继承自父类)的不会生成，反射扫描
+		Assert.assertNull(DOInfoReader.getEntityMeta(StudentVO.class).getSelectSQL());
+		Assert.assertFalse(DOInfoReader.getEntityMeta(StudentVO.class).getRelatedColumns().isEmpty());
+	}
+
+	@Test
+	public void testSameAsReflect() throws Exception {
+		for(Class<?> clazz : CLASSES) {
+			GeneratedEntityMeta generated = loadGenerated(clazz);
+			EntityMeta expected = new EntityMeta(clazz);
+			EntityMeta actual = new EntityMeta(clazz, generated);
+			assertSameMeta(expected, actual);
+
+			if(expected.isJoinVO()) {
+				Assert.assertNull(actual.getSelectSQL());
+			} else {
+				Assert.assertEquals(clazz.getName(), getSelectSQL(expected), actual.getSelectSQL());
+			}
+		}
+	}
+
+	@Test
+	public void testStaleFallback() throws Exception {
+		final GeneratedEntityMeta generated = loadGenerated(StudentDO.class);
+		EntityMeta expected = new EntityMeta(StudentDO.class);
+
+		// 字段改名或删除了
+		EntityMeta meta = new EntityMeta(StudentDO.class, new StaleMeta(generated) {
+			@Override
+			public String[] getColumnFields() {
+				String[] fields = generated.getColumnFields().clone();
+				fields[fields.length - 1] = StudentDO.class.getName() + "#notExistField";
+				return fields;
+			}
+		});
+		assertSameMeta(expected, meta);
+		Assert.assertNull(meta.getSelectSQL());
+
+		// 字段还在，但@Column注解改了，生成的select语句已过期
+		meta = new EntityMeta(StudentDO.class, new StaleMeta(generated) {
+			@Override
+			public String getSelectSQL() {
+				return generated.getSelectSQL().replace("`name`", "`old_name`");
+			}
+		});
+		assertSameMeta(expected, meta);
+		Assert.assertNull(meta.getSelectSQL());
+
+		// 字段的顺序变了
+		meta = new EntityMeta(StudentDO.class, new StaleMeta(generated) {
+			@Override
+			public String[] getColumnFields() {
+				String[] fields = generated.getColumnFields().clone();
+				String tmp = fields[0];
+				fields[0] = fields[fields.length - 1];
+				fields[fields.length - 1] = tmp;
+				return fields;
+			}
+		});
+		assertSameMeta(expected, meta);
+		Assert.assertNull(meta.getSelectSQL());
+	}
+
+	private static void assertSameMeta(EntityMeta expected, EntityMeta actual) {
+		String name = expected.getClazz().getName();
+		Assert.assertEquals(name, expected.getColumns(), actual.getColumns());
+		Assert.assertEquals(name, expected.getKeyColumns(), actual.getKeyColumns());
+		Assert.assertEquals(name, expected.getInsertColumns(), actual.getInsertColumns());
+		Assert.assertEquals(name, expected.getRelatedColumns(), actual.getRelatedColumns());
+		Assert.assertEquals(name, expected.getJoinLeftField(), actual.getJoinLeftField());
+		Assert.assertEquals(name, expected.getJoinRightField(), actual.getJoinRightField());
+		Assert.assertEquals(name, expected.getSoftDeleteField(), actual.getSoftDeleteField());
+		Assert.assertEquals(name, expected.getAutoIncrementField(), actual.getAutoIncrementField());
+	}
+
+	/**
+	 * 按反射扫描的结果拼凑select语句，和SQLUtils没有生成类时的拼凑方式一致
+	 */
+	private static String getSelectSQL(EntityMeta meta) {
+		List<Field> columns = meta.getColumns();
+		StringBuilder sb = new StringBuilder();
+		for(Field field : columns) {
+			Column column = meta.getColumn(field);
+			if(!column.computed().trim().isEmpty()) {
+				sb.append("(").append(column.computed().trim()).append(") AS ");
+			}
+			sb.append(meta.getColumnName(field)).append(",");
+		}
+		sb.setLength(sb.length() - 1);
+		return sb.append(" FROM ").append(meta.getTableName()).append(" ")
+				.append(meta.getTable().alias()).toString();
+	}
+
+	private static GeneratedEntityMeta loadGenerated(Class<?> clazz) throws Exception {
+		String className = clazz.getName().replace('$', '_') + GeneratedEntityMeta.CLASS_SUFFIX;
+		return (GeneratedEntityMeta) Class.forName(className).newInstance();
+	}
+
+	/**模拟过期的生成类，默认返回生成类的信息*/
+	private static class StaleMeta implements GeneratedEntityMeta {
+		private final GeneratedEntityMeta generated;
+		StaleMeta(GeneratedEntityMeta generated) {
+			this.generated = generated;
+		}
+		@Override
+		public String[] getColumnFields() {
+			return generated.getColumnFields();
+		}
+		@Override
+		public String[] getRelatedColumnFields() {
+			return generated.getRelatedColumnFields();
+		}
+		@Override
+		public String getJoinLeftField() {
+			return generated.getJoinLeftField();
+		}
+		@Override
+		public String getJoinRightField() {
+			return generated.getJoinRightField();
+		}
+		@Override
+		public String getSelectSQL() {
+			return generated.getSelectSQL();
+		}
+	}
+
+}
@@ -0,0 +1,111 @@
+package com.pugwoo.dbhelper.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * LRUCache的容量淘汰和计数测试，不需要数据库。
+ */
+public class TestLRUCache {
+
+	@Test
+	public void testHitMiss() {
+		LRUCache<String, String> cache = new LRUCache<String, String>(4);
+		Assert.assertNull(cache.get("a"));
+		cache.put("a", "1");
+		Assert.assertEquals("1", cache.get("a"));
+		Assert.assertEquals("1", cache.get("a"));
+		cache.put("a", "2"); // 覆盖不增加size
+		Assert.assertEquals("2", cache.get("a"));
+		Assert.assertNull(cache.get("b"));
+		
+		Assert.assertEquals(3, cache.getHitCount());
+		Assert.assertEquals(2, cache.getMissCount());
+		Assert.assertEquals(0, cache.getEvictionCount());
+		Assert.assertEquals(1, cache.size());
+		
+		cache.clear();
+		Assert.assertEquals(0, cache.size());
+		Assert.assertNull(cache.get("a"));
+	}
+
+	@Test
+	public void testEviction() {
+		LRUCache<Integer, Integer> cache = new LRUCache<Integer, Integer>(8);
+		for(int i = 0; i < 8; i++) {
+			cache.put(i, i);
+		}
+		Assert.assertEquals(8, cache.size());
+		Assert.assertEquals(0, cache.getEvictionCount());
+		
+		// 访问过的0变成最新的，超过容量时淘汰最旧的项直到剩下容量的7/8：1和2
+		Assert.assertEquals(Integer.valueOf(0), cache.get(0));
+		cache.put(8, 8);
+		Assert.assertEquals(2, cache.getEvictionCount());
+		Assert.assertEquals(7, cache.size());
+		Assert.assertNull(cache.get(1));
+		Assert.assertNull(cache.get(2));
+		Assert.assertEquals(Integer.valueOf(0), cache.get(0));
+		Assert.assertEquals(Integer.valueOf(3), cache.get(3));
+		Assert.assertEquals(Integer.valueOf(8), cache.get(8));
+		
+		// 淘汰后可以再put到容量而不淘汰
+		cache.put(9, 9);
+		Assert.assertEquals(8, cache.size());
+		Assert.assertEquals(2, cache.getEvictionCount());
+		
+		// 容量为1
+		LRUCache<Integer, Integer> one = new LRUCache<Integer, Integer>(1);
+		one.put(1, 1);
+		one.put(2, 2);
+		Assert.assertEquals(1, one.size());
+		Assert.assertNull(one.get(1));
+		Assert.assertEquals(Integer.valueOf(2), one.get(2));
+		Assert.assertEquals(1, one.getEvictionCount());
+	}
+
+	@Test
+	public void testConcurrent() throws Exception {
+		final LRUCache<Integer, Integer> cache = new LRUCache<Integer, Integer>(100);
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int t = 0; t < 8; t++) {
+			final int seed = t;
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for(int i = 0; i < 20000; i++) {
+							int key = (i * 31 + seed) % 500;
+							Integer value = cache.get(key);
+							if(value == null) {
+								cache.put(key, key);
+							} else if(value != key) {
+								throw new AssertionError("key:" + key + ",value:" + value);
+							}
+						}
+					} catch (Throwable e) {
+						error.set(e);
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		Assert.assertNull(error.get());
+		
+		// 全部写完后最后一次淘汰会回到容量以内
+		cache.put(-1, -1);
+		Assert.assertTrue(cache.toString(), cache.size() <= 100);
+		Assert.assertEquals(8 * 20000, cache.getHitCount() + cache.getMissCount());
+		Assert.assertTrue(cache.getEvictionCount() > 0);
+	}
+
+}